@@ -62,6 +62,7 @@ import android.widget.*;
 import com.xtremelabs.robolectric.bytecode.DirectCallPolicy.FullStackDirectCallPolicy;
 import com.xtremelabs.robolectric.bytecode.RobolectricInternals;
 import com.xtremelabs.robolectric.bytecode.ShadowWrangler;
+import com.xtremelabs.robolectric.internal.StaticState;
 import com.xtremelabs.robolectric.shadows.*;
 import com.xtremelabs.robolectric.tester.org.apache.http.FakeHttpLayer;
 import com.xtremelabs.robolectric.tester.org.apache.http.HttpRequestInfo;
@@ -387,18 +388,8 @@ public class Robolectric {
     public static void resetStaticState() {
         ShadowWrangler.getInstance().silence();
         Robolectric.application = new Application();
-        ShadowBitmapFactory.reset();
-        ShadowDrawable.reset();
         ShadowMediaStore.reset();
-        ShadowLog.reset();
-        ShadowContext.clearFilesAndCache();
-        ShadowLooper.resetThreadLoopers();
-        ShadowDialog.reset();
-        ShadowContentResolver.reset();
-        ShadowLocalBroadcastManager.reset();
-        ShadowMimeTypeMap.reset();
-        ShadowPowerManager.reset();
-        ShadowStatFs.reset();
+        StaticState.resetTouched();
     }
 
     public static <T> T directlyOn(T shadowedObject) {
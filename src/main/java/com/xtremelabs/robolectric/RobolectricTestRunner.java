@@ -12,12 +12,16 @@ import com.xtremelabs.robolectric.shadows.ShadowApplication;
 import com.xtremelabs.robolectric.shadows.ShadowLog;
 import com.xtremelabs.robolectric.util.DatabaseConfig;
 import com.xtremelabs.robolectric.util.DatabaseConfig.DatabaseMap;
+import com.xtremelabs.robolectric.util.DatabaseConfig.SnapshotDatabaseMap;
 import com.xtremelabs.robolectric.util.DatabaseConfig.UsingDatabaseMap;
 import com.xtremelabs.robolectric.util.SQLiteMap;
 import javassist.Loader;
 import org.junit.runners.BlockJUnit4ClassRunner;
 import org.junit.runners.model.FrameworkMethod;
+import org.junit.runner.notification.Failure;
+import org.junit.runner.notification.RunNotifier;
 import org.junit.runners.model.InitializationError;
+import org.junit.runners.model.RunnerScheduler;
 import org.junit.runners.model.Statement;
 import org.w3c.dom.Document;
 import org.xml.sax.SAXException;
@@ -33,8 +37,18 @@ import java.lang.annotation.Annotation;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.Field;
 import java.lang.reflect.Method;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 
 /**
  * Installs a {@link RobolectricClassLoader} and {@link com.xtremelabs.robolectric.res.ResourceLoader} in order to
@@ -46,6 +60,8 @@ public class RobolectricTestRunner extends BlockJUnit4ClassRunner implements Rob
   	private static InstrumentDetector instrumentDetector = InstrumentDetector.DEFAULT;
 
     private static RobolectricClassLoader defaultLoader;
+    private static final ThreadLocal<RobolectricClassLoader> threadLoader = new ThreadLocal<RobolectricClassLoader>();
+    private static ExecutorService parallelExecutor;
     private static Map<RobolectricConfig, ResourceLoader> resourceLoaderForRootAndDirectory = new HashMap<RobolectricConfig, ResourceLoader>();
 
     // fields in the RobolectricTestRunner in the original ClassLoader
@@ -53,11 +69,16 @@ public class RobolectricTestRunner extends BlockJUnit4ClassRunner implements Rob
     private ClassHandler classHandler;
     private RobolectricTestRunnerInterface delegate;
     private DatabaseMap databaseMap;
+    private Class<?> testClassForThreads;
+    private final ThreadLocal<RobolectricTestRunner> threadRunner = new ThreadLocal<RobolectricTestRunner>();
 
 	// fields in the RobolectricTestRunner in the instrumented ClassLoader
     protected RobolectricConfig robolectricConfig;
 
     private static RobolectricClassLoader getDefaultLoader() {
+        if (threadLoader.get() != null) {
+            return threadLoader.get();
+        }
         if (defaultLoader == null) {
             defaultLoader = new RobolectricClassLoader(ShadowWrangler.getInstance());
         }
@@ -228,8 +249,17 @@ public class RobolectricTestRunner extends BlockJUnit4ClassRunner implements Rob
             delegateLoadingOf(ShadowWrangler.class.getName());
             delegateLoadingOf(RobolectricConfig.class.getName());
             delegateLoadingOf(DatabaseMap.class.getName());
+            delegateLoadingOf(SnapshotDatabaseMap.class.getName());
             delegateLoadingOf(android.R.class.getName());
 
+            int threadCount = parallelThreadCount();
+            if (threadCount > 1 && threadLoader.get() == null) {
+                // the tests run through a runner per worker thread, so this one needs no delegate of its own
+                this.testClassForThreads = testClass;
+                setScheduler(new ParallelScheduler(getParallelExecutor(threadCount), threadCount));
+                return;
+            }
+
             Class<?> delegateClass = classLoader.bootstrap(this.getClass());
             try {
                 Constructor<?> constructorForDelegate = delegateClass.getConstructor(Class.class);
@@ -246,6 +276,28 @@ public class RobolectricTestRunner extends BlockJUnit4ClassRunner implements Rob
         return instrumentDetector.isInstrumented();
     }
 
+    private static synchronized ExecutorService getParallelExecutor(int threadCount) {
+        if (parallelExecutor == null) {
+            final RobolectricClassLoader parentLoader = getDefaultLoader();
+            parallelExecutor = Executors.newFixedThreadPool(threadCount, new ThreadFactory() {
+                private int threadNumber;
+
+                @Override public Thread newThread(final Runnable runnable) {
+                    Thread thread = new Thread(new Runnable() {
+                        @Override public void run() {
+                            ShadowWrangler.newThreadInstance();
+                            threadLoader.set(parentLoader.newThreadLoader());
+                            runnable.run();
+                        }
+                    }, "robolectric-test-" + (++threadNumber));
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        return parallelExecutor;
+    }
+
     /**
      * Only used when creating the delegate instance within the instrumented ClassLoader.
      * <p/>
@@ -267,6 +319,67 @@ public class RobolectricTestRunner extends BlockJUnit4ClassRunner implements Rob
         classLoader.delegateLoadingOf(className);
     }
 
+    @Override protected void runChild(final FrameworkMethod method, final RunNotifier notifier) {
+        if (testClassForThreads == null) {
+            super.runChild(method, notifier);
+            return;
+        }
+
+        // each worker thread runs the test through its own runner, on that thread's copy of the test class
+        RobolectricTestRunner runner;
+        FrameworkMethod methodForRunner;
+        try {
+            runner = getThreadRunner();
+            methodForRunner = runner.getChildFor(method);
+        } catch (Exception e) {
+            notifier.fireTestFailure(new Failure(describeChild(method), e));
+            return;
+        }
+        runner.runChild(methodForRunner, notifier);
+    }
+
+    private RobolectricTestRunner getThreadRunner() throws Exception {
+        RobolectricTestRunner runner = threadRunner.get();
+        if (runner == null) {
+            runner = getClass().getConstructor(Class.class).newInstance(testClassForThreads);
+            threadRunner.set(runner);
+        }
+        return runner;
+    }
+
+    /**
+     * @return the test method of this runner's copy of the test class that {@code method}, from another copy, stands for
+     */
+    private FrameworkMethod getChildFor(FrameworkMethod method) throws NoSuchMethodException {
+        Method wanted = method.getMethod();
+        for (FrameworkMethod child : getChildren()) {
+            Method candidate = child.getMethod();
+            if (candidate.getName().equals(wanted.getName())
+                    && candidate.getDeclaringClass().getName().equals(wanted.getDeclaringClass().getName())
+                    && getParameterTypeNames(candidate).equals(getParameterTypeNames(wanted))) {
+                return child;
+            }
+        }
+        throw new NoSuchMethodException(wanted.toString());
+    }
+
+    private static List<String> getParameterTypeNames(Method method) {
+        List<String> parameterTypeNames = new ArrayList<String>();
+        for (Class<?> parameterType : method.getParameterTypes()) {
+            parameterTypeNames.add(parameterType.getName());
+        }
+        return parameterTypeNames;
+    }
+
+    @Override protected Statement withBeforeClasses(Statement statement) {
+        // in parallel, each worker thread's runner runs them around its share of the tests instead
+        return testClassForThreads == null ? super.withBeforeClasses(statement) : statement;
+    }
+
+    @Override protected Statement withAfterClasses(Statement statement) {
+        return testClassForThreads == null ? super.withAfterClasses(statement) : statement;
+    }
+
     @Override protected Statement methodBlock(final FrameworkMethod method) {
         setupI18nStrictState(method.getMethod(), robolectricConfig);
         lookForLocaleAnnotation( method.getMethod(), robolectricConfig );
@@ -433,6 +546,28 @@ public class RobolectricTestRunner extends BlockJUnit4ClassRunner implements Rob
     	return Boolean.valueOf(System.getProperty("robolectric.strictI18n"));
     }
 
+    /**
+     * Default implementation of the switch for running test methods in parallel. When it returns more than one,
+     * the test methods of each class are run on a shared pool of that many threads. The Android classes are
+     * instrumented and defined once, by the default {@link RobolectricClassLoader}, and shared by every thread, along
+     * with their static fields. Each thread has its own {@link RobolectricClassLoader#newThreadLoader() thread loader},
+     * {@link ShadowWrangler} and instance of this runner, so Robolectric itself, the shadows, the tests and the code
+     * under test are defined again per thread, and the application, schedulers, shadow bindings and all other static
+     * Robolectric and shadow state are separate per thread. Each thread loads the resources once for itself.
+     * <p/>
+     * To enable it, set the system property "robolectric.parallelThreads" to the number of threads. This is called
+     * from the constructor, so subclasses overriding it can't rely on their own fields. Runners used this way need a
+     * public constructor taking just the test class. {@code @BeforeClass} and {@code @AfterClass} methods run on each
+     * thread that takes part, before its first test and after its last, against the same copy of the class as its
+     * tests.
+     *
+     * @return
+     */
+    protected int parallelThreadCount() {
+        String threads = System.getProperty("robolectric.parallelThreads");
+        return threads == null || "".equals(threads.trim()) ? 1 : Integer.parseInt(threads.trim());
+    }
+
     /**
      * As test methods are loaded by the delegate's class loader, the normal
  	 * method#isAnnotationPresent test fails. Look at string versions of the
@@ -676,4 +811,67 @@ public class RobolectricTestRunner extends BlockJUnit4ClassRunner implements Rob
 
 	}
 
+    /**
+     * Queues a class's test methods, then has up to {@code threadCount} of the pool's threads take them from the queue,
+     * each through its own runner wrapped in the class's {@code @BeforeClass} and {@code @AfterClass} methods.
+     */
+    private class ParallelScheduler implements RunnerScheduler {
+        private final ExecutorService executorService;
+        private final int threadCount;
+        private final Queue<Runnable> childStatements = new ConcurrentLinkedQueue<Runnable>();
+
+        ParallelScheduler(ExecutorService executorService, int threadCount) {
+            this.executorService = executorService;
+            this.threadCount = threadCount;
+        }
+
+        @Override public void schedule(Runnable childStatement) {
+            childStatements.add(childStatement);
+        }
+
+        @Override public void finished() {
+            List<Future<?>> futures = new ArrayList<Future<?>>();
+            for (int i = Math.min(threadCount, childStatements.size()); i > 0; i--) {
+                futures.add(executorService.submit(new Callable<Void>() {
+                    @Override public Void call() throws Exception {
+                        try {
+                            runChildStatementsOnThisThread();
+                        } catch (Exception e) {
+                            throw e;
+                        } catch (Error e) {
+                            throw e;
+                        } catch (Throwable throwable) {
+                            throw new RuntimeException(throwable);
+                        } finally {
+                            threadRunner.remove();
+                        }
+                        return null;
+                    }
+                }));
+            }
+
+            try {
+                for (Future<?> future : futures) {
+                    future.get();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException e) {
+                throw new RuntimeException(e.getCause());
+            }
+        }
+
+        private void runChildStatementsOnThisThread() throws Throwable {
+            RobolectricTestRunner runner = getThreadRunner();
+            Statement childStatementsInvoker = new Statement() {
+                @Override public void evaluate() {
+                    Runnable childStatement;
+                    while ((childStatement = childStatements.poll()) != null) {
+                        childStatement.run();
+                    }
+                }
+            };
+            runner.withAfterClasses(runner.withBeforeClasses(childStatementsInvoker)).evaluate();
+        }
+    }
 }
@@ -6,8 +6,14 @@ import com.xtremelabs.robolectric.internal.Instrument;
 import javassist.*;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 @SuppressWarnings({"UnusedDeclaration"})
 public class AndroidTranslator implements Translator {
@@ -15,7 +21,7 @@ public class AndroidTranslator implements Translator {
      * IMPORTANT -- increment this number when the bytecode generated for modified classes changes
      * so the cache file can be invalidated.
      */
-    public static final int CACHE_VERSION = 21;
+    public static final int CACHE_VERSION = 23;
 
     private static final List<ClassHandler> CLASS_HANDLERS = new ArrayList<ClassHandler>();
 
@@ -23,6 +29,9 @@ public class AndroidTranslator implements Translator {
     private ClassCache classCache;
     private final List<String> instrumentingList = new ArrayList<String>();
     private final List<String> instrumentingExcludeList = new ArrayList<String>();
+    private String instrumentationConfig;
+    private final Map<String, byte[]> originalDigests = new ConcurrentHashMap<String, byte[]>();
+    private final Set<String> instrumentedClassNames = new HashSet<String>();
 
     public AndroidTranslator(ClassHandler classHandler, ClassCache classCache) {
         this.classHandler = classHandler;
@@ -47,9 +56,20 @@ public class AndroidTranslator implements Translator {
     public void addCustomShadowClass(String customShadowClassName) {
         if (!instrumentingList.contains(customShadowClassName)) {
             instrumentingList.add(customShadowClassName);
+            instrumentationConfig = null;
         }
     }
 
+    /**
+     * @return a description of which classes get instrumented, so cached classes can tell when it has changed
+     */
+    public String getInstrumentationConfig() {
+        if (instrumentationConfig == null) {
+            instrumentationConfig = "include=" + instrumentingList + " exclude=" + instrumentingExcludeList;
+        }
+        return instrumentationConfig;
+    }
+
     public static ClassHandler getClassHandler(int index) {
         return CLASS_HANDLERS.get(index);
     }
@@ -76,10 +96,6 @@ public class AndroidTranslator implements Translator {
 
     @Override
     public void onLoad(ClassPool classPool, String className) throws NotFoundException, CannotCompileException {
-        if (classCache.isWriting()) {
-            throw new IllegalStateException("shouldn't be modifying bytecode after we've started writing cache! class=" + className);
-        }
-
         if (classHasFromAndroidEquivalent(className)) {
             replaceClassWithFromAndroidEquivalent(classPool, className);
             return;
@@ -93,23 +109,48 @@ public class AndroidTranslator implements Translator {
         }
 
         if (shouldInstrument(ctClass)) {
-            int modifiers = ctClass.getModifiers();
-            if (Modifier.isFinal(modifiers)) {
-                ctClass.setModifiers(modifiers & ~Modifier.FINAL);
+            instrumentWithSuperclasses(ctClass);
+
+            if (classCache != null) {
+                try {
+                    classCache.addClass(className, ctClass.toBytecode());
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
             }
+        }
+    }
 
-            classHandler.instrument(ctClass);
+    /**
+     * Instruments {@code ctClass} after those of its superclasses that get instrumented, so it always finds their shadow
+     * field rather than declaring its own, whichever order classes are loaded in. Classes this translator has already
+     * instrumented are left as they are.
+     */
+    /* package */ synchronized void instrumentWithSuperclasses(CtClass ctClass) throws NotFoundException, CannotCompileException {
+        List<CtClass> instrumentedSuperclasses = getInstrumentedSuperclasses(ctClass);
+        for (int i = instrumentedSuperclasses.size() - 1; i >= 0; i--) {
+            instrumentOnce(instrumentedSuperclasses.get(i));
+        }
+        instrumentOnce(ctClass);
+    }
 
-            MethodGenerator methodGenerator = new MethodGenerator(ctClass);
-            methodGenerator.fixConstructors();
-            methodGenerator.fixMethods();
+    private void instrumentOnce(CtClass ctClass) throws NotFoundException, CannotCompileException {
+        if (instrumentedClassNames.add(ctClass.getName())) {
+            instrument(ctClass);
+        }
+    }
 
-            try {
-                classCache.addClass(className, ctClass.toBytecode());
-            } catch (IOException e) {
-                throw new RuntimeException(e);
-            }
+    /* package */ void instrument(CtClass ctClass) throws NotFoundException, CannotCompileException {
+        int modifiers = ctClass.getModifiers();
+        if (Modifier.isFinal(modifiers)) {
+            ctClass.setModifiers(modifiers & ~Modifier.FINAL);
         }
+
+        classHandler.instrument(ctClass);
+
+        MethodGenerator methodGenerator = new MethodGenerator(ctClass);
+        methodGenerator.fixConstructors();
+        methodGenerator.fixMethods();
     }
 
     /* package */ boolean shouldInstrument(CtClass ctClass) {
@@ -132,7 +173,72 @@ public class AndroidTranslator implements Translator {
         }
     }
 
-    private boolean classHasFromAndroidEquivalent(String className) {
+    /**
+     * @return the superclasses of {@code ctClass} that get instrumented, nearest first
+     */
+    /* package */ List<CtClass> getInstrumentedSuperclasses(CtClass ctClass) {
+        List<CtClass> instrumentedSuperclasses = new ArrayList<CtClass>();
+        for (CtClass superclass = superclassOf(ctClass); superclass != null; superclass = superclassOf(superclass)) {
+            if (shouldInstrument(superclass)) {
+                instrumentedSuperclasses.add(superclass);
+            }
+        }
+        return instrumentedSuperclasses;
+    }
+
+    /**
+     * @return {@link ClassCache#digest(byte[]) digests} of the original bytes of {@code ctClass} and of each of its
+     * instrumented superclasses, which together determine its instrumented bytes; or null if any can't be read
+     */
+    /* package */ List<byte[]> getOriginalDigests(CtClass ctClass) {
+        List<byte[]> digests = new ArrayList<byte[]>();
+        digests.add(getOriginalDigest(ctClass));
+        for (CtClass superclass : getInstrumentedSuperclasses(ctClass)) {
+            digests.add(getOriginalDigest(superclass));
+        }
+        return digests.contains(null) ? null : digests;
+    }
+
+    private byte[] getOriginalDigest(CtClass ctClass) {
+        String className = ctClass.getName();
+        byte[] digest = originalDigests.get(className);
+        if (digest == null) {
+            byte[] originalClassBytes = readOriginalClassBytes(ctClass.getClassPool(), className);
+            if (originalClassBytes == null) {
+                return null;
+            }
+            digest = ClassCache.digest(originalClassBytes);
+            originalDigests.put(className, digest);
+        }
+        return digest;
+    }
+
+    private static byte[] readOriginalClassBytes(ClassPool classPool, String className) {
+        URL url = classPool.find(className);
+        if (url == null) {
+            return null;
+        }
+        try {
+            InputStream inputStream = url.openStream();
+            try {
+                return ClassCache.readFully(inputStream, inputStream.available());
+            } finally {
+                inputStream.close();
+            }
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private static CtClass superclassOf(CtClass ctClass) {
+        try {
+            return ctClass.getSuperclass();
+        } catch (NotFoundException e) {
+            return null;
+        }
+    }
+
+    /* package */ boolean classHasFromAndroidEquivalent(String className) {
         return className.startsWith(Uri.class.getName());
     }
 
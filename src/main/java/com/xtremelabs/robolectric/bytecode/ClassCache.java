@@ -1,131 +1,285 @@
 package com.xtremelabs.robolectric.bytecode;
 
-import java.io.ByteArrayOutputStream;
+import com.xtremelabs.robolectric.util.CacheFiles;
+
+import java.io.Closeable;
 import java.io.File;
-import java.io.FileOutputStream;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.util.Enumeration;
-import java.util.HashMap;
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
-import java.util.jar.Attributes;
-import java.util.jar.JarEntry;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.jar.JarFile;
-import java.util.jar.JarOutputStream;
-import java.util.jar.Manifest;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.ZipEntry;
 
+/**
+ * Keeps instrumented classes on disk, one file per class, named by a hash of the original bytes of the class and of
+ * its instrumented superclasses, the translator version and the instrumentation configuration. Any change to those
+ * produces a different name, so entries never need to be invalidated. Entries are read only when their class is
+ * loaded and written as soon as the class is instrumented; each write goes to a temporary file that is renamed into
+ * place, so several JVMs can share one cache directory.
+ * <p/>
+ * Entries are grouped in a directory per translator version and instrumentation configuration. The first time a
+ * cache opens one of these, it deletes those left by older translator versions, and those of other configurations
+ * that no one has opened for a day.
+ * <p/>
+ * A jar built ahead of time by {@link Preinstrumenter} uses the same entry names, and is consulted before the
+ * cache directory when one is given.
+ */
 public class ClassCache {
-    private static final Attributes.Name VERSION_ATTRIBUTE = new Attributes.Name("version");
+    private static final Logger LOGGER = Logger.getLogger(ClassCache.class.getName());
+    private static final Pattern GENERATION_DIRECTORY_NAME = Pattern.compile("(\\d+)-[0-9a-f]+");
+    // entries used to sit straight in the cache directory, under the first two digits of their keys
+    private static final Pattern UNVERSIONED_DIRECTORY_NAME = Pattern.compile("[0-9a-f]{2}");
+    /* package */ static final long STALE_GENERATION_MILLIS = 24 * 60 * 60 * 1000L;
 
-    private Map<String, byte[]> cachedClasses = new HashMap<String, byte[]>();
-    private boolean startedWriting = false;
+    private final File cacheDirectory;
+    private final int translatorVersion;
+    private final JarFile preinstrumentedJar;
+    private final Map<String, File> generationDirectories = new ConcurrentHashMap<String, File>();
+    private final Set<File> openedGenerationDirectories = Collections.newSetFromMap(new ConcurrentHashMap<File, Boolean>());
+    private final AtomicBoolean pruned = new AtomicBoolean();
+    private final Map<String, File> pendingFiles = new ConcurrentHashMap<String, File>();
 
-    public ClassCache(String classCachePath, final int expectedCacheVersion) {
-        final File cacheJarFile = new File(classCachePath);
-        JarFile cacheFile;
-        try {
-            cacheFile = new JarFile(cacheJarFile);
-            int cacheVersion = 0;
-            Manifest manifest = cacheFile.getManifest();
-            if (manifest != null) {
-                Attributes attributes = manifest.getEntries().get("robolectric");
-                if (attributes != null) {
-                    String cacheVersionStr = (String) attributes.get(VERSION_ATTRIBUTE);
-                    if (cacheVersionStr != null) {
-                        cacheVersion = Integer.parseInt(cacheVersionStr);
-                    }
-                }
+    public ClassCache(File cacheDirectory, int translatorVersion) {
+        this(cacheDirectory, translatorVersion, null);
+    }
+
+    public ClassCache(File cacheDirectory, int translatorVersion, File preinstrumentedJarFile) {
+        this.cacheDirectory = cacheDirectory;
+        this.translatorVersion = translatorVersion;
+        this.preinstrumentedJar = openJar(preinstrumentedJarFile);
+    }
+
+    /**
+     * Looks up a class none of whose superclasses are instrumented.
+     *
+     * @see #getClassBytesFor(String, List, String)
+     */
+    public byte[] getClassBytesFor(String className, byte[] originalClassBytes, String instrumentationConfig) {
+        return getClassBytesFor(className, Collections.singletonList(digest(originalClassBytes)), instrumentationConfig);
+    }
+
+    /**
+     * @param originalDigests the {@link #digest(byte[])} of the original class bytes, followed by those of each of its
+     *                        instrumented superclasses, nearest first
+     * @return the instrumented bytes for this version of the class, or null if it hasn't been cached yet, in which
+     * case a following {@link #addClass(String, byte[])} will store it under the same key
+     */
+    public byte[] getClassBytesFor(String className, List<byte[]> originalDigests, String instrumentationConfig) {
+        String key = keyFor(originalDigests, translatorVersion, instrumentationConfig);
+        byte[] classBytes = readJarEntry(key);
+        if (classBytes == null) {
+            File file = new File(openGenerationDirectory(instrumentationConfig), entryNameFor(key));
+            classBytes = readEntry(file);
+            if (classBytes == null) {
+                pendingFiles.put(className, file);
             }
-            if (cacheVersion != expectedCacheVersion) {
-                cacheJarFile.delete();
-            } else {
-                readEntries(cacheFile);
+        }
+        if (classBytes != null) {
+            pendingFiles.remove(className);
+        }
+        return classBytes;
+    }
+
+    public void addClass(String className, byte[] classBytes) {
+        File file = pendingFiles.remove(className);
+        if (file != null) {
+            // another JVM may have written the same entry first; its bytes are identical, so either one is fine
+            CacheFiles.writeAtomically(file, classBytes, false);
+        }
+    }
+
+    /* package */ File fileFor(String key, String instrumentationConfig) {
+        return new File(generationDirectoryFor(instrumentationConfig), entryNameFor(key));
+    }
+
+    /* package */ static String entryNameFor(String key) {
+        return key.substring(0, 2) + "/" + key.substring(2) + ".class";
+    }
+
+    public static byte[] digest(byte[] bytes) {
+        return sha1().digest(bytes);
+    }
+
+    /* package */ static String keyFor(byte[] originalClassBytes, int translatorVersion, String instrumentationConfig) {
+        return keyFor(Collections.singletonList(digest(originalClassBytes)), translatorVersion, instrumentationConfig);
+    }
+
+    /* package */ static String keyFor(List<byte[]> originalDigests, int translatorVersion, String instrumentationConfig) {
+        MessageDigest digest = sha1();
+        digest.update(utf8(String.valueOf(translatorVersion)));
+        digest.update((byte) 0);
+        digest.update(utf8(instrumentationConfig));
+        for (byte[] originalDigest : originalDigests) {
+            digest.update((byte) 0);
+            digest.update(originalDigest);
+        }
+        return CacheFiles.toHex(digest.digest());
+    }
+
+    private File generationDirectoryFor(String instrumentationConfig) {
+        File directory = generationDirectories.get(instrumentationConfig);
+        if (directory == null) {
+            String configHash = CacheFiles.toHex(digest(utf8(instrumentationConfig))).substring(0, 12);
+            directory = new File(cacheDirectory, translatorVersion + "-" + configHash);
+            generationDirectories.put(instrumentationConfig, directory);
+        }
+        return directory;
+    }
+
+    private File openGenerationDirectory(String instrumentationConfig) {
+        File directory = generationDirectoryFor(instrumentationConfig);
+        if (openedGenerationDirectories.add(directory)) {
+            if (directory.isDirectory()) {
+                directory.setLastModified(System.currentTimeMillis());
+            }
+            if (pruned.compareAndSet(false, true)) {
+                pruneStaleGenerations();
             }
-        } catch (IOException e) {
-            // no problem
         }
+        return directory;
+    }
 
-        Runtime.getRuntime().addShutdownHook(new Thread() {
-            @Override public void run() {
-                Manifest manifest = new Manifest();
-                Attributes attributes = new Attributes();
-                attributes.put(VERSION_ATTRIBUTE, String.valueOf(expectedCacheVersion));
-                manifest.getEntries().put("robolectric", attributes);
+    /* package */ void pruneStaleGenerations() {
+        File[] children = cacheDirectory.listFiles();
+        if (children == null) {
+            return;
+        }
+        long staleBefore = System.currentTimeMillis() - STALE_GENERATION_MILLIS;
+        for (File child : children) {
+            if (!child.isDirectory() || openedGenerationDirectories.contains(child)) {
+                continue;
+            }
+            Matcher matcher = GENERATION_DIRECTORY_NAME.matcher(child.getName());
+            boolean stale;
+            if (matcher.matches()) {
+                stale = Integer.parseInt(matcher.group(1)) < translatorVersion || child.lastModified() < staleBefore;
+            } else {
+                stale = UNVERSIONED_DIRECTORY_NAME.matcher(child.getName()).matches();
+            }
+            if (stale) {
+                deleteRecursively(child);
+            }
+        }
+    }
 
-                saveAllClassesToCache(cacheJarFile, manifest);
+    private static void deleteRecursively(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                deleteRecursively(child);
             }
-        });
+        }
+        // another JVM may be deleting it too, or still writing to it; whatever's left goes next time
+        file.delete();
     }
 
-    public byte[] getClassBytesFor(String name) {
-        return cachedClasses.get(name);
+    private static MessageDigest sha1() {
+        try {
+            return MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
     }
 
-    public boolean isWriting() {
-        synchronized (this) {
-            return startedWriting;
+    private static byte[] utf8(String string) {
+        try {
+            return string.getBytes("UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new RuntimeException(e);
         }
     }
 
-    public void addClass(String className, byte[] classBytes) {
-        cachedClasses.put(className, classBytes);
+    private static JarFile openJar(File jarFile) {
+        if (jarFile == null) {
+            return null;
+        }
+        try {
+            return new JarFile(jarFile);
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "couldn't open preinstrumented classes in " + jarFile, e);
+            return null;
+        }
     }
 
-    private void readEntries(JarFile cacheFile) {
-        Enumeration<JarEntry> entries = cacheFile.entries();
+    private byte[] readJarEntry(String key) {
+        if (preinstrumentedJar == null) {
+            return null;
+        }
+
+        ZipEntry entry = preinstrumentedJar.getEntry(entryNameFor(key));
+        if (entry == null) {
+            return null;
+        }
+
+        InputStream inputStream = null;
         try {
-            while (entries.hasMoreElements()) {
-                JarEntry entry = entries.nextElement();
-                String className = entry.getName();
-                if (className.endsWith(".class")) {
-                    int classSize = (int) entry.getSize();
-                    InputStream inputStream = cacheFile.getInputStream(entry);
-                    ByteArrayOutputStream baos = new ByteArrayOutputStream(classSize);
-                    int c;
-                    while ((c = inputStream.read()) != -1) {
-                        baos.write(c);
-                    }
-                    className = className.substring(0, className.indexOf(".class")).replace('/', '.');
-                    addClass(className, baos.toByteArray());
-                }
+            inputStream = preinstrumentedJar.getInputStream(entry);
+            return readFully(inputStream, (int) entry.getSize());
+        } catch (IOException e) {
+            return null;
+        } finally {
+            closeQuietly(inputStream);
+        }
+    }
 
-            }
+    private byte[] readEntry(File file) {
+        if (!file.isFile()) {
+            return null;
+        }
+
+        InputStream inputStream = null;
+        try {
+            inputStream = new FileInputStream(file);
+            return readFully(inputStream, (int) file.length());
         } catch (IOException e) {
-            // no problem, we didn't want those bytes that much anyway
-        }
-    }
-
-    protected void saveAllClassesToCache(File file, Manifest manifest) {
-        synchronized (this) {
-            startedWriting = true;
-    
-            if (cachedClasses.size() > 0) {
-                JarOutputStream jarOutputStream = null;
-                try {
-                    File cacheJarDir = file.getParentFile();
-                    if (!cacheJarDir.exists()) {
-                        cacheJarDir.mkdirs();
-                    }
-    
-                    jarOutputStream = new JarOutputStream(new FileOutputStream(file), manifest);
-                    for (Map.Entry<String, byte[]> entry : cachedClasses.entrySet()) {
-                        String key = entry.getKey();
-                        jarOutputStream.putNextEntry(new JarEntry(key.replace('.', '/') + ".class"));
-                        jarOutputStream.write(entry.getValue());
-                        jarOutputStream.closeEntry();
-                    }
-                } catch (IOException e) {
-                    throw new RuntimeException(e);
-                } finally {
-                    if (jarOutputStream != null) {
-                        try {
-                            jarOutputStream.close();
-                        } catch (IOException ignore) {
-                        }
-                    }
+            // no problem, we'll instrument it again
+            return null;
+        } finally {
+            closeQuietly(inputStream);
+        }
+    }
+
+    /* package */ static byte[] readFully(InputStream inputStream, int expectedLength) throws IOException {
+        byte[] bytes = new byte[expectedLength > 0 ? expectedLength : 4096];
+        int length = 0;
+        int count;
+        while ((count = inputStream.read(bytes, length, bytes.length - length)) != -1) {
+            length += count;
+            if (length == bytes.length) {
+                int next = inputStream.read();
+                if (next == -1) {
+                    return bytes;
                 }
+                byte[] grown = new byte[bytes.length * 2];
+                System.arraycopy(bytes, 0, grown, 0, length);
+                grown[length++] = (byte) next;
+                bytes = grown;
+            }
+        }
+        byte[] result = new byte[length];
+        System.arraycopy(bytes, 0, result, 0, length);
+        return result;
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        if (closeable != null) {
+            try {
+                closeable.close();
+            } catch (IOException ignore) {
             }
-            startedWriting = false;
         }
     }
 }
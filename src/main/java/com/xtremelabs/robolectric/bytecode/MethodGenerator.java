@@ -1,9 +1,16 @@
 package com.xtremelabs.robolectric.bytecode;
 
 import javassist.*;
+import javassist.bytecode.AccessFlag;
+
+import java.util.HashMap;
+import java.util.Map;
 
 public class MethodGenerator {
+    private static final String PARAM_TYPES_FIELD_PREFIX = "__paramTypes";
+
     private final CtClass ctClass;
+    private final Map<String, String> paramTypesFieldNames = new HashMap<String, String>();
 
     public MethodGenerator(CtClass ctClass) {
         this.ctClass = ctClass;
@@ -267,24 +274,48 @@ public class MethodGenerator {
     public void appendParamTypeArray(StringBuilder buf, CtMethod ctMethod) throws NotFoundException {
         CtClass[] parameterTypes = ctMethod.getParameterTypes();
         if (parameterTypes.length == 0) {
-            buf.append("new String[0]");
+            buf.append("null");
         } else {
-            buf.append("new String[] {");
-            for (int i = 0; i < parameterTypes.length; i++) {
-                if (i > 0) buf.append(", ");
-                buf.append("\"");
-                CtClass parameterType = parameterTypes[i];
-                buf.append(parameterType.getName());
-                buf.append("\"");
+            buf.append(getParamTypesField(parameterTypes));
+        }
+    }
+
+    /**
+     * Parameter type names are the same on every call, so each distinct list is built once per instrumented class
+     * into a static field rather than allocated by every invocation. The field is private and synthetic, since
+     * anything that could write to the array would change what every later call dispatches to.
+     */
+    private String getParamTypesField(CtClass[] parameterTypes) throws NotFoundException {
+        StringBuilder initializer = new StringBuilder();
+        initializer.append("new String[] {");
+        for (int i = 0; i < parameterTypes.length; i++) {
+            if (i > 0) initializer.append(", ");
+            initializer.append("\"");
+            CtClass parameterType = parameterTypes[i];
+            initializer.append(parameterType.getName());
+            initializer.append("\"");
+        }
+        initializer.append("}");
+
+        String fieldName = paramTypesFieldNames.get(initializer.toString());
+        if (fieldName == null) {
+            fieldName = PARAM_TYPES_FIELD_PREFIX + paramTypesFieldNames.size() + "__";
+            try {
+                CtField field = CtField.make("private static final String[] " + fieldName + " = " + initializer + ";", ctClass);
+                field.getFieldInfo().setAccessFlags(field.getFieldInfo().getAccessFlags() | AccessFlag.SYNTHETIC);
+                ctClass.addField(field);
+            } catch (CannotCompileException e) {
+                throw new RuntimeException("problem adding " + fieldName + " to " + ctClass.getName(), e);
             }
-            buf.append("}");
+            paramTypesFieldNames.put(initializer.toString(), fieldName);
         }
+        return fieldName;
     }
 
     public void appendParamArray(StringBuilder buf, CtMethod ctMethod) throws NotFoundException {
         int parameterCount = ctMethod.getParameterTypes().length;
         if (parameterCount == 0) {
-            buf.append("new Object[0]");
+            buf.append("null");
         } else {
             buf.append("new Object[] {");
             for (int i = 0; i < parameterCount; i++) {
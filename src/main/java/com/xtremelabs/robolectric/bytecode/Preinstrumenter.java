@@ -0,0 +1,209 @@
+package com.xtremelabs.robolectric.bytecode;
+
+import javassist.ClassPool;
+import javassist.CtClass;
+import javassist.LoaderClassPath;
+import javassist.NotFoundException;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.jar.JarOutputStream;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Instruments every class in the given jars that {@link AndroidTranslator} would instrument, using all available
+ * cores, and writes the results to a jar laid out like the {@link ClassCache} directory. Point the
+ * {@code robolectric.preinstrumented.jar} system property at that jar and {@link RobolectricClassLoader} loads
+ * classes from it instead of instrumenting them when a test first touches them.
+ * <p/>
+ * Classes are instrumented exactly as {@link RobolectricClassLoader} would, superclasses first. Entries are keyed by
+ * the original bytes of the class and its instrumented superclasses, so a jar built from a different android.jar, an older
+ * {@link AndroidTranslator#CACHE_VERSION} or a different instrumentation list is simply never hit. Pass
+ * {@code --instrument <classOrPackage>} for every class or package your test runner adds with
+ * {@code addClassOrPackageToInstrument}, in the same order.
+ * <p/>
+ * Usage: {@code Preinstrumenter <output.jar> <input.jar>... [--instrument <classOrPackage>]...}
+ */
+public class Preinstrumenter {
+    private static final Logger LOGGER = Logger.getLogger(Preinstrumenter.class.getName());
+
+    private final List<File> inputJars;
+    private final List<String> customClassNames;
+    private final int threadCount;
+
+    private final ThreadLocal<Worker> workers = new ThreadLocal<Worker>() {
+        @Override protected Worker initialValue() {
+            try {
+                return new Worker();
+            } catch (NotFoundException e) {
+                throw new RuntimeException(e);
+            }
+        }
+    };
+
+    public Preinstrumenter(List<File> inputJars, List<String> customClassNames, int threadCount) {
+        this.inputJars = inputJars;
+        this.customClassNames = customClassNames;
+        this.threadCount = threadCount;
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 2) {
+            System.err.println("Usage: " + Preinstrumenter.class.getName() + " <output.jar> <input.jar>... [--instrument <classOrPackage>]...");
+            System.exit(1);
+        }
+
+        File outputJar = new File(args[0]);
+        List<File> inputJars = new ArrayList<File>();
+        List<String> customClassNames = new ArrayList<String>();
+        for (int i = 1; i < args.length; i++) {
+            if (args[i].equals("--instrument") && i + 1 < args.length) {
+                customClassNames.add(args[++i]);
+            } else {
+                inputJars.add(new File(args[i]));
+            }
+        }
+
+        long start = System.currentTimeMillis();
+        int count = new Preinstrumenter(inputJars, customClassNames, Runtime.getRuntime().availableProcessors()).writeTo(outputJar);
+        LOGGER.info("Instrumented " + count + " classes into " + outputJar + " in " + (System.currentTimeMillis() - start) + "ms");
+    }
+
+    /**
+     * @return the number of classes written
+     */
+    public int writeTo(File outputJar) throws IOException, InterruptedException {
+        List<String> classNames = findClassNames();
+
+        ExecutorService executorService = Executors.newFixedThreadPool(threadCount);
+        try {
+            List<Future<Entry>> futures = new ArrayList<Future<Entry>>();
+            for (final String className : classNames) {
+                futures.add(executorService.submit(new Callable<Entry>() {
+                    @Override public Entry call() throws Exception {
+                        return instrument(className);
+                    }
+                }));
+            }
+
+            File outputDirectory = outputJar.getAbsoluteFile().getParentFile();
+            if (!outputDirectory.exists()) {
+                outputDirectory.mkdirs();
+            }
+
+            int count = 0;
+            Set<String> writtenEntries = new HashSet<String>();
+            JarOutputStream jarOutputStream = new JarOutputStream(new FileOutputStream(outputJar));
+            try {
+                // written in input order so the same inputs always produce the same jar
+                for (int i = 0; i < futures.size(); i++) {
+                    Entry entry = getResult(classNames.get(i), futures.get(i));
+                    if (entry == null || !writtenEntries.add(entry.name)) {
+                        continue;
+                    }
+                    jarOutputStream.putNextEntry(new JarEntry(entry.name));
+                    jarOutputStream.write(entry.classBytes);
+                    jarOutputStream.closeEntry();
+                    count++;
+                }
+            } finally {
+                jarOutputStream.close();
+            }
+            return count;
+        } finally {
+            executorService.shutdownNow();
+        }
+    }
+
+    private Entry getResult(String className, Future<Entry> future) throws InterruptedException {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            // it'll be instrumented (or fail) when a test loads it, just like without a preinstrumented jar
+            LOGGER.log(Level.WARNING, "couldn't preinstrument " + className, e.getCause());
+            return null;
+        }
+    }
+
+    private List<String> findClassNames() throws IOException {
+        List<String> classNames = new ArrayList<String>();
+        for (File inputJar : inputJars) {
+            JarFile jarFile = new JarFile(inputJar);
+            try {
+                Enumeration<JarEntry> entries = jarFile.entries();
+                while (entries.hasMoreElements()) {
+                    String name = entries.nextElement().getName();
+                    if (name.endsWith(".class")) {
+                        classNames.add(name.substring(0, name.length() - ".class".length()).replace('/', '.'));
+                    }
+                }
+            } finally {
+                jarFile.close();
+            }
+        }
+        return classNames;
+    }
+
+    private Entry instrument(String className) throws Exception {
+        Worker worker = workers.get();
+        if (worker.androidTranslator.classHasFromAndroidEquivalent(className)) {
+            return null;
+        }
+
+        CtClass ctClass = worker.classPool.get(className);
+        if (!worker.androidTranslator.shouldInstrument(ctClass)) {
+            return null;
+        }
+
+        List<byte[]> originalDigests = worker.androidTranslator.getOriginalDigests(ctClass);
+        if (originalDigests == null) {
+            throw new NotFoundException(className);
+        }
+        // instrumented classes stay in the worker's pool, so subclasses see them as they would when loaded lazily
+        worker.androidTranslator.instrumentWithSuperclasses(ctClass);
+        String key = ClassCache.keyFor(originalDigests, AndroidTranslator.CACHE_VERSION,
+                worker.androidTranslator.getInstrumentationConfig());
+        return new Entry(ClassCache.entryNameFor(key), ctClass.toBytecode());
+    }
+
+    /**
+     * Javassist class pools aren't safe to modify from several threads, so each thread gets its own, along with a
+     * translator to remember which classes in it are already instrumented.
+     */
+    private class Worker {
+        private final ClassPool classPool = new ClassPool();
+        private final AndroidTranslator androidTranslator;
+
+        Worker() throws NotFoundException {
+            classPool.appendClassPath(new LoaderClassPath(Preinstrumenter.class.getClassLoader()));
+            for (File inputJar : inputJars) {
+                classPool.appendClassPath(inputJar.getAbsolutePath());
+            }
+            androidTranslator = new AndroidTranslator(ShadowWrangler.getInstance(), null, customClassNames);
+        }
+    }
+
+    private static class Entry {
+        final String name;
+        final byte[] classBytes;
+
+        Entry(String name, byte[] classBytes) {
+            this.name = name;
+            this.classBytes = classBytes;
+        }
+    }
+}
@@ -1,7 +1,13 @@
 package com.xtremelabs.robolectric.bytecode;
 
+import com.xtremelabs.robolectric.internal.DoNotInstrument;
+import com.xtremelabs.robolectric.internal.Implementation;
+import com.xtremelabs.robolectric.internal.Implements;
+import com.xtremelabs.robolectric.internal.Instrument;
+import com.xtremelabs.robolectric.internal.RealObject;
 import javassist.CannotCompileException;
 import javassist.ClassPool;
+import javassist.CtClass;
 import javassist.LoaderClassPath;
 import javassist.NotFoundException;
 
@@ -10,8 +16,24 @@ import java.lang.System;
 import java.util.List;
 
 public class RobolectricClassLoader extends javassist.Loader {
+    /**
+     * Classes in these packages come from the shared loader in every {@link #newThreadLoader() thread loader}: the
+     * Android classes and the libraries they use, and the instrumentation support they call into.
+     */
+    private static final String[] SHARED_PACKAGES = {"android.", "com.android.", "com.google.android.", "dalvik.",
+            "org.apache.http.", "org.json.", "org.xmlpull.", "com.xtremelabs.robolectric.bytecode."};
+
+    /**
+     * The annotations the instrumentation support reads off shadow classes in every thread loader. The rest of
+     * {@code com.xtremelabs.robolectric.internal} refers to Robolectric and the shadows, so it stays per thread.
+     */
+    private static final String[] SHARED_CLASSES = {Implements.class.getName(), Implementation.class.getName(),
+            RealObject.class.getName(), Instrument.class.getName(), DoNotInstrument.class.getName()};
+
     private ClassCache classCache;
+    private ClassPool classPool;
     private AndroidTranslator androidTranslator;
+    private RobolectricClassLoader sharedLoader;
 
     public RobolectricClassLoader(ClassHandler classHandler) {
         this(classHandler, null);
@@ -23,17 +45,9 @@ public class RobolectricClassLoader extends javassist.Loader {
         delegateLoadingOf(AndroidTranslator.class.getName());
         delegateLoadingOf(ClassHandler.class.getName());
 
-        final String classCachePath = System.getProperty("cached.robolectric.classes.path");
-        final File classCacheDirectory;
-        if (null == classCachePath || "".equals(classCachePath.trim())) {
-            classCacheDirectory = new File("./tmp");
-        } else {
-            classCacheDirectory = new File(classCachePath);
-        }
-
-        classCache = new ClassCache(new File(classCacheDirectory, "cached-robolectric-classes.jar").getAbsolutePath(), AndroidTranslator.CACHE_VERSION);
+        classCache = createClassCache();
         try {
-            ClassPool classPool = new ClassPool();
+            classPool = new ClassPool();
             classPool.appendClassPath(new LoaderClassPath(RobolectricClassLoader.class.getClassLoader()));
 
             androidTranslator = new AndroidTranslator(classHandler, classCache, customClassNames);
@@ -45,7 +59,51 @@ public class RobolectricClassLoader extends javassist.Loader {
         }
     }
 
+    private static ClassCache createClassCache() {
+        final String classCachePath = System.getProperty("cached.robolectric.classes.path");
+        final File classCacheDirectory;
+        if (null == classCachePath || "".equals(classCachePath.trim())) {
+            classCacheDirectory = new File("./tmp");
+        } else {
+            classCacheDirectory = new File(classCachePath);
+        }
+
+        final String preinstrumentedJarPath = System.getProperty("robolectric.preinstrumented.jar");
+        final File preinstrumentedJar = null == preinstrumentedJarPath || "".equals(preinstrumentedJarPath.trim())
+                ? null : new File(preinstrumentedJarPath);
+
+        return new ClassCache(new File(classCacheDirectory, "cached-robolectric-classes").getAbsoluteFile(),
+                AndroidTranslator.CACHE_VERSION, preinstrumentedJar);
+    }
+
+    private RobolectricClassLoader(RobolectricClassLoader sharedLoader) {
+        super(RobolectricClassLoader.class.getClassLoader(), null);
+
+        delegateLoadingOf(AndroidTranslator.class.getName());
+        delegateLoadingOf(ClassHandler.class.getName());
+
+        this.sharedLoader = sharedLoader;
+    }
+
+    /**
+     * Creates a loader for tests running on another thread alongside this loader's. It takes instrumented classes, and
+     * those in the packages Android classes live in, from this loader, so they are instrumented and defined only once
+     * and keep reporting to this loader's {@link ClassHandler}. It defines its own copy of everything else from the
+     * original bytes, including Robolectric, the shadows, the tests and the code under test, so the static state of
+     * those is separate per thread. Static fields of the shared classes are shared between threads too.
+     */
+    public RobolectricClassLoader newThreadLoader() {
+        if (sharedLoader != null) {
+            return sharedLoader.newThreadLoader();
+        }
+        return new RobolectricClassLoader(this);
+    }
+
     public void addCustomShadowClass(String classOrPackageToBeInstrumented) {
+        if (sharedLoader != null) {
+            sharedLoader.addCustomShadowClass(classOrPackageToBeInstrumented);
+            return;
+        }
         androidTranslator.addCustomShadowClass(classOrPackageToBeInstrumented);
     }
 
@@ -76,10 +134,63 @@ public class RobolectricClassLoader extends javassist.Loader {
 
     @Override
     protected Class findClass(String name) throws ClassNotFoundException {
-        byte[] classBytes = classCache.getClassBytesFor(name);
+        if (sharedLoader != null) {
+            return sharedLoader.isShared(name) ? sharedLoader.loadClass(name) : super.findClass(name);
+        }
+
+        byte[] classBytes = getCachedClassBytes(name);
         if (classBytes != null) {
             return defineClass(name, classBytes, 0, classBytes.length);
         }
         return super.findClass(name);
     }
+
+    /**
+     * @return the cached instrumented bytes for {@code name}, or null if it isn't cached or isn't instrumented at all
+     */
+    private byte[] getCachedClassBytes(String name) {
+        if (androidTranslator.classHasFromAndroidEquivalent(name)) {
+            return null;
+        }
+
+        CtClass ctClass;
+        try {
+            ctClass = classPool.get(name);
+        } catch (NotFoundException e) {
+            return null;
+        }
+        if (!androidTranslator.shouldInstrument(ctClass)) {
+            return null;
+        }
+
+        List<byte[]> originalDigests = androidTranslator.getOriginalDigests(ctClass);
+        if (originalDigests == null) {
+            return null;
+        }
+        return classCache.getClassBytesFor(name, originalDigests, androidTranslator.getInstrumentationConfig());
+    }
+
+    private boolean isShared(String name) {
+        for (String sharedPackage : SHARED_PACKAGES) {
+            if (name.startsWith(sharedPackage)) {
+                return true;
+            }
+        }
+        for (String sharedClass : SHARED_CLASSES) {
+            if (name.equals(sharedClass)) {
+                return true;
+            }
+        }
+        if (androidTranslator.classHasFromAndroidEquivalent(name)) {
+            return true;
+        }
+
+        synchronized (androidTranslator) {
+            try {
+                return androidTranslator.shouldInstrument(classPool.get(name));
+            } catch (NotFoundException e) {
+                return true;
+            }
+        }
+    }
 }
@@ -11,6 +11,10 @@ import java.util.Set;
 
 @SuppressWarnings({"UnusedDeclaration"})
 public class RobolectricInternals {
+    // instrumented calls to methods without parameters pass null, and are handed these instead
+    private static final String[] NO_PARAM_TYPES = new String[0];
+    private static final Object[] NO_PARAMS = new Object[0];
+
     // initialized via magic by AndroidTranslator
     private static ClassHandler classHandler;
     private static Set<String> unloadableClassNames = new HashSet<String>();
@@ -141,6 +145,10 @@ public class RobolectricInternals {
     @SuppressWarnings({"UnusedDeclaration"})
     public static Object methodInvoked(Class clazz, String methodName, Object instance, String[] paramTypes, Object[] params) throws Throwable {
         try {
+          if (paramTypes == null) {
+              paramTypes = NO_PARAM_TYPES;
+              params = NO_PARAMS;
+          }
           return classHandler.methodInvoked(clazz, methodName, instance, paramTypes, params);
         } catch(java.lang.LinkageError e) {
           throw new Exception(e);
@@ -0,0 +1,220 @@
+package com.xtremelabs.robolectric.bytecode;
+
+import javassist.CannotCompileException;
+import javassist.ClassClassPath;
+import javassist.ClassPool;
+import javassist.CtClass;
+import javassist.CtNewMethod;
+import javassist.LoaderClassPath;
+import javassist.NotFoundException;
+
+import java.io.IOException;
+import java.lang.ref.WeakReference;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Calls a single shadow method directly, with a checkcast on each argument, instead of going through
+ * {@link Method#invoke(Object, Object...)}. One subclass is generated per shadow method the first time
+ * {@link ShadowWrangler} resolves it, and reused for as long as the shadow's class loader is around; methods that
+ * can't be linked from outside the shadow's package keep using reflection.
+ * <p/>
+ * Like {@code Method.invoke}, an invoker throws an {@link IllegalArgumentException} if it is handed a shadow or
+ * arguments of the wrong types, rather than failing on the cast.
+ */
+public abstract class ShadowInvoker {
+    private static final AtomicInteger counter = new AtomicInteger();
+    // the invoker loaders hold their shadow loaders as parents, so they may only be weakly referenced from here
+    private static final Map<ClassLoader, WeakReference<InvokerClassLoader>> invokerClassLoaders = new WeakHashMap<ClassLoader, WeakReference<InvokerClassLoader>>();
+
+    public abstract Object invoke(Object shadow, Object[] params) throws Throwable;
+
+    /**
+     * @return a direct-call invoker for {@code method}, or null if one can't be generated
+     */
+    public static ShadowInvoker generate(Method method) {
+        if (!isLinkable(method)) {
+            return null;
+        }
+        return getInvokerClassLoader(method.getDeclaringClass().getClassLoader()).getInvoker(method);
+    }
+
+    protected static IllegalArgumentException argumentTypeMismatch() {
+        return new ArgumentTypeMismatchException();
+    }
+
+    private static ShadowInvoker define(InvokerClassLoader invokerClassLoader, Method method) {
+        Class<?> shadowClass = method.getDeclaringClass();
+        String invokerClassName = ShadowInvoker.class.getName() + "$$" + shadowClass.getSimpleName() + "$"
+                + method.getName() + "$" + counter.incrementAndGet();
+        try {
+            ClassPool classPool = invokerClassLoader.classPool;
+            CtClass invokerCtClass = classPool.makeClass(invokerClassName, classPool.get(ShadowInvoker.class.getName()));
+            invokerCtClass.addMethod(CtNewMethod.make(generateInvokeMethod(method), invokerCtClass));
+            byte[] bytes = invokerCtClass.toBytecode();
+            invokerCtClass.detach();
+
+            Class<?> invokerClass = invokerClassLoader.define(invokerClassName, bytes);
+            return (ShadowInvoker) invokerClass.newInstance();
+        } catch (NotFoundException e) {
+            return null;
+        } catch (CannotCompileException e) {
+            return null;
+        } catch (IOException e) {
+            return null;
+        } catch (InstantiationException e) {
+            return null;
+        } catch (IllegalAccessException e) {
+            return null;
+        } catch (LinkageError e) {
+            return null;
+        }
+    }
+
+    /* package */ static String generateInvokeMethod(Method method) {
+        Class<?> shadowClass = method.getDeclaringClass();
+        Class<?> returnType = method.getReturnType();
+        boolean isStatic = Modifier.isStatic(method.getModifiers());
+
+        StringBuilder call = new StringBuilder();
+        if (isStatic) {
+            call.append(sourceName(shadowClass));
+        } else {
+            call.append("((").append(sourceName(shadowClass)).append(") $1)");
+        }
+        call.append(".").append(method.getName()).append("(");
+        Class<?>[] parameterTypes = method.getParameterTypes();
+        for (int i = 0; i < parameterTypes.length; i++) {
+            if (i > 0) call.append(", ");
+            Class<?> parameterType = parameterTypes[i];
+            if (parameterType.isPrimitive()) {
+                Type type = Type.find(parameterType);
+                call.append("((").append(type.nonPrimitiveClassName(null)).append(") $2[").append(i).append("])")
+                        .append(type.unboxString());
+            } else {
+                call.append("(").append(sourceName(parameterType)).append(") $2[").append(i).append("]");
+            }
+        }
+        call.append(")");
+
+        StringBuilder buf = new StringBuilder();
+        buf.append("public Object invoke(Object shadow, Object[] params) throws Throwable {\n");
+        buf.append("if (").append(argumentTypeChecks(method, isStatic)).append(") throw argumentTypeMismatch();\n");
+        if (returnType == Void.TYPE) {
+            buf.append(call).append(";\nreturn null;\n");
+        } else if (returnType.isPrimitive()) {
+            buf.append("return ").append(Type.find(returnType).nonPrimitiveClassName(null)).append(".valueOf(")
+                    .append(call).append(");\n");
+        } else {
+            buf.append("return ").append(call).append(";\n");
+        }
+        buf.append("}");
+        return buf.toString();
+    }
+
+    private static String argumentTypeChecks(Method method, boolean isStatic) {
+        Class<?>[] parameterTypes = method.getParameterTypes();
+        StringBuilder checks = new StringBuilder();
+        checks.append("$2.length != ").append(parameterTypes.length);
+        if (!isStatic) {
+            checks.append(" || !($1 instanceof ").append(sourceName(method.getDeclaringClass())).append(")");
+        }
+        for (int i = 0; i < parameterTypes.length; i++) {
+            Class<?> parameterType = parameterTypes[i];
+            if (parameterType.isPrimitive()) {
+                checks.append(" || !($2[").append(i).append("] instanceof ")
+                        .append(Type.find(parameterType).nonPrimitiveClassName(null)).append(")");
+            } else if (parameterType != Object.class) {
+                checks.append(" || !($2[").append(i).append("] == null || $2[").append(i).append("] instanceof ")
+                        .append(sourceName(parameterType)).append(")");
+            }
+        }
+        return checks.toString();
+    }
+
+    private static boolean isLinkable(Method method) {
+        if (!Modifier.isPublic(method.getModifiers()) || !isPublic(method.getDeclaringClass())) {
+            return false;
+        }
+        for (Class<?> parameterType : method.getParameterTypes()) {
+            if (!isPublic(parameterType)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isPublic(Class<?> clazz) {
+        while (clazz.isArray()) {
+            clazz = clazz.getComponentType();
+        }
+        return clazz.isPrimitive() || Modifier.isPublic(clazz.getModifiers());
+    }
+
+    private static String sourceName(Class<?> clazz) {
+        if (clazz.isArray()) {
+            return sourceName(clazz.getComponentType()) + "[]";
+        }
+        return clazz.getName();
+    }
+
+    private static InvokerClassLoader getInvokerClassLoader(ClassLoader shadowClassLoader) {
+        synchronized (invokerClassLoaders) {
+            WeakReference<InvokerClassLoader> reference = invokerClassLoaders.get(shadowClassLoader);
+            InvokerClassLoader invokerClassLoader = reference == null ? null : reference.get();
+            if (invokerClassLoader == null) {
+                invokerClassLoader = new InvokerClassLoader(shadowClassLoader);
+                invokerClassLoaders.put(shadowClassLoader, new WeakReference<InvokerClassLoader>(invokerClassLoader));
+            }
+            return invokerClassLoader;
+        }
+    }
+
+    /* package */ static class ArgumentTypeMismatchException extends IllegalArgumentException {
+        ArgumentTypeMismatchException() {
+            super("argument type mismatch");
+        }
+    }
+
+    /**
+     * Sees the shadow classes through the loader that loaded them, but always hands back our own
+     * {@link ShadowInvoker}, since the instrumenting loader would otherwise load a second copy of it. Each invoker it
+     * defines is kept, so shadow methods resolved again after their bindings change don't generate new classes.
+     */
+    private static class InvokerClassLoader extends ClassLoader {
+        private final ClassPool classPool = new ClassPool();
+        private final Map<String, ShadowInvoker> invokers = new HashMap<String, ShadowInvoker>();
+
+        InvokerClassLoader(ClassLoader shadowClassLoader) {
+            super(shadowClassLoader);
+            classPool.appendClassPath(new ClassClassPath(ShadowInvoker.class));
+            classPool.appendClassPath(new LoaderClassPath(shadowClassLoader));
+        }
+
+        synchronized ShadowInvoker getInvoker(Method method) {
+            String key = method.toString();
+            if (invokers.containsKey(key)) {
+                return invokers.get(key);
+            }
+            ShadowInvoker invoker = ShadowInvoker.define(this, method);
+            invokers.put(key, invoker);
+            return invoker;
+        }
+
+        @Override
+        protected synchronized Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+            if (name.equals(ShadowInvoker.class.getName())) {
+                return ShadowInvoker.class;
+            }
+            return super.loadClass(name, resolve);
+        }
+
+        synchronized Class<?> define(String name, byte[] bytes) {
+            return defineClass(name, bytes, 0, bytes.length);
+        }
+    }
+}
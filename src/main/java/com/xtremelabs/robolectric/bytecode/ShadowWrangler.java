@@ -21,28 +21,60 @@ import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class ShadowWrangler implements ClassHandler {
     public static final String SHADOW_FIELD_NAME = "__shadow__";
 
     private static ShadowWrangler singleton;
+    private static final InheritableThreadLocal<ShadowWrangler> threadInstance = new InheritableThreadLocal<ShadowWrangler>();
+    private static volatile boolean hasThreadInstances;
 
     public boolean debug = false;
     private boolean strictI18n = false;
     
     private final Map<Class, MetaShadow> metaShadowMap = new HashMap<Class, MetaShadow>();
-    private Map<String, String> shadowClassMap = new HashMap<String, String>();
-    private Map<Class, Field> shadowFieldMap = new HashMap<Class, Field>();
+    private final Map<String, String> shadowClassMap = new ConcurrentHashMap<String, String>();
+    private final Map<Class, Field> shadowFieldMap = new ConcurrentHashMap<Class, Field>();
+    private final Map<InvocationKey, InvocationPlan> invocationPlans = new ConcurrentHashMap<InvocationKey, InvocationPlan>();
+    // the bindings the cached invocation plans were resolved against, kept while a new test binds its shadows
+    private volatile Map<String, String> plannedShadowClassMap;
+    // the loader of the bound shadow classes, which for a thread instance isn't the loader of the classes they shadow
+    private volatile ClassLoader shadowClassLoader;
     private boolean logMissingShadowMethods = false;
+    private boolean directDispatch = true;
 
     // sorry! it really only makes sense to have one per ClassLoader anyway though [xw/hu]
     public static ShadowWrangler getInstance() {
+        if (hasThreadInstances) {
+            ShadowWrangler instance = threadInstance.get();
+            if (instance != null) {
+                return instance;
+            }
+        }
+        return getSingleton();
+    }
+
+    private static synchronized ShadowWrangler getSingleton() {
         if (singleton == null) {
             singleton = new ShadowWrangler();
         }
         return singleton;
     }
 
+    /**
+     * Gives the calling thread, and any threads it starts, its own instance, returned by {@link #getInstance()} from
+     * then on. Used for tests running in parallel, each through a {@link RobolectricClassLoader#newThreadLoader()
+     * thread loader}: calls from the shared instrumented classes reach the singleton, which hands them on to the
+     * calling thread's instance, so each thread's calls go to its own bindings and its own copies of the shadows.
+     */
+    public static ShadowWrangler newThreadInstance() {
+        ShadowWrangler instance = new ShadowWrangler();
+        threadInstance.set(instance);
+        hasThreadInstances = true;
+        return instance;
+    }
+
     private ShadowWrangler() {
     }
     
@@ -70,7 +102,10 @@ public class ShadowWrangler implements ClassHandler {
     }
 
     @Override
-    public void beforeTest() {
+    public synchronized void beforeTest() {
+        if (plannedShadowClassMap == null) {
+            plannedShadowClassMap = new HashMap<String, String>(shadowClassMap);
+        }
         shadowClassMap.clear();
     }
 
@@ -79,32 +114,99 @@ public class ShadowWrangler implements ClassHandler {
     }
 
     public void bindShadowClass(Class<?> realClass, Class<?> shadowClass) {
-        shadowClassMap.put(realClass.getName(), shadowClass.getName());
+        shadowClassLoader = shadowClass.getClassLoader();
+        bindShadowClass(realClass.getName(), shadowClass.getName());
         if (debug) System.out.println("shadow " + realClass + " with " + shadowClass);
     }
 
+    private synchronized void bindShadowClass(String realClassName, String shadowClassName) {
+        String previousShadowClassName = shadowClassMap.put(realClassName, shadowClassName);
+        if (!shadowClassName.equals(previousShadowClassName) && plannedShadowClassMap == null) {
+            invocationPlans.clear();
+        }
+    }
+
     @Override
     public Object methodInvoked(Class clazz, String methodName, Object instance, String[] paramTypes, Object[] params) throws Throwable {
-        InvocationPlan invocationPlan = new InvocationPlan(clazz, methodName, instance, paramTypes);
-        if (!invocationPlan.prepare()) {
+        if (hasThreadInstances) {
+            ShadowWrangler instanceForThread = threadInstance.get();
+            if (instanceForThread != null && instanceForThread != this) {
+                return instanceForThread.methodInvoked(clazz, methodName, instance, paramTypes, params);
+            }
+        }
+
+        InvocationPlan invocationPlan = getInvocationPlan(clazz, methodName, paramTypes);
+        if (!invocationPlan.hasShadowClass()) {
             reportNoShadowMethodFound(clazz, methodName, paramTypes);
             return null;
         }
-        
-        if (strictI18n && !invocationPlan.isI18nSafe()) {
+
+        Object shadow = instance == null ? null : shadowFor(instance);
+        ShadowMethod shadowMethod = invocationPlan.getShadowMethod(shadow);
+        Method method = shadowMethod.method;
+        if (method == null) {
+            reportNoShadowMethodFound(clazz, methodName, paramTypes);
+            return null;
+        }
+
+        if ((instance == null) != shadowMethod.isStatic) {
+            throw new RuntimeException("method staticness of " + clazz.getName() + "." + methodName + " and " + invocationPlan.getDeclaredShadowClass().getName() + "." + method.getName() + " don't match");
+        }
+
+        if (strictI18n && !shadowMethod.i18nSafe) {
         	throw new I18nException("Method " + methodName + " on class " + clazz.getName() + " is not i18n-safe.");
         }
 
+        if (shadowMethod.invoker != null) {
+            try {
+                return shadowMethod.invoker.invoke(shadow, params);
+            } catch (ShadowInvoker.ArgumentTypeMismatchException e) {
+                throw argumentTypeMismatch(shadow, invocationPlan, e);
+            } catch (Throwable throwable) {
+                throw stripStackTrace(throwable);
+            }
+        }
+
         try {
-            return invocationPlan.getMethod().invoke(invocationPlan.getShadow(), params);
+            return method.invoke(shadow, params);
         } catch (IllegalArgumentException e) {
-            throw new RuntimeException(invocationPlan.getShadow().getClass().getName() + " is not assignable from " +
-                    invocationPlan.getDeclaredShadowClass().getName(), e);
+            throw argumentTypeMismatch(shadow, invocationPlan, e);
         } catch (InvocationTargetException e) {
             throw stripStackTrace(e.getCause());
         }
     }
 
+    private RuntimeException argumentTypeMismatch(Object shadow, InvocationPlan invocationPlan, IllegalArgumentException e) {
+        String shadowClassName = shadow == null ? "null" : shadow.getClass().getName();
+        return new RuntimeException(shadowClassName + " is not assignable from " +
+                invocationPlan.getDeclaredShadowClass().getName(), e);
+    }
+
+    private InvocationPlan getInvocationPlan(Class clazz, String methodName, String[] paramTypes) {
+        if (plannedShadowClassMap != null) {
+            discardInvocationPlansIfRebound();
+        }
+
+        InvocationKey key = new InvocationKey(clazz, methodName, paramTypes);
+        InvocationPlan invocationPlan = invocationPlans.get(key);
+        if (invocationPlan == null) {
+            invocationPlan = new InvocationPlan(clazz, methodName, paramTypes);
+            invocationPlans.put(key, invocationPlan);
+        }
+        return invocationPlan;
+    }
+
+    /**
+     * The first call after a test has bound its shadows keeps the invocation plans if it bound the same ones as the
+     * test the plans were resolved for.
+     */
+    private synchronized void discardInvocationPlansIfRebound() {
+        if (plannedShadowClassMap != null && !plannedShadowClassMap.equals(shadowClassMap)) {
+            invocationPlans.clear();
+        }
+        plannedShadowClassMap = null;
+    }
+
     private <T extends Throwable> T stripStackTrace(T throwable) {
         List<StackTraceElement> stackTrace = new ArrayList<StackTraceElement>();
         for (StackTraceElement stackTraceElement : throwable.getStackTrace()) {
@@ -112,6 +214,7 @@ public class ShadowWrangler implements ClassHandler {
             boolean isInternalCall = className.startsWith("sun.reflect.")
                     || className.startsWith("java.lang.reflect.")
                     || className.equals(ShadowWrangler.class.getName())
+                    || className.startsWith(ShadowInvoker.class.getName())
                     || className.equals(RobolectricInternals.class.getName());
             if (!isInternalCall) {
                 stackTrace.add(stackTraceElement);
@@ -167,7 +270,7 @@ public class ShadowWrangler implements ClassHandler {
         if (debug)
             System.out.println("creating new " + shadowClassName + " as shadow for " + instance.getClass().getName());
         try {
-            Class<?> shadowClass = loadClass(shadowClassName, instance.getClass().getClassLoader());
+            Class<?> shadowClass = loadClass(shadowClassName, getShadowClassLoader(instance.getClass().getClassLoader()));
             Constructor<?> constructor = findConstructor(instance, shadowClass);
             if (constructor != null) {
                 shadow = constructor.newInstance(instance);
@@ -206,6 +309,11 @@ public class ShadowWrangler implements ClassHandler {
         }
     }
 
+    private ClassLoader getShadowClassLoader(ClassLoader realClassLoader) {
+        ClassLoader classLoader = shadowClassLoader;
+        return classLoader == null ? realClassLoader : classLoader;
+    }
+
     private String getShadowClassName(Class clazz) {
         String shadowClassName = null;
         while (shadowClassName == null && clazz != null) {
@@ -275,90 +383,105 @@ public class ShadowWrangler implements ClassHandler {
         logMissingShadowMethods = false;
     }
 
-    private class InvocationPlan {
-        private Class clazz;
-        private ClassLoader classLoader;
-        private String methodName;
-        private Object instance;
-        private String[] paramTypes;
-        private Class<?> declaredShadowClass;
-        private Method method;
-        private Object shadow;
-
-        public InvocationPlan(Class clazz, String methodName, Object instance, String... paramTypes) {
+    /**
+     * Shadow methods are called through generated {@link ShadowInvoker}s by default; turning this off sends every
+     * call through {@link Method#invoke(Object, Object...)} instead.
+     */
+    public synchronized void setDirectDispatch(boolean directDispatch) {
+        if (this.directDispatch != directDispatch) {
+            this.directDispatch = directDispatch;
+            invocationPlans.clear();
+        }
+    }
+
+    private static class InvocationKey {
+        private final Class clazz;
+        private final String methodName;
+        private final String[] paramTypes;
+        private final int hashCode;
+
+        InvocationKey(Class clazz, String methodName, String[] paramTypes) {
             this.clazz = clazz;
-            this.classLoader = clazz.getClassLoader();
             this.methodName = methodName;
-            this.instance = instance;
             this.paramTypes = paramTypes;
+            this.hashCode = 31 * (31 * clazz.hashCode() + methodName.hashCode()) + Arrays.hashCode(paramTypes);
         }
 
-        public Class<?> getDeclaredShadowClass() {
-            return declaredShadowClass;
-        }
-
-        public Method getMethod() {
-            return method;
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof InvocationKey)) return false;
+            InvocationKey that = (InvocationKey) o;
+            return clazz == that.clazz && methodName.equals(that.methodName) && Arrays.equals(paramTypes, that.paramTypes);
         }
 
-        public Object getShadow() {
-            return shadow;
-        }
-        
-        public boolean isI18nSafe() {
-        	// method is loaded by another class loader. So do everything reflectively.
-        	Annotation[] annos = method.getAnnotations();
-        	for (int i = 0; i < annos.length; i++) {
-        		String name = annos[i].annotationType().getName();
-        		if (name.equals("com.xtremelabs.robolectric.internal.Implementation")) {
-					try {
-						Method m = (annos[i]).getClass().getMethod("i18nSafe");
-	        			return (Boolean) m.invoke(annos[i]);
-					} catch (Exception e) {
-						return true;	// should probably throw some other exception
-					}
-        		}
-        	}
-        	
-        	return true;	
+        @Override
+        public int hashCode() {
+            return hashCode;
         }
+    }
 
-        public boolean prepare() {
-            Class<?>[] paramClasses = getParamClasses();
+    /**
+     * The reflective part of a shadow method invocation, resolved once per (class, method, parameter types) and
+     * reused for every later call. Instance methods are resolved per shadow class, since a subclass's shadow may
+     * override the method found on the declared shadow class.
+     */
+    private class InvocationPlan {
+        private final Class clazz;
+        private final ClassLoader classLoader;
+        private final String methodName;
+        private final String shadowMethodName;
+        private final Class<?>[] paramClasses;
+        private final Class<?> declaredShadowClass;
+        private final Map<Class, ShadowMethod> shadowMethods = new ConcurrentHashMap<Class, ShadowMethod>();
+        private volatile ShadowMethod staticShadowMethod;
+
+        public InvocationPlan(Class clazz, String methodName, String... paramTypes) {
+            this.clazz = clazz;
+            this.classLoader = clazz.getClassLoader();
+            this.methodName = methodName;
+            this.shadowMethodName = methodName.equals("<init>") ? "__constructor__" : methodName;
+            this.paramClasses = getParamClasses(paramTypes);
 
             Class<?> originalClass = loadClass(clazz.getName(), classLoader);
+            this.declaredShadowClass = findDeclaredShadowClassForMethod(originalClass, methodName, paramClasses);
+        }
 
-            declaredShadowClass = findDeclaredShadowClassForMethod(originalClass, methodName, paramClasses);
-            if (declaredShadowClass == null) {
-                return false;
-            }
+        public Class<?> getDeclaredShadowClass() {
+            return declaredShadowClass;
+        }
 
-            if (methodName.equals("<init>")) {
-                methodName = "__constructor__";
+        public boolean hasShadowClass() {
+            return declaredShadowClass != null;
+        }
+
+        public ShadowMethod getShadowMethod(Object shadow) {
+            if (shadow == null) {
+                if (staticShadowMethod == null) {
+                    staticShadowMethod = resolve(findShadowClass(clazz));
+                }
+                return staticShadowMethod;
             }
 
-            if (instance != null) {
-                shadow = shadowFor(instance);
-                method = getMethod(shadow.getClass(), methodName, paramClasses);
-            } else {
-                shadow = null;
-                method = getMethod(findShadowClass(clazz), methodName, paramClasses);
+            Class<?> shadowClass = shadow.getClass();
+            ShadowMethod shadowMethod = shadowMethods.get(shadowClass);
+            if (shadowMethod == null) {
+                shadowMethod = resolve(shadowClass);
+                shadowMethods.put(shadowClass, shadowMethod);
             }
+            return shadowMethod;
+        }
 
+        private ShadowMethod resolve(Class<?> shadowClass) {
+            Method method = shadowClass == null ? null : getMethod(shadowClass, shadowMethodName, paramClasses);
             if (method == null) {
                 if (debug) {
-                    System.out.println("No method found for " + clazz + "." + methodName + "(" + Arrays.asList(paramClasses) + ") on " + declaredShadowClass.getName());
+                    System.out.println("No method found for " + clazz + "." + shadowMethodName + "(" + Arrays.asList(paramClasses) + ") on " + declaredShadowClass.getName());
                 }
-                return false;
-            }
-
-            if ((instance == null) != Modifier.isStatic(method.getModifiers())) {
-                throw new RuntimeException("method staticness of " + clazz.getName() + "." + methodName + " and " + declaredShadowClass.getName() + "." + method.getName() + " don't match");
+                return ShadowMethod.NONE;
             }
-
             method.setAccessible(true);
-
-            return true;
+            return new ShadowMethod(method, directDispatch ? ShadowInvoker.generate(method) : null);
         }
 
         private Class<?> findDeclaredShadowClassForMethod(Class<?> originalClass, String methodName, Class<?>[] paramClasses) {
@@ -371,12 +494,12 @@ public class ShadowWrangler implements ClassHandler {
             if (declaredShadowClassName == null) {
                 return null;
             }
-            return loadClass(declaredShadowClassName, classLoader);
+            return loadClass(declaredShadowClassName, getShadowClassLoader(classLoader));
         }
 
         private Class<?> findDeclaringClassForMethod(String methodName, Class<?>[] paramClasses, Class<?> originalClass) {
             Class<?> declaringClass;
-            if (this.methodName.equals("<init>")) {
+            if (methodName.equals("<init>")) {
                 declaringClass = originalClass;
             } else {
                 Method originalMethod;
@@ -390,7 +513,7 @@ public class ShadowWrangler implements ClassHandler {
             return declaringClass;
         }
 
-        private Class<?>[] getParamClasses() {
+        private Class<?>[] getParamClasses(String[] paramTypes) {
             Class<?>[] paramClasses = new Class<?>[paramTypes.length];
 
             for (int i = 0; i < paramTypes.length; i++) {
@@ -432,8 +555,49 @@ public class ShadowWrangler implements ClassHandler {
 
         @Override
         public String toString() {
-            return "delegating to " + declaredShadowClass.getName() + "." + method.getName()
-                    + "(" + Arrays.toString(method.getParameterTypes()) + ")";
+            return "delegating " + clazz.getName() + "." + methodName + "(" + Arrays.toString(paramClasses) + ") to "
+                    + (declaredShadowClass == null ? "nothing" : declaredShadowClass.getName());
+        }
+    }
+
+    private static class ShadowMethod {
+        static final ShadowMethod NONE = new ShadowMethod();
+
+        final Method method;
+        final ShadowInvoker invoker;
+        final boolean isStatic;
+        final boolean i18nSafe;
+
+        private ShadowMethod() {
+            method = null;
+            invoker = null;
+            isStatic = false;
+            i18nSafe = true;
+        }
+
+        ShadowMethod(Method method, ShadowInvoker invoker) {
+            this.method = method;
+            this.invoker = invoker;
+            this.isStatic = Modifier.isStatic(method.getModifiers());
+            this.i18nSafe = isI18nSafe(method);
+        }
+
+        private static boolean isI18nSafe(Method method) {
+        	// method is loaded by another class loader. So do everything reflectively.
+        	Annotation[] annos = method.getAnnotations();
+        	for (int i = 0; i < annos.length; i++) {
+        		String name = annos[i].annotationType().getName();
+        		if (name.equals("com.xtremelabs.robolectric.internal.Implementation")) {
+					try {
+						Method m = (annos[i]).getClass().getMethod("i18nSafe");
+	        			return (Boolean) m.invoke(annos[i]);
+					} catch (Exception e) {
+						return true;	// should probably throw some other exception
+					}
+        		}
+        	}
+        	
+        	return true;	
         }
     }
 
@@ -74,6 +74,15 @@ enum Type {
         }
     }
 
+    public static Type find(Class clazz) {
+        for (Type type : Type.values()) {
+            if (type.type == clazz) {
+                return type;
+            }
+        }
+        return OBJECT;
+    }
+
     public static Class findPrimitiveClass(String name) {
         for (Type type : Type.values()) {
             if (type.type != null && type.type.getName().equals(name)) {
@@ -0,0 +1,90 @@
+package com.xtremelabs.robolectric.internal;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A piece of static shadow state that needs resetting between tests. Shadows {@link #touch()} it whenever they
+ * change that state, and {@link #resetTouched()} resets only what was touched since it last ran, so a test that
+ * never logs, shows a dialog or registers a content provider doesn't pay for clearing them.
+ * <p/>
+ * Shadows get theirs from {@link #register(Class)}, which resets them through their static {@code reset()} method.
+ */
+public abstract class StaticState {
+    private static final List<StaticState> touched = new ArrayList<StaticState>();
+
+    private volatile boolean isTouched;
+
+    protected abstract void reset();
+
+    public static StaticState register(Class<?> shadowClass) {
+        return register(shadowClass, "reset");
+    }
+
+    /**
+     * @return state reset by calling {@code shadowClass}'s static, no-argument method {@code resetMethodName}
+     */
+    public static StaticState register(Class<?> shadowClass, String resetMethodName) {
+        final Method resetMethod;
+        try {
+            resetMethod = shadowClass.getDeclaredMethod(resetMethodName);
+        } catch (NoSuchMethodException e) {
+            throw new IllegalArgumentException(shadowClass.getName() + " has no " + resetMethodName + "() method", e);
+        }
+        if (!Modifier.isStatic(resetMethod.getModifiers())) {
+            throw new IllegalArgumentException(shadowClass.getName() + "." + resetMethodName + "() isn't static");
+        }
+        resetMethod.setAccessible(true);
+
+        return new StaticState() {
+            @Override protected void reset() {
+                try {
+                    resetMethod.invoke(null);
+                } catch (IllegalAccessException e) {
+                    throw new RuntimeException(e);
+                } catch (InvocationTargetException e) {
+                    throw new RuntimeException(e.getCause());
+                }
+            }
+        };
+    }
+
+    public void touch() {
+        if (isTouched) {
+            return;
+        }
+        synchronized (touched) {
+            if (!isTouched) {
+                isTouched = true;
+                touched.add(this);
+            }
+        }
+    }
+
+    public boolean isTouched() {
+        return isTouched;
+    }
+
+    public static void resetTouched() {
+        List<StaticState> toReset;
+        synchronized (touched) {
+            toReset = new ArrayList<StaticState>(touched);
+        }
+
+        for (StaticState staticState : toReset) {
+            staticState.reset();
+        }
+
+        // only cleared afterwards, so state a reset touches on its way (e.g. by recreating a singleton) isn't
+        // reset again next time
+        synchronized (touched) {
+            for (StaticState staticState : toReset) {
+                staticState.isTouched = false;
+            }
+            touched.removeAll(toReset);
+        }
+    }
+}
@@ -17,6 +17,7 @@ import java.util.Set;
 public class AttrResourceLoader extends XmlLoader {
     Map<String, String> classAttrEnumToValue = new HashMap<String, String>();
     Set<String> knownClassAttrs = new HashSet<String>();
+    private XPathExpression enumXPath;
 
     public AttrResourceLoader(ResourceExtractor resourceExtractor) {
         super(resourceExtractor);
@@ -24,8 +25,10 @@ public class AttrResourceLoader extends XmlLoader {
 
     @Override
     protected void processResourceXml(File xmlFile, Document document, boolean isSystem) throws Exception {
-        XPathExpression stringsXPath = XPathFactory.newInstance().newXPath().compile("/resources/declare-styleable/attr/enum");
-        NodeList stringNodes = (NodeList) stringsXPath.evaluate(document, XPathConstants.NODESET);
+        if (enumXPath == null) {
+            enumXPath = XPathFactory.newInstance().newXPath().compile("/resources/declare-styleable/attr/enum");
+        }
+        NodeList stringNodes = (NodeList) enumXPath.evaluate(document, XPathConstants.NODESET);
         for (int i = 0; i < stringNodes.getLength(); i++) {
             Node node = stringNodes.item(i);
             String viewName = node.getParentNode().getParentNode().getAttributes().getNamedItem("name").getNodeValue();
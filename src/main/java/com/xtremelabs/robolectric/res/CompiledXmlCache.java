@@ -0,0 +1,376 @@
+package com.xtremelabs.robolectric.res;
+
+import com.xtremelabs.robolectric.util.CacheFiles;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+import org.w3c.dom.ProcessingInstruction;
+
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileFilter;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+
+/**
+ * Keeps the XML files of each resource directory in a compact binary file, so later runs rebuild their DOM
+ * trees from a memory-mapped table instead of parsing XML again. Each file holds a string table and the element,
+ * text and CDATA nodes of every document in the directory, and is only used while the names, sizes and
+ * modification times of the directory's XML files match the ones it was written for; otherwise the directory is
+ * parsed and written again. Loaders see the same documents either way.
+ */
+public class CompiledXmlCache {
+    private static final int MAGIC = 0x52584d4c;
+    private static final int FORMAT_VERSION = 1;
+
+    private static final byte ELEMENT = 1;
+    private static final byte TEXT = 2;
+    private static final byte CDATA = 3;
+    private static final byte PROCESSING_INSTRUCTION = 4;
+
+    private static final FileFilter XML_FILE_FILTER = new FileFilter() {
+        @Override public boolean accept(File file) {
+            return file.getName().endsWith(".xml");
+        }
+    };
+
+    private final File cacheDirectory;
+    private final DocumentBuilderFactory documentBuilderFactory;
+    private final Map<File, CompiledDirectory> compiledDirectories = new HashMap<File, CompiledDirectory>();
+
+    public CompiledXmlCache(File cacheDirectory) {
+        this.cacheDirectory = cacheDirectory;
+        this.documentBuilderFactory = DocumentLoader.newDocumentBuilderFactory();
+    }
+
+    /**
+     * @return the document for {@code xmlFile}, or null if its directory couldn't be compiled, in which case the
+     * caller should parse it as usual
+     */
+    public Document getDocument(File xmlFile) throws Exception {
+        CompiledDirectory compiledDirectory = getCompiledDirectory(xmlFile.getParentFile(), null);
+        if (compiledDirectory == null) {
+            return null;
+        }
+        Document document;
+        synchronized (documentBuilderFactory) {
+            document = documentBuilderFactory.newDocumentBuilder().newDocument();
+        }
+        return compiledDirectory.getDocument(xmlFile.getName(), document);
+    }
+
+    /**
+     * Compiles {@code xmlDirectory} now, if it isn't already, parsing its files on {@code executorService} when
+     * there is one.
+     */
+    public void compile(File xmlDirectory, ExecutorService executorService) {
+        getCompiledDirectory(xmlDirectory, executorService);
+    }
+
+    private synchronized CompiledDirectory getCompiledDirectory(File xmlDirectory, ExecutorService executorService) {
+        if (compiledDirectories.containsKey(xmlDirectory)) {
+            return compiledDirectories.get(xmlDirectory);
+        }
+
+        CompiledDirectory compiledDirectory = null;
+        try {
+            File[] xmlFiles = listXmlFiles(xmlDirectory);
+            File cacheFile = new File(cacheDirectory, cacheFileNameFor(xmlDirectory));
+            compiledDirectory = CompiledDirectory.map(cacheFile, xmlFiles);
+            if (compiledDirectory == null) {
+                byte[] bytes = compile(xmlFiles, executorService);
+                CacheFiles.writeAtomically(cacheFile, bytes, true);
+                compiledDirectory = CompiledDirectory.read(ByteBuffer.wrap(bytes), xmlFiles);
+            }
+        } catch (Exception e) {
+            // unreadable or unparseable files are reported when the caller parses them itself
+            compiledDirectory = null;
+        }
+        compiledDirectories.put(xmlDirectory, compiledDirectory);
+        return compiledDirectory;
+    }
+
+    /* package */ static File[] listXmlFiles(File xmlDirectory) {
+        File[] xmlFiles = xmlDirectory.listFiles(XML_FILE_FILTER);
+        if (xmlFiles == null) {
+            return new File[0];
+        }
+        Arrays.sort(xmlFiles, new Comparator<File>() {
+            @Override public int compare(File file1, File file2) {
+                return file1.getName().compareTo(file2.getName());
+            }
+        });
+        return xmlFiles;
+    }
+
+    /* package */ static String cacheFileNameFor(File xmlDirectory) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            byte[] hash = digest.digest(xmlDirectory.getAbsolutePath().getBytes("UTF-8"));
+            return CacheFiles.toHex(hash) + ".bin";
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        } catch (UnsupportedEncodingException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private byte[] compile(File[] xmlFiles, ExecutorService executorService) throws Exception {
+        List<Future<Document>> documents = new ArrayList<Future<Document>>();
+        for (final File xmlFile : xmlFiles) {
+            Callable<Document> parse = new Callable<Document>() {
+                @Override public Document call() throws Exception {
+                    DocumentBuilder documentBuilder;
+                    synchronized (documentBuilderFactory) {
+                        documentBuilder = documentBuilderFactory.newDocumentBuilder();
+                    }
+                    return documentBuilder.parse(xmlFile);
+                }
+            };
+            if (executorService == null) {
+                FutureTask<Document> document = new FutureTask<Document>(parse);
+                document.run();
+                documents.add(document);
+            } else {
+                documents.add(executorService.submit(parse));
+            }
+        }
+
+        Map<String, Integer> strings = new LinkedHashMap<String, Integer>();
+        ByteArrayOutputStream nodeBytes = new ByteArrayOutputStream();
+        DataOutputStream nodes = new DataOutputStream(nodeBytes);
+        int[] offsets = new int[xmlFiles.length];
+        try {
+            for (int i = 0; i < xmlFiles.length; i++) {
+                offsets[i] = nodes.size();
+                writeChildren(DocumentLoader.getDocument(documents.get(i)).getChildNodes(), nodes, strings);
+            }
+        } finally {
+            for (Future<Document> document : documents) {
+                document.cancel(false);
+            }
+        }
+        nodes.flush();
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(nodeBytes.size() * 2);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(MAGIC);
+        out.writeInt(FORMAT_VERSION);
+        out.writeInt(xmlFiles.length);
+        for (int i = 0; i < xmlFiles.length; i++) {
+            writeString(out, xmlFiles[i].getName());
+            out.writeLong(xmlFiles[i].length());
+            out.writeLong(xmlFiles[i].lastModified());
+            out.writeInt(offsets[i]);
+        }
+        out.writeInt(strings.size());
+        for (String string : strings.keySet()) {
+            writeString(out, string);
+        }
+        out.writeInt(nodeBytes.size());
+        nodeBytes.writeTo(out);
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    private static void writeChildren(NodeList children, DataOutputStream out, Map<String, Integer> strings) throws IOException {
+        List<Node> written = new ArrayList<Node>(children.getLength());
+        for (int i = 0; i < children.getLength(); i++) {
+            short nodeType = children.item(i).getNodeType();
+            if (nodeType == Node.ELEMENT_NODE || nodeType == Node.TEXT_NODE || nodeType == Node.CDATA_SECTION_NODE
+                    || nodeType == Node.PROCESSING_INSTRUCTION_NODE) {
+                written.add(children.item(i));
+            }
+        }
+
+        out.writeInt(written.size());
+        for (Node node : written) {
+            switch (node.getNodeType()) {
+                case Node.ELEMENT_NODE:
+                    out.writeByte(ELEMENT);
+                    out.writeInt(indexOf(node.getNamespaceURI(), strings));
+                    out.writeInt(indexOf(node.getNodeName(), strings));
+                    NamedNodeMap attributes = node.getAttributes();
+                    out.writeInt(attributes.getLength());
+                    for (int i = 0; i < attributes.getLength(); i++) {
+                        Node attribute = attributes.item(i);
+                        out.writeInt(indexOf(attribute.getNamespaceURI(), strings));
+                        out.writeInt(indexOf(attribute.getNodeName(), strings));
+                        out.writeInt(indexOf(attribute.getNodeValue(), strings));
+                    }
+                    writeChildren(node.getChildNodes(), out, strings);
+                    break;
+                case Node.TEXT_NODE:
+                    out.writeByte(TEXT);
+                    out.writeInt(indexOf(node.getNodeValue(), strings));
+                    break;
+                case Node.CDATA_SECTION_NODE:
+                    out.writeByte(CDATA);
+                    out.writeInt(indexOf(node.getNodeValue(), strings));
+                    break;
+                default:
+                    out.writeByte(PROCESSING_INSTRUCTION);
+                    out.writeInt(indexOf(((ProcessingInstruction) node).getTarget(), strings));
+                    out.writeInt(indexOf(((ProcessingInstruction) node).getData(), strings));
+                    break;
+            }
+        }
+    }
+
+    private static int indexOf(String string, Map<String, Integer> strings) {
+        if (string == null) {
+            return -1;
+        }
+        Integer index = strings.get(string);
+        if (index == null) {
+            index = strings.size();
+            strings.put(string, index);
+        }
+        return index;
+    }
+
+    private static void writeString(DataOutputStream out, String string) throws IOException {
+        byte[] bytes = string.getBytes("UTF-8");
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(ByteBuffer buffer) throws UnsupportedEncodingException {
+        byte[] bytes = new byte[buffer.getInt()];
+        buffer.get(bytes);
+        return new String(bytes, "UTF-8");
+    }
+
+    private static class CompiledDirectory {
+        private final ByteBuffer nodes;
+        private final String[] strings;
+        private final Map<String, Integer> offsets;
+
+        private CompiledDirectory(ByteBuffer nodes, String[] strings, Map<String, Integer> offsets) {
+            this.nodes = nodes;
+            this.strings = strings;
+            this.offsets = offsets;
+        }
+
+        /**
+         * @return the compiled directory in {@code cacheFile}, or null if there isn't one for these files
+         */
+        static CompiledDirectory map(File cacheFile, File[] xmlFiles) throws IOException {
+            if (!cacheFile.isFile()) {
+                return null;
+            }
+
+            MappedByteBuffer buffer;
+            FileInputStream inputStream = new FileInputStream(cacheFile);
+            try {
+                FileChannel channel = inputStream.getChannel();
+                buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            } finally {
+                inputStream.close();
+            }
+            try {
+                return read(buffer, xmlFiles);
+            } catch (BufferUnderflowException e) {
+                // truncated, we'll compile it again
+                return null;
+            }
+        }
+
+        static CompiledDirectory read(ByteBuffer buffer, File[] xmlFiles) throws IOException {
+            if (buffer.remaining() < 12 || buffer.getInt() != MAGIC || buffer.getInt() != FORMAT_VERSION) {
+                return null;
+            }
+            if (buffer.getInt() != xmlFiles.length) {
+                return null;
+            }
+
+            Map<String, Integer> offsets = new HashMap<String, Integer>();
+            for (File xmlFile : xmlFiles) {
+                String name = readString(buffer);
+                long length = buffer.getLong();
+                long lastModified = buffer.getLong();
+                if (!name.equals(xmlFile.getName()) || length != xmlFile.length() || lastModified != xmlFile.lastModified()) {
+                    return null;
+                }
+                offsets.put(name, buffer.getInt());
+            }
+
+            String[] strings = new String[buffer.getInt()];
+            for (int i = 0; i < strings.length; i++) {
+                strings[i] = readString(buffer);
+            }
+
+            int nodesLength = buffer.getInt();
+            ByteBuffer nodes = buffer.slice();
+            nodes.limit(nodesLength);
+            return new CompiledDirectory(nodes, strings, offsets);
+        }
+
+        Document getDocument(String fileName, Document document) {
+            Integer offset = offsets.get(fileName);
+            if (offset == null) {
+                return null;
+            }
+            ByteBuffer buffer = nodes.duplicate();
+            buffer.position(offset);
+            readChildren(buffer, document, document);
+            return document;
+        }
+
+        private void readChildren(ByteBuffer buffer, Document document, Node parent) {
+            int childCount = buffer.getInt();
+            for (int i = 0; i < childCount; i++) {
+                byte nodeType = buffer.get();
+                switch (nodeType) {
+                    case ELEMENT:
+                        Element element = document.createElementNS(string(buffer.getInt()), string(buffer.getInt()));
+                        int attributeCount = buffer.getInt();
+                        for (int j = 0; j < attributeCount; j++) {
+                            element.setAttributeNS(string(buffer.getInt()), string(buffer.getInt()), string(buffer.getInt()));
+                        }
+                        parent.appendChild(element);
+                        readChildren(buffer, document, element);
+                        break;
+                    case TEXT:
+                        parent.appendChild(document.createTextNode(string(buffer.getInt())));
+                        break;
+                    case CDATA:
+                        parent.appendChild(document.createCDATASection(string(buffer.getInt())));
+                        break;
+                    case PROCESSING_INSTRUCTION:
+                        parent.appendChild(document.createProcessingInstruction(string(buffer.getInt()), string(buffer.getInt())));
+                        break;
+                    default:
+                        throw new IllegalStateException("corrupt compiled resource file, node type " + nodeType);
+                }
+            }
+        }
+
+        private String string(int index) {
+            return index == -1 ? null : strings[index];
+        }
+    }
+}
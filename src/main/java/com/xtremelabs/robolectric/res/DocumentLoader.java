@@ -6,9 +6,18 @@ import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
 import java.io.File;
 import java.io.FileFilter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 public class DocumentLoader {
     private final XmlLoader[] xmlLoaders;
+    private final CompiledXmlCache compiledXmlCache;
+    private final ExecutorService executorService;
     private final DocumentBuilderFactory documentBuilderFactory;
     private FileFilter xmlFileFilter = new FileFilter() {
         @Override public boolean accept(File file) {
@@ -17,12 +26,30 @@ public class DocumentLoader {
     };
 
     public DocumentLoader(XmlLoader... xmlLoaders) {
+        this(null, null, xmlLoaders);
+    }
+
+    /**
+     * Files are parsed on {@code executorService} while the loaders process the ones already parsed. Loaders still
+     * see the files one at a time, on the calling thread, in the same order as when parsing them in turn, so
+     * which definition wins is unchanged.
+     *
+     * @param compiledXmlCache where to get documents from instead of parsing them, or null to always parse
+     * @param executorService  where to parse files, or null to parse each one on the calling thread
+     */
+    public DocumentLoader(CompiledXmlCache compiledXmlCache, ExecutorService executorService, XmlLoader... xmlLoaders) {
         this.xmlLoaders = xmlLoaders;
+        this.compiledXmlCache = compiledXmlCache;
+        this.executorService = executorService;
+        documentBuilderFactory = newDocumentBuilderFactory();
+    }
 
-        documentBuilderFactory = DocumentBuilderFactory.newInstance();
+    static DocumentBuilderFactory newDocumentBuilderFactory() {
+        DocumentBuilderFactory documentBuilderFactory = DocumentBuilderFactory.newInstance();
         documentBuilderFactory.setNamespaceAware(true);
         documentBuilderFactory.setIgnoringComments(true);
         documentBuilderFactory.setIgnoringElementContentWhitespace(true);
+        return documentBuilderFactory;
     }
 
     public void loadResourceXmlDirs(File... resourceXmlDirs) throws Exception {
@@ -30,9 +57,11 @@ public class DocumentLoader {
     }
 
     public void loadResourceXmlDirs(boolean isSystem, File... resourceXmlDirs) throws Exception {
+        List<File> files = new ArrayList<File>();
         for (File resourceXmlDir : resourceXmlDirs) {
-            loadResourceXmlDir(resourceXmlDir, isSystem);
+            files.addAll(listResourceXmlFiles(resourceXmlDir));
         }
+        loadResourceXmlFiles(files, isSystem);
     }
 
     public void loadResourceXmlDir(File resourceXmlDir) throws Exception {
@@ -44,23 +73,76 @@ public class DocumentLoader {
     }
 
     private void loadResourceXmlDir(File resourceXmlDir, boolean isSystem) throws Exception {
+        loadResourceXmlFiles(listResourceXmlFiles(resourceXmlDir), isSystem);
+    }
+
+    private List<File> listResourceXmlFiles(File resourceXmlDir) throws Exception {
         if (!resourceXmlDir.exists()) {
             throw new RuntimeException("no such directory " + resourceXmlDir);
         }
 
-        for (File file : resourceXmlDir.listFiles(xmlFileFilter)) {
-            loadResourceXmlFile(file, isSystem);
+        if (compiledXmlCache != null) {
+            compiledXmlCache.compile(resourceXmlDir, executorService);
         }
+        return Arrays.asList(resourceXmlDir.listFiles(xmlFileFilter));
     }
 
-    private void loadResourceXmlFile(File file, boolean isSystem) throws Exception {
+    private void loadResourceXmlFiles(List<File> files, boolean isSystem) throws Exception {
+        if (executorService == null) {
+            for (File file : files) {
+                loadResourceXmlFile(file, parse(file), isSystem);
+            }
+            return;
+        }
+
+        List<Future<Document>> documents = new ArrayList<Future<Document>>();
+        for (final File file : files) {
+            documents.add(executorService.submit(new Callable<Document>() {
+                @Override public Document call() throws Exception {
+                    return parse(file);
+                }
+            }));
+        }
+        try {
+            for (int i = 0; i < files.size(); i++) {
+                loadResourceXmlFile(files.get(i), getDocument(documents.get(i)), isSystem);
+            }
+        } finally {
+            for (Future<Document> document : documents) {
+                document.cancel(false);
+            }
+        }
+    }
+
+    /* package */ static Document getDocument(Future<Document> document) throws Exception {
+        try {
+            return document.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof Exception) {
+                throw (Exception) e.getCause();
+            }
+            throw (Error) e.getCause();
+        }
+    }
+
+    private void loadResourceXmlFile(File file, Document document, boolean isSystem) throws Exception {
         for (XmlLoader xmlLoader : xmlLoaders) {
-            xmlLoader.processResourceXml(file, parse(file), isSystem);
+            xmlLoader.processResourceXml(file, document, isSystem);
         }
     }
 
     private Document parse(File xmlFile) throws Exception {
-        DocumentBuilder documentBuilder = documentBuilderFactory.newDocumentBuilder();
+        if (compiledXmlCache != null) {
+            Document document = compiledXmlCache.getDocument(xmlFile);
+            if (document != null) {
+                return document;
+            }
+        }
+
+        DocumentBuilder documentBuilder;
+        synchronized (documentBuilderFactory) {
+            documentBuilder = documentBuilderFactory.newDocumentBuilder();
+        }
         return documentBuilder.parse(xmlFile);
     }
 
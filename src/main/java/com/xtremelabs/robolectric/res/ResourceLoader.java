@@ -7,6 +7,8 @@ import java.lang.reflect.Field;
 import java.util.HashSet;
 import java.util.Properties;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import android.R;
 import android.content.Context;
@@ -66,6 +68,8 @@ public class ResourceLoader {
 	private final BoolResourceLoader boolResourceLoader;
 	private boolean isInitialized = false;
 	private boolean strictI18n = false;
+	private CompiledXmlCache compiledXmlCache;
+	private ExecutorService executorService;
 	
 	private final Set<Integer> ninePatchDrawableIds = new HashSet<Integer>();
 
@@ -117,6 +121,8 @@ public class ResourceLoader {
 			return;
 		}
 		
+		compiledXmlCache = createCompiledXmlCache();
+		executorService = createExecutorService();
 		try {
 			if ( resourceDir != null ) {
 				viewLoader = new ViewLoader( resourceExtractor, attrResourceLoader );
@@ -156,6 +162,12 @@ public class ResourceLoader {
 			throw e;
 		} catch ( Exception e ) {
 			throw new RuntimeException( e );
+		} finally {
+			compiledXmlCache = null;
+			if ( executorService != null ) {
+				executorService.shutdownNow();
+				executorService = null;
+			}
 		}
 		isInitialized = true;
 	}
@@ -172,6 +184,8 @@ public class ResourceLoader {
 		File systemValueResourceDir = getValueResourceDir( systemResourceDir, null, false );
 		File preferenceDir = getPreferenceResourceDir( resourceDir );
 		
+		compiledXmlCache = createCompiledXmlCache();
+		executorService = createExecutorService();
 		try {
 			loadStringResources( localValueResourceDir, systemValueResourceDir );
 			loadPluralsResources( localValueResourceDir, systemValueResourceDir );
@@ -182,58 +196,86 @@ public class ResourceLoader {
 			loadPreferenceResources( preferenceDir );
 		} catch ( Exception e ) {
 			throw new RuntimeException( e );
-		} 
+		} finally {
+			compiledXmlCache = null;
+			if ( executorService != null ) {
+				executorService.shutdownNow();
+				executorService = null;
+			}
+		}
 	}
 	
+	/**
+	 * Kept only while resources are loading, so the compiled directories' string tables don't outlive it.
+	 */
+	private CompiledXmlCache createCompiledXmlCache() {
+		String cachePath = System.getProperty( "cached.robolectric.classes.path" );
+		File cacheDir = ( cachePath == null || "".equals( cachePath.trim() ) ) ? new File( "./tmp" ) : new File( cachePath );
+		return new CompiledXmlCache( new File( cacheDir, "compiled-robolectric-resources" ).getAbsoluteFile() );
+	}
+
+	/**
+	 * Resource files are parsed on one thread per core while loading; the loaders still see them one at a time,
+	 * in the same order as before.
+	 */
+	private ExecutorService createExecutorService() {
+		int threadCount = Runtime.getRuntime().availableProcessors();
+		return threadCount > 1 ? Executors.newFixedThreadPool( threadCount ) : null;
+	}
+
+	private DocumentLoader newDocumentLoader( XmlLoader... xmlLoaders ) {
+		return new DocumentLoader( compiledXmlCache, executorService, xmlLoaders );
+	}
+
 	private File getSystemResourceDir( String pathToAndroidResources ) {
 		return pathToAndroidResources != null ? new File( pathToAndroidResources ) : null;
 	}
 
 	private void loadStringResources( File localResourceDir, File systemValueResourceDir ) throws Exception {
-		DocumentLoader stringResourceDocumentLoader = new DocumentLoader( this.stringResourceLoader );
+		DocumentLoader stringResourceDocumentLoader = newDocumentLoader( this.stringResourceLoader );
 		loadValueResourcesFromDirs( stringResourceDocumentLoader, localResourceDir, systemValueResourceDir );
 	}
 
 	private void loadPluralsResources( File localResourceDir, File systemValueResourceDir ) throws Exception {
-		DocumentLoader stringResourceDocumentLoader = new DocumentLoader( this.pluralResourceLoader );
+		DocumentLoader stringResourceDocumentLoader = newDocumentLoader( this.pluralResourceLoader );
 		loadValueResourcesFromDirs( stringResourceDocumentLoader, localResourceDir, systemValueResourceDir );
 	}
 
 	private void loadValueResources( File localResourceDir, File systemValueResourceDir ) throws Exception {
-		DocumentLoader valueResourceLoader = new DocumentLoader( stringArrayResourceLoader, colorResourceLoader,
+		DocumentLoader valueResourceLoader = newDocumentLoader( stringArrayResourceLoader, colorResourceLoader,
 				attrResourceLoader );
 		loadValueResourcesFromDirs( valueResourceLoader, localResourceDir, systemValueResourceDir );
 	}
 
 	private void loadDimenResources( File localResourceDir, File systemValueResourceDir ) throws Exception {
-		DocumentLoader dimenResourceDocumentLoader = new DocumentLoader( this.dimenResourceLoader );
+		DocumentLoader dimenResourceDocumentLoader = newDocumentLoader( this.dimenResourceLoader );
 		loadValueResourcesFromDirs( dimenResourceDocumentLoader, localResourceDir, systemValueResourceDir );
 	}
 
 	private void loadIntegerResource( File localResourceDir, File systemValueResourceDir ) throws Exception {
-		DocumentLoader integerResourceDocumentLoader = new DocumentLoader( this.integerResourceLoader );
+		DocumentLoader integerResourceDocumentLoader = newDocumentLoader( this.integerResourceLoader );
 		loadValueResourcesFromDirs( integerResourceDocumentLoader, localResourceDir, systemValueResourceDir );
 	}
 
 	private void loadViewResources( File systemResourceDir, File xmlResourceDir ) throws Exception {
-		DocumentLoader viewDocumentLoader = new DocumentLoader( viewLoader );
+		DocumentLoader viewDocumentLoader = newDocumentLoader( viewLoader );
 		loadLayoutResourceXmlSubDirs( viewDocumentLoader, xmlResourceDir, false );
 		loadLayoutResourceXmlSubDirs( viewDocumentLoader, systemResourceDir, true );
 	}
 
 	private void loadMenuResources( File xmlResourceDir ) throws Exception {
-		DocumentLoader menuDocumentLoader = new DocumentLoader( menuLoader );
+		DocumentLoader menuDocumentLoader = newDocumentLoader( menuLoader );
 		loadMenuResourceXmlDirs( menuDocumentLoader, xmlResourceDir );
 	}
 
 	private void loadDrawableResources( File xmlResourceDir ) throws Exception {
-		DocumentLoader drawableDocumentLoader = new DocumentLoader( drawableResourceLoader );
+		DocumentLoader drawableDocumentLoader = newDocumentLoader( drawableResourceLoader );
 		loadDrawableResourceXmlDirs( drawableDocumentLoader, xmlResourceDir );
 	}
 
 	private void loadPreferenceResources( File xmlResourceDir ) throws Exception {
 		if ( xmlResourceDir.exists() ) {
-			DocumentLoader preferenceDocumentLoader = new DocumentLoader( preferenceLoader );
+			DocumentLoader preferenceDocumentLoader = newDocumentLoader( preferenceLoader );
 			preferenceDocumentLoader.loadResourceXmlDir( xmlResourceDir );
 		}
 	}
@@ -244,7 +286,7 @@ public class ResourceLoader {
 	private void loadXmlFileResources( File xmlResourceDir ) throws Exception {
 		if ( xmlResourceDir.exists() ) {
 			DocumentLoader xmlFileDocumentLoader = 
-					new DocumentLoader( xmlFileLoader );
+					newDocumentLoader( xmlFileLoader );
 			xmlFileDocumentLoader.loadResourceXmlDir( xmlResourceDir );
 		}
 	}
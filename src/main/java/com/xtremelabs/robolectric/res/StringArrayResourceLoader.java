@@ -3,10 +3,7 @@ package com.xtremelabs.robolectric.res;
 import org.w3c.dom.Node;
 import org.w3c.dom.NodeList;
 
-import javax.xml.xpath.XPathConstants;
-import javax.xml.xpath.XPathExpression;
 import javax.xml.xpath.XPathExpressionException;
-import javax.xml.xpath.XPathFactory;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
@@ -27,8 +24,7 @@ public class StringArrayResourceLoader extends XpathResourceXmlLoader {
     }
 
     @Override protected void processNode(Node node, String name, boolean isSystem) throws XPathExpressionException {
-        XPathExpression itemXPath = XPathFactory.newInstance().newXPath().compile("item");
-        NodeList childNodes = (NodeList) itemXPath.evaluate(node, XPathConstants.NODESET);
+        NodeList childNodes = getItems(node);
         List<String> arrayValues = new ArrayList<String>();
         for (int j = 0; j < childNodes.getLength(); j++) {
             Node childNode = childNodes.item(j);
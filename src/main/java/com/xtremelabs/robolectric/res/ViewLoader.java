@@ -27,6 +27,7 @@ public class ViewLoader extends XmlLoader {
     protected Map<String, ViewNode> viewNodesByLayoutName = new HashMap<String, ViewNode>();
     private AttrResourceLoader attrResourceLoader;
     private List<String> qualifierSearchPath = new ArrayList<String>();
+    private Method onFinishInflate;
 
     public ViewLoader(ResourceExtractor resourceExtractor, AttrResourceLoader attrResourceLoader) {
         super(resourceExtractor);
@@ -64,7 +65,7 @@ public class ViewLoader extends XmlLoader {
         }
 
         if (name.equals("requestFocus")) {
-            parent.attributes.put("android:focus", "true");
+            parent.putAttribute("android:focus", "true");
             parent.requestFocusOverride = true;
         } else if (!name.startsWith("#")) {
             ViewNode viewNode = new ViewNode(name, attrMap, parent.isSystem);
@@ -95,7 +96,7 @@ public class ViewLoader extends XmlLoader {
             if (attributes != null) {
                 for (Map.Entry<String, String> entry : attributes.entrySet()) {
                     if (!entry.getKey().equals("layout")) {
-                        viewNode.attributes.put(entry.getKey(), entry.getValue());
+                        viewNode.putAttribute(entry.getKey(), entry.getValue());
                     }
                 }
             }
@@ -124,7 +125,24 @@ public class ViewLoader extends XmlLoader {
         qualifierSearchPath = Arrays.asList(locations);
     }
 
+    private Method getOnFinishInflate() throws NoSuchMethodException {
+        if (onFinishInflate == null) {
+            Method method = View.class.getDeclaredMethod("onFinishInflate");
+            method.setAccessible(true);
+            onFinishInflate = method;
+        }
+        return onFinishInflate;
+    }
+
+    /**
+     * A node of a layout's view tree. The first time a node is inflated it looks up its view class, constructor and
+     * attribute set, and keeps them, so inflating the same layout again only constructs views.
+     */
     public class ViewNode {
+        private static final int CONSTRUCTOR_WITH_ATTRIBUTES = 0;
+        private static final int CONSTRUCTOR_WITH_CONTEXT = 1;
+        private static final int CONSTRUCTOR_WITH_STRING = 2;
+
         private String name;
         private final Map<String, String> attributes;
 
@@ -132,6 +150,10 @@ public class ViewLoader extends XmlLoader {
         boolean requestFocusOverride = false;
         boolean isSystem = false;
 
+        private Constructor<? extends View> viewConstructor;
+        private int viewConstructorKind;
+        private TestAttributeSet attributeSet;
+
         public ViewNode(String name, Map<String, String> attributes, boolean isSystem) {
             this.name = name;
             this.attributes = attributes;
@@ -146,6 +168,17 @@ public class ViewLoader extends XmlLoader {
             children.add(viewNode);
         }
 
+        /**
+         * Goes through the cached attribute set, if there is one, so that its index sees the new name.
+         */
+        private void putAttribute(String name, String value) {
+            if (attributeSet != null) {
+                attributeSet.put(name, value);
+            } else {
+                attributes.put(name, value);
+            }
+        }
+
         public View inflate(Context context, View parent) throws Exception {
             View view = create(context, (ViewGroup) parent);
 
@@ -158,9 +191,7 @@ public class ViewLoader extends XmlLoader {
         }
 
         private void invokeOnFinishInflate(View view) throws NoSuchMethodException, IllegalAccessException, InvocationTargetException {
-            Method onFinishInflate = View.class.getDeclaredMethod("onFinishInflate");
-            onFinishInflate.setAccessible(true);
-            onFinishInflate.invoke(view);
+            getOnFinishInflate().invoke(view);
         }
 
         private View create(Context context, ViewGroup parent) throws Exception {
@@ -219,20 +250,44 @@ public class ViewLoader extends XmlLoader {
         }
 
         private View constructView(Context context) throws InstantiationException, IllegalAccessException, InvocationTargetException, NoSuchMethodException {
+            if (viewConstructor == null) {
+                resolveViewConstructor();
+            }
+            if (strictI18n) {
+                attributeSet.validateStrictI18n();
+            }
+            switch (viewConstructorKind) {
+                case CONSTRUCTOR_WITH_ATTRIBUTES:
+                    return viewConstructor.newInstance(context, attributeSet);
+                case CONSTRUCTOR_WITH_CONTEXT:
+                    return viewConstructor.newInstance(context);
+                default:
+                    return viewConstructor.newInstance(context, "");
+            }
+        }
+
+        /**
+         * The attribute set wraps {@link #attributes} rather than copying it, so it stays current when an
+         * {@code <include>} overrides some of them.
+         */
+        @SuppressWarnings({"unchecked"})
+        private void resolveViewConstructor() throws NoSuchMethodException {
             Class<? extends View> clazz = pickViewClass();
+            attributeSet = new TestAttributeSet(attributes, resourceExtractor, attrResourceLoader, clazz, isSystem);
+            Constructor<? extends View> constructor;
             try {
-                TestAttributeSet attributeSet = new TestAttributeSet(attributes, resourceExtractor, attrResourceLoader, clazz, isSystem);
-                if (strictI18n) {
-                    attributeSet.validateStrictI18n();
-                }
-                return ((Constructor<? extends View>) clazz.getConstructor(Context.class, AttributeSet.class)).newInstance(context, attributeSet);
+                constructor = (Constructor<? extends View>) clazz.getConstructor(Context.class, AttributeSet.class);
+                viewConstructorKind = CONSTRUCTOR_WITH_ATTRIBUTES;
             } catch (NoSuchMethodException e) {
                 try {
-                    return ((Constructor<? extends View>) clazz.getConstructor(Context.class)).newInstance(context);
+                    constructor = (Constructor<? extends View>) clazz.getConstructor(Context.class);
+                    viewConstructorKind = CONSTRUCTOR_WITH_CONTEXT;
                 } catch (NoSuchMethodException e1) {
-                    return ((Constructor<? extends View>) clazz.getConstructor(Context.class, String.class)).newInstance(context, "");
+                    constructor = (Constructor<? extends View>) clazz.getConstructor(Context.class, String.class);
+                    viewConstructorKind = CONSTRUCTOR_WITH_STRING;
                 }
             }
+            viewConstructor = constructor;
         }
 
         private Class<? extends View> pickViewClass() {
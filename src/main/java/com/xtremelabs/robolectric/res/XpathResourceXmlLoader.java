@@ -12,6 +12,8 @@ import java.io.File;
 
 public abstract class XpathResourceXmlLoader extends XmlLoader {
     private String expression;
+    private XPathExpression compiledExpression;
+    private XPathExpression itemExpression;
 
     public XpathResourceXmlLoader(ResourceExtractor resourceExtractor, String expression) {
         super(resourceExtractor);
@@ -19,8 +21,10 @@ public abstract class XpathResourceXmlLoader extends XmlLoader {
     }
 
     @Override protected void processResourceXml(File xmlFile, Document document, boolean isSystem) throws Exception {
-        XPathExpression stringsXPath = XPathFactory.newInstance().newXPath().compile(expression);
-        NodeList nodes = (NodeList) stringsXPath.evaluate(document, XPathConstants.NODESET);
+        if (compiledExpression == null) {
+            compiledExpression = XPathFactory.newInstance().newXPath().compile(expression);
+        }
+        NodeList nodes = (NodeList) compiledExpression.evaluate(document, XPathConstants.NODESET);
         for (int i = 0; i < nodes.getLength(); i++) {
             Node node = nodes.item(i);
             String name = node.getAttributes().getNamedItem("name").getNodeValue();
@@ -29,4 +33,11 @@ public abstract class XpathResourceXmlLoader extends XmlLoader {
     }
 
     protected abstract void processNode(Node node, String name, boolean isSystem) throws XPathExpressionException;
+
+    protected NodeList getItems(Node node) throws XPathExpressionException {
+        if (itemExpression == null) {
+            itemExpression = XPathFactory.newInstance().newXPath().compile("item");
+        }
+        return (NodeList) itemExpression.evaluate(node, XPathConstants.NODESET);
+    }
 }
@@ -21,13 +21,18 @@ import com.xtremelabs.robolectric.internal.Implements;
 import com.xtremelabs.robolectric.internal.RealObject;
 import com.xtremelabs.robolectric.res.ResourceLoader;
 import com.xtremelabs.robolectric.tester.org.apache.http.FakeHttpLayer;
+import com.xtremelabs.robolectric.util.BackgroundWorkerPool;
 import com.xtremelabs.robolectric.util.Scheduler;
 
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.FutureTask;
 
 import static com.xtremelabs.robolectric.Robolectric.newInstanceOf;
 import static com.xtremelabs.robolectric.Robolectric.shadowOf;
@@ -77,11 +82,14 @@ public class ShadowApplication extends ShadowContextWrapper {
     private List<Intent> stoppedServies = new ArrayList<Intent>();
     private List<Intent> broadcastIntents = new ArrayList<Intent>();
     private List<ServiceConnection> unboundServiceConnections = new ArrayList<ServiceConnection>();
-    private List<Wrapper> registeredReceivers = new ArrayList<Wrapper>();
+    private Set<Wrapper> registeredReceivers = new LinkedHashSet<Wrapper>();
+    private Map<String, Set<Wrapper>> registeredReceiversByAction = new HashMap<String, Set<Wrapper>>();
+    private Map<BroadcastReceiver, List<Wrapper>> registeredReceiversByReceiver = new IdentityHashMap<BroadcastReceiver, List<Wrapper>>();
     private Map<String, Intent> stickyIntents = new HashMap<String, Intent>();
     private FakeHttpLayer fakeHttpLayer = new FakeHttpLayer();
     private Looper mainLooper = ShadowLooper.myLooper();
     private Scheduler backgroundScheduler = new Scheduler();
+    private BackgroundWorkerPool backgroundWorkerPool;
     private Map<String, Map<String, Object>> sharedPreferenceMap = new HashMap<String, Map<String, Object>>();
     private ArrayList<Toast> shownToasts = new ArrayList<Toast>();
     private PowerManager.WakeLock latestWakeLock;
@@ -122,6 +130,49 @@ public class ShadowApplication extends ShadowContextWrapper {
         return backgroundScheduler;
     }
 
+    /**
+     * Runs background tasks posted from now on, by {@link android.os.AsyncTask} and
+     * {@link com.xtremelabs.robolectric.util.RobolectricBackgroundExecutorService}, on up to {@code threadCount}
+     * worker threads; zero runs them on the test thread again, which is the default.
+     * <p/>
+     * The background scheduler still decides when tasks start, and their results are still delivered on the test
+     * thread in the order the tasks were posted. Tasks only overlap when the scheduler is paused and then reaches
+     * several of them at once, e.g. in {@link Robolectric#runBackgroundTasks()}.
+     *
+     * @param threadCount the most tasks to run at once
+     */
+    public void setBackgroundWorkerThreadCount(int threadCount) {
+        if (backgroundWorkerPool != null) {
+            backgroundWorkerPool.shutdown();
+        }
+        backgroundWorkerPool = threadCount > 0 ? new BackgroundWorkerPool(threadCount) : null;
+    }
+
+    public int getBackgroundWorkerThreadCount() {
+        return backgroundWorkerPool == null ? 0 : backgroundWorkerPool.getThreadCount();
+    }
+
+    /**
+     * Posts {@code task} to the background scheduler, running it on a worker thread if
+     * {@link #setBackgroundWorkerThreadCount(int)} asked for some, then runs {@code whenDone}, if it isn't null, on
+     * the thread that advanced the scheduler.
+     */
+    public void postBackgroundTask(final FutureTask<?> task, final Runnable whenDone) {
+        if (backgroundWorkerPool != null) {
+            backgroundWorkerPool.post(backgroundScheduler, task, whenDone);
+        } else {
+            backgroundScheduler.post(new Runnable() {
+                @Override
+                public void run() {
+                    task.run();
+                    if (whenDone != null) {
+                        whenDone.run();
+                    }
+                }
+            });
+        }
+    }
+
     @Override
     @Implementation
     public Context getApplicationContext() {
@@ -313,8 +364,9 @@ public class ShadowApplication extends ShadowContextWrapper {
     }
 
     /**
-     * Broadcasts the {@code Intent} by iterating through the registered receivers, invoking their filters, and calling
-     * {@code onRecieve(Application, Intent)} as appropriate. Does not enqueue the {@code Intent} for later inspection.
+     * Broadcasts the {@code Intent} by looking up the receivers registered for its action, and calling
+     * {@code onRecieve(Application, Intent)} on each, in the order they were registered. Does not enqueue the
+     * {@code Intent} for later inspection.
      *
      * @param intent the {@code Intent} to broadcast
      *               todo: enqueue the Intent for later inspection
@@ -323,13 +375,9 @@ public class ShadowApplication extends ShadowContextWrapper {
     @Implementation
     public void sendBroadcast(Intent intent) {
         broadcastIntents.add(intent);
-		
-        List<Wrapper> copy = new ArrayList<Wrapper>();
-        copy.addAll(registeredReceivers);
-        for (Wrapper wrapper : copy) {
-            if (wrapper.intentFilter.matchAction(intent.getAction())) {
-                wrapper.broadcastReceiver.onReceive(realApplication, intent);
-            }
+
+        for (Wrapper wrapper : getWrappersForAction(intent.getAction())) {
+            wrapper.broadcastReceiver.onReceive(realApplication, intent);
         }
     }
 	
@@ -356,19 +404,31 @@ public class ShadowApplication extends ShadowContextWrapper {
 
     Intent registerReceiverWithContext(BroadcastReceiver receiver, IntentFilter filter, Context context) {
         if (receiver != null) {
-            registeredReceivers.add(new Wrapper(receiver, filter, context));
+            Wrapper wrapper = new Wrapper(receiver, filter, context);
+            registeredReceivers.add(wrapper);
+            for (int i = 0; i < filter.countActions(); i++) {
+                Set<Wrapper> wrappers = registeredReceiversByAction.get(filter.getAction(i));
+                if (wrappers == null) {
+                    wrappers = new LinkedHashSet<Wrapper>();
+                    registeredReceiversByAction.put(filter.getAction(i), wrappers);
+                }
+                wrappers.add(wrapper);
+            }
+            List<Wrapper> registrations = registeredReceiversByReceiver.get(receiver);
+            if (registrations == null) {
+                registrations = new ArrayList<Wrapper>(1);
+                registeredReceiversByReceiver.put(receiver, registrations);
+            }
+            registrations.add(wrapper);
         }
         return getStickyIntent(filter);
     }
 
     private Intent getStickyIntent(IntentFilter filter) {
-        for (Intent stickyIntent : stickyIntents.values()) {
-            String action = null;
-            for (int i = 0; i < filter.countActions(); i++) {
-                action = filter.getAction(i);
-                if (stickyIntent.getAction().equals(action)) {
-                    return stickyIntent;
-                }
+        for (int i = 0; i < filter.countActions(); i++) {
+            Intent stickyIntent = stickyIntents.get(filter.getAction(i));
+            if (stickyIntent != null) {
+                return stickyIntent;
             }
         }
 
@@ -378,18 +438,31 @@ public class ShadowApplication extends ShadowContextWrapper {
     @Override
     @Implementation
     public void unregisterReceiver(BroadcastReceiver broadcastReceiver) {
-        boolean found = false;
-        Iterator<Wrapper> iterator = registeredReceivers.iterator();
-        while (iterator.hasNext()) {
-            Wrapper wrapper = iterator.next();
-            if (wrapper.broadcastReceiver == broadcastReceiver) {
-                iterator.remove();
-                found = true;
-            }
-        }
-        if (!found) {
+        List<Wrapper> registrations = registeredReceiversByReceiver.remove(broadcastReceiver);
+        if (registrations == null) {
             throw new IllegalArgumentException("Receiver not registered: " + broadcastReceiver);
         }
+        for (Wrapper wrapper : registrations) {
+            registeredReceivers.remove(wrapper);
+            for (int i = 0; i < wrapper.intentFilter.countActions(); i++) {
+                Set<Wrapper> wrappers = registeredReceiversByAction.get(wrapper.intentFilter.getAction(i));
+                if (wrappers != null) {
+                    wrappers.remove(wrapper);
+                    if (wrappers.isEmpty()) {
+                        registeredReceiversByAction.remove(wrapper.intentFilter.getAction(i));
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * @return a copy of the receivers registered for {@code action}, so receivers can register and unregister while
+     *         it's being broadcast
+     */
+    private List<Wrapper> getWrappersForAction(String action) {
+        Set<Wrapper> wrappers = registeredReceiversByAction.get(action);
+        return wrappers == null ? new ArrayList<Wrapper>() : new ArrayList<Wrapper>(wrappers);
     }
 
     /**
@@ -430,20 +503,13 @@ public class ShadowApplication extends ShadowContextWrapper {
     }
 
     public boolean hasReceiverForIntent(Intent intent) {
-        for (Wrapper wrapper : registeredReceivers) {
-            if (wrapper.intentFilter.matchAction(intent.getAction())) {
-                return true;
-            }
-        }
-        return false;
+        return registeredReceiversByAction.containsKey(intent.getAction());
     }
 
     public List<BroadcastReceiver> getReceiversForIntent(Intent intent) {
         ArrayList<BroadcastReceiver> broadcastReceivers = new ArrayList<BroadcastReceiver>();
-        for (Wrapper wrapper : registeredReceivers) {
-            if (wrapper.intentFilter.matchAction(intent.getAction())) {
-                broadcastReceivers.add(wrapper.getBroadcastReceiver());
-            }
+        for (Wrapper wrapper : getWrappersForAction(intent.getAction())) {
+            broadcastReceivers.add(wrapper.getBroadcastReceiver());
         }
         return broadcastReceivers;
     }
@@ -451,10 +517,10 @@ public class ShadowApplication extends ShadowContextWrapper {
     /**
      * Non-Android accessor.
      *
-     * @return list of {@link Wrapper}s for registered receivers
+     * @return a copy of the list of {@link Wrapper}s for registered receivers, in the order they were registered
      */
     public List<Wrapper> getRegisteredReceivers() {
-        return registeredReceivers;
+        return new ArrayList<Wrapper>(registeredReceivers);
     }
 
     /**
@@ -16,6 +16,8 @@ public class ShadowAsyncTask<Params, Progress, Result> {
     
     private final FutureTask<Result> future;
     private final BackgroundWorker worker;
+    private final ConcurrentLinkedQueue<Progress[]> pendingProgress = new ConcurrentLinkedQueue<Progress[]>();
+    private volatile boolean onWorkerThread;
     private AsyncTask.Status status = AsyncTask.Status.PENDING;
     
 	public ShadowAsyncTask() {
@@ -24,29 +26,48 @@ public class ShadowAsyncTask<Params, Progress, Result> {
         	@Override
         	protected void done() {
                 status = AsyncTask.Status.FINISHED;
-				try {
-					final Result result = get();
-					Robolectric.getUiThreadScheduler().post(new Runnable() {
-						@Override public void run() {
-							getBridge().onPostExecute(result);
-						}
-					});
-				} catch (CancellationException e) {
+                if (isCancelled()) {
 					Robolectric.getUiThreadScheduler().post(new Runnable() {
 						@Override public void run() {
 							getBridge().onCancelled();
 						}
 					});
-				} catch (InterruptedException e) {
-					// Ignore.
-				} catch (Throwable t) {
-					throw new RuntimeException("An error occured while executing doInBackground()",
-							t.getCause());
-				}
+                }
         	}
         };
 	}
 
+    /**
+     * Posts any progress published from a worker thread, then the result, to the UI thread. Runs on the thread that
+     * ran the background scheduler, once {@link #future} is done.
+     */
+    private void postResult() {
+        postPendingProgress();
+        if (future.isCancelled()) {
+            return;
+        }
+        try {
+            final Result result = future.get();
+            Robolectric.getUiThreadScheduler().post(new Runnable() {
+                @Override public void run() {
+                    getBridge().onPostExecute(result);
+                }
+            });
+        } catch (InterruptedException e) {
+            // Ignore.
+        } catch (Throwable t) {
+            throw new RuntimeException("An error occured while executing doInBackground()",
+                    t.getCause());
+        }
+    }
+
+    private void postPendingProgress() {
+        Progress[] values;
+        while ((values = pendingProgress.poll()) != null) {
+            publishProgress(values);
+        }
+    }
+
 	@Implementation
     public boolean isCancelled() {
         return future.isCancelled();
@@ -73,10 +94,11 @@ public class ShadowAsyncTask<Params, Progress, Result> {
         getBridge().onPreExecute();
 
         worker.params = params;
+        onWorkerThread = Robolectric.getShadowApplication().getBackgroundWorkerThreadCount() > 0;
 
-        Robolectric.getBackgroundScheduler().post(new Runnable() {
+        Robolectric.getShadowApplication().postBackgroundTask(future, new Runnable() {
             @Override public void run() {
-            	future.run();
+                postResult();
             }
         });
 
@@ -95,13 +117,19 @@ public class ShadowAsyncTask<Params, Progress, Result> {
 
     /**
      * Enqueue a call to {@link AsyncTask#onProgressUpdate(Object[])} on UI looper (or run it immediately
-     * if the looper it is not paused).
+     * if the looper it is not paused). Progress published from a background worker thread is held until the
+     * task finishes, so it still reaches the UI before the result.
      *
      * @param values The progress values to update the UI with.
      * @see AsyncTask#publishProgress(Object[])
+     * @see com.xtremelabs.robolectric.shadows.ShadowApplication#setBackgroundWorkerThreadCount(int)
      */
     @Implementation
     public void publishProgress(final Progress... values) {
+        if (onWorkerThread && !future.isDone()) {
+            pendingProgress.add(values);
+            return;
+        }
         Robolectric.getUiThreadScheduler().post(new Runnable() {
             @Override public void run() {
                 getBridge().onProgressUpdate(values);
@@ -9,6 +9,7 @@ import android.net.Uri;
 import com.xtremelabs.robolectric.Robolectric;
 import com.xtremelabs.robolectric.internal.Implementation;
 import com.xtremelabs.robolectric.internal.Implements;
+import com.xtremelabs.robolectric.internal.StaticState;
 import com.xtremelabs.robolectric.util.Join;
 
 import java.io.InputStream;
@@ -24,6 +25,7 @@ import static com.xtremelabs.robolectric.Robolectric.shadowOf;
 @SuppressWarnings({"UnusedDeclaration"})
 @Implements(BitmapFactory.class)
 public class ShadowBitmapFactory {
+    private static final StaticState staticState = StaticState.register(ShadowBitmapFactory.class);
     private static Map<String, Point> widthAndHeightMap = new HashMap<String, Point>();
 
     @Implementation
@@ -115,14 +117,17 @@ public class ShadowBitmapFactory {
     }
 
     public static void provideWidthAndHeightHints(Uri uri, int width, int height) {
+        staticState.touch();
         widthAndHeightMap.put(uri.toString(), new Point(width, height));
     }
 
     public static void provideWidthAndHeightHints(int resourceId, int width, int height) {
+        staticState.touch();
         widthAndHeightMap.put("resource:" + getResourceName(resourceId), new Point(width, height));
     }
 
     public static void provideWidthAndHeightHints(String file, int width, int height) {
+        staticState.touch();
         widthAndHeightMap.put("file:" + file, new Point(width, height));
     }
 
@@ -1,18 +1,36 @@
 package com.xtremelabs.robolectric.shadows;
 
 import android.content.ContentProvider;
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
 import android.content.Context;
+import android.content.OperationApplicationException;
 
 import com.xtremelabs.robolectric.Robolectric;
 import com.xtremelabs.robolectric.internal.Implementation;
 import com.xtremelabs.robolectric.internal.Implements;
+import com.xtremelabs.robolectric.internal.RealObject;
+
+import java.util.ArrayList;
 
 @Implements(ContentProvider.class)
 public class ShadowContentProvider {
+	@RealObject private ContentProvider realContentProvider;
 
 	@Implementation
 	public final Context getContext() {
 		return Robolectric.application;
 	}
 
+	@Implementation
+	public ContentProviderResult[] applyBatch(ArrayList<ContentProviderOperation> operations)
+			throws OperationApplicationException {
+		final int numOperations = operations.size();
+		final ContentProviderResult[] results = new ContentProviderResult[numOperations];
+		for (int i = 0; i < numOperations; i++) {
+			results[i] = operations.get(i).apply(realContentProvider, results, i);
+		}
+		return results;
+	}
+
 }
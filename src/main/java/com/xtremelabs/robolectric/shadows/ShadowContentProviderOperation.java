@@ -3,8 +3,13 @@ package com.xtremelabs.robolectric.shadows;
 import java.util.HashMap;
 import java.util.Map;
 
+import android.content.ContentProvider;
 import android.content.ContentProviderOperation;
 import android.content.ContentProviderOperation.Builder;
+import android.content.ContentProviderResult;
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.content.OperationApplicationException;
 import android.net.Uri;
 
 import com.xtremelabs.robolectric.Robolectric;
@@ -96,4 +101,48 @@ public class ShadowContentProviderOperation {
     public int getWithValueBackReference(String key) {
         return withValueBackReferences.get(key);
     }
+
+    @Implementation
+    public ContentProviderResult apply(ContentProvider provider, ContentProviderResult[] backRefs, int numBackRefs)
+            throws OperationApplicationException {
+        if (isInsert) {
+            Uri newUri = provider.insert(uri, resolveValues(backRefs, numBackRefs));
+            if (newUri == null) {
+                throw new OperationApplicationException("insert failed");
+            }
+            return new ContentProviderResult(newUri);
+        }
+
+        String selection = null;
+        String[] selectionArgs = null;
+        if (!selections.isEmpty()) {
+            Map.Entry<String, String[]> entry = selections.entrySet().iterator().next();
+            selection = entry.getKey();
+            selectionArgs = entry.getValue();
+        }
+        int count;
+        if (isDelete) {
+            count = provider.delete(uri, selection, selectionArgs);
+        } else if (isUpdate) {
+            count = provider.update(uri, resolveValues(backRefs, numBackRefs), selection, selectionArgs);
+        } else {
+            throw new IllegalStateException("bad type, " + uri);
+        }
+        return new ContentProviderResult(count);
+    }
+
+    private ContentValues resolveValues(ContentProviderResult[] backRefs, int numBackRefs) {
+        ContentValues contentValues = new ContentValues();
+        Robolectric.shadowOf(contentValues).putAll(values);
+        for (Map.Entry<String, Integer> backReference : withValueBackReferences.entrySet()) {
+            int index = backReference.getValue();
+            if (index >= numBackRefs) {
+                throw new ArrayIndexOutOfBoundsException("asked for back ref " + index
+                        + " but there are only " + numBackRefs + " back refs");
+            }
+            ContentProviderResult backRef = backRefs[index];
+            contentValues.put(backReference.getKey(), backRef.uri != null ? ContentUris.parseId(backRef.uri) : backRef.count);
+        }
+        return contentValues;
+    }
 }
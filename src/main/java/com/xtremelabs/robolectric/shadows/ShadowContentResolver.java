@@ -8,6 +8,7 @@ import android.net.Uri;
 import android.os.Bundle;
 import com.xtremelabs.robolectric.internal.Implementation;
 import com.xtremelabs.robolectric.internal.Implements;
+import com.xtremelabs.robolectric.internal.StaticState;
 import com.xtremelabs.robolectric.tester.android.database.TestCursor;
 
 import java.io.IOException;
@@ -18,6 +19,7 @@ import java.util.Map.Entry;
 
 @Implements(ContentResolver.class)
 public class ShadowContentResolver {
+    private static final StaticState staticState = StaticState.register(ShadowContentResolver.class);
     private int nextDatabaseIdForInserts;
     private int nextDatabaseIdForUpdates;
 
@@ -177,9 +179,15 @@ public class ShadowContentResolver {
     }
 
     @Implementation
-    public ContentProviderResult[] applyBatch(String authority, ArrayList<ContentProviderOperation> operations) {
+    public ContentProviderResult[] applyBatch(String authority, ArrayList<ContentProviderOperation> operations)
+            throws OperationApplicationException {
         contentProviderOperations.put(authority, operations);
-        return contentProviderResults;
+        ContentProvider provider = providers.get(authority);
+        if (provider != null && contentProviderResults == null) {
+            return provider.applyBatch(operations);
+        } else {
+            return contentProviderResults;
+        }
     }
 
     @Implementation
@@ -249,6 +257,7 @@ public class ShadowContentResolver {
 
     @Implementation
     public static void setMasterSyncAutomatically(boolean sync) {
+        staticState.touch();
         masterSyncAutomatically = sync;
 
     }
@@ -270,6 +279,7 @@ public class ShadowContentResolver {
     }
 
     public static void registerProvider(String authority, ContentProvider provider) {
+        staticState.touch();
         providers.put(authority, provider);
     }
 
@@ -278,6 +288,7 @@ public class ShadowContentResolver {
     }
 
     public static Status getStatus(Account account, String authority, boolean create) {
+        staticState.touch();
         Map<Account, Status> map = syncableAccounts.get(authority);
         if (map == null) {
             map = new HashMap<Account, Status>();
@@ -338,6 +349,10 @@ public class ShadowContentResolver {
         return operations;
     }
 
+    /**
+     * Non-Android accessor. Sets the results {@code applyBatch} returns, without applying the operations, even when
+     * a provider is registered for the authority.
+     */
     public void setContentProviderResult(ContentProviderResult[] contentProviderResults) {
         this.contentProviderResults = contentProviderResults;
     }
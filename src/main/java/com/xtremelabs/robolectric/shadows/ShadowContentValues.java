@@ -53,6 +53,10 @@ public final class ShadowContentValues {
         values.putAll(shadowOf(other).values);
     }
 
+    /* package */ void putAll(Map<String, Object> other) {
+        values.putAll(other);
+    }
+
     @Implementation
     public void put(String key, Byte value) {
         values.put(key, value);
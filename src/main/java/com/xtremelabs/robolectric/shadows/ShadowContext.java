@@ -9,7 +9,9 @@ import com.xtremelabs.robolectric.Robolectric;
 import com.xtremelabs.robolectric.internal.Implementation;
 import com.xtremelabs.robolectric.internal.Implements;
 import com.xtremelabs.robolectric.internal.RealObject;
+import com.xtremelabs.robolectric.internal.StaticState;
 import com.xtremelabs.robolectric.res.ResourceLoader;
+import com.xtremelabs.robolectric.tester.android.util.TestAttributeSet;
 
 import java.io.File;
 import java.io.FileInputStream;
@@ -25,6 +27,7 @@ import static com.xtremelabs.robolectric.Robolectric.shadowOf;
 @SuppressWarnings({"UnusedDeclaration"})
 @Implements(Context.class)
 abstract public class ShadowContext {
+    private static final StaticState filesAndCache = StaticState.register(ShadowContext.class, "clearFilesAndCache");
     public static final File CACHE_DIR = createTempDir("android-cache");
     public static final File EXTERNAL_CACHE_DIR = createTempDir("android-external-cache");
     public static final File FILES_DIR = createTempDir("android-tmp");
@@ -36,6 +39,7 @@ abstract public class ShadowContext {
     @Implementation
     public File getDir(String name, int mode) {
         // TODO: honor operating mode.
+        filesAndCache.touch();
         File file = new File(FILES_DIR, name);
         if (!file.exists()) {
             file.mkdir();
@@ -82,9 +86,11 @@ abstract public class ShadowContext {
         	return getTheme().obtainStyledAttributes( attrs );
         }
         
+        // only our own attribute sets can look attributes up by resource id
         ShadowTypedArray styledAttributes = Robolectric.shadowOf(result);
         for(int attr : attrs) {
-            styledAttributes.add(set.getAttributeValue(attr));
+            styledAttributes.add(set instanceof TestAttributeSet
+                    ? ((TestAttributeSet) set).getAttributeValueForResource(attr) : null);
         }
         return result;
     }
@@ -98,12 +104,14 @@ abstract public class ShadowContext {
 
     @Implementation
     public File getCacheDir() {
+        filesAndCache.touch();
         CACHE_DIR.mkdirs();
         return CACHE_DIR;
     }
 
     @Implementation
     public File getFilesDir() {
+        filesAndCache.touch();
         FILES_DIR.mkdirs();
         return FILES_DIR;
     }
@@ -115,18 +123,21 @@ abstract public class ShadowContext {
 
     @Implementation
     public File getDatabasePath(String name) {
+        filesAndCache.touch();
         DATABASE_DIR.mkdirs();
         return new File(DATABASE_DIR, name);
     }
     
     @Implementation
     public File getExternalCacheDir() {
+        filesAndCache.touch();
         EXTERNAL_CACHE_DIR.mkdir();
         return EXTERNAL_CACHE_DIR;
     }
 
     @Implementation
     public File getExternalFilesDir(String type) {
+        filesAndCache.touch();
     	File f = (type == null) ? EXTERNAL_FILES_DIR : new File( EXTERNAL_FILES_DIR, type );
         f.mkdirs();
         return f;
@@ -164,6 +175,11 @@ abstract public class ShadowContext {
         return shadowOf((Application) realContext.getApplicationContext()).getResourceLoader();
     }
 
+    /**
+     * Deletes everything in the files, cache and database directories. {@link Robolectric#resetStaticState()} only
+     * calls this after a test handed one of them out, so code that writes to {@link #FILES_DIR} and friends without
+     * going through a {@code Context} or {@code Environment} method should call {@link #touchFilesAndCache()}.
+     */
     public static void clearFilesAndCache() {
         clearFiles(FILES_DIR);
         clearFiles(CACHE_DIR);
@@ -172,6 +188,13 @@ abstract public class ShadowContext {
         clearFiles(DATABASE_DIR);
     }
 
+    /**
+     * Non-Android accessor. Marks the files and cache directories as in use, so they get cleared after this test.
+     */
+    public static void touchFilesAndCache() {
+        filesAndCache.touch();
+    }
+
     public static void clearFiles(File dir) {
         if (dir != null && dir.isDirectory()) {
             File[] files = dir.listFiles();
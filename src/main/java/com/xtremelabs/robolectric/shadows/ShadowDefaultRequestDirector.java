@@ -150,7 +150,7 @@ public class ShadowDefaultRequestDirector {
         } else {
             Robolectric.getFakeHttpLayer().addRequestInfo(new HttpRequestInfo(httpRequest, httpHost, httpContext, redirector));
             HttpResponse response = redirector.execute(httpHost, httpRequest, httpContext);
-            Robolectric.getFakeHttpLayer().addHttpResponse(response);
+            Robolectric.getFakeHttpLayer().addHttpResponse(httpRequest, response);
             return response;
         }
     }
@@ -13,6 +13,7 @@ import com.xtremelabs.robolectric.Robolectric;
 import com.xtremelabs.robolectric.internal.Implementation;
 import com.xtremelabs.robolectric.internal.Implements;
 import com.xtremelabs.robolectric.internal.RealObject;
+import com.xtremelabs.robolectric.internal.StaticState;
 import com.xtremelabs.robolectric.tester.android.view.TestWindow;
 
 import java.lang.reflect.Method;
@@ -24,6 +25,7 @@ import static com.xtremelabs.robolectric.Robolectric.shadowOf;
 @SuppressWarnings({"UnusedDeclaration"})
 @Implements(Dialog.class)
 public class ShadowDialog {
+    private static final StaticState staticState = StaticState.register(ShadowDialog.class);
 
     @RealObject private Dialog realDialog;
 
@@ -109,6 +111,7 @@ public class ShadowDialog {
     @Implementation
     public void show() {
         setLatestDialog(this);
+        staticState.touch();
         shownDialogs.add(realDialog);
         isShowing = true;
         try {
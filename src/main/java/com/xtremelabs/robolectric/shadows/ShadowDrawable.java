@@ -8,6 +8,7 @@ import com.xtremelabs.robolectric.Robolectric;
 import com.xtremelabs.robolectric.internal.Implementation;
 import com.xtremelabs.robolectric.internal.Implements;
 import com.xtremelabs.robolectric.internal.RealObject;
+import com.xtremelabs.robolectric.internal.StaticState;
 
 import java.io.InputStream;
 import java.util.ArrayList;
@@ -17,6 +18,7 @@ import static com.xtremelabs.robolectric.Robolectric.shadowOf;
 @SuppressWarnings({"UnusedDeclaration"})
 @Implements(Drawable.class)
 public class ShadowDrawable {
+    private static final StaticState staticState = StaticState.register(ShadowDrawable.class);
     private static int defaultIntrinsicWidth = -1;
     private static int defaultIntrinsicHeight = -1;
     static ArrayList<String> corruptStreamSources = new ArrayList<String>();
@@ -95,6 +97,7 @@ public class ShadowDrawable {
     }
 
     public static void addCorruptStreamSource(String src) {
+        staticState.touch();
         corruptStreamSources.add(src);
     }
 
@@ -13,6 +13,7 @@ import android.util.Log;
 import com.xtremelabs.robolectric.Robolectric;
 import com.xtremelabs.robolectric.internal.Implementation;
 import com.xtremelabs.robolectric.internal.Implements;
+import com.xtremelabs.robolectric.internal.StaticState;
 
 import java.util.ArrayList;
 import java.util.HashMap;
@@ -22,6 +23,7 @@ import java.util.Set;
 
 @Implements(LocalBroadcastManager.class)
 public class ShadowLocalBroadcastManager {
+    private static final StaticState staticState = StaticState.register(ShadowLocalBroadcastManager.class);
 
     private static LocalBroadcastManager publicInstance;
     private static HiddenLocalBroadcastManager localInstance;
@@ -38,6 +40,7 @@ public class ShadowLocalBroadcastManager {
 
     @Implementation
     public static LocalBroadcastManager getInstance(Context context) {
+        staticState.touch();
         synchronized (lock) {
             if (publicInstance == null) {
                 publicInstance = Robolectric.newInstance(LocalBroadcastManager.class, new Class[] {Context.class}, new Object[] {context});
@@ -3,12 +3,14 @@ package com.xtremelabs.robolectric.shadows;
 import android.util.Log;
 import com.xtremelabs.robolectric.internal.Implementation;
 import com.xtremelabs.robolectric.internal.Implements;
+import com.xtremelabs.robolectric.internal.StaticState;
 
 import java.io.PrintStream;
 import java.util.*;
 
 @Implements(Log.class)
 public class ShadowLog {
+    private static final StaticState staticState = StaticState.register(ShadowLog.class);
     private static Map<String,List<LogItem>> logsByTag = new HashMap<String,List<LogItem>>();
     private static List<LogItem> logs = new ArrayList<LogItem>();
     public static PrintStream stream;
@@ -89,6 +91,7 @@ public class ShadowLog {
             logToStream(stream, level, tag, msg, throwable);
         }
         
+        staticState.touch();
         LogItem item = new LogItem(level, tag, msg, throwable);
         List<LogItem> itemList = null;
         
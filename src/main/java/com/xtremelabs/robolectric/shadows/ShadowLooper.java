@@ -4,6 +4,7 @@ import android.os.Looper;
 import com.xtremelabs.robolectric.Robolectric;
 import com.xtremelabs.robolectric.internal.Implementation;
 import com.xtremelabs.robolectric.internal.Implements;
+import com.xtremelabs.robolectric.internal.StaticState;
 import com.xtremelabs.robolectric.util.Scheduler;
 
 import static com.xtremelabs.robolectric.Robolectric.shadowOf;
@@ -17,6 +18,7 @@ import static com.xtremelabs.robolectric.Robolectric.shadowOf;
 @SuppressWarnings({"UnusedDeclaration"})
 @Implements(Looper.class)
 public class ShadowLooper {
+    private static final StaticState staticState = StaticState.register(ShadowLooper.class, "resetThreadLoopers");
     private static ThreadLocal<Looper> looperForThread = makeThreadLocalLoopers();
     private Scheduler scheduler = new Scheduler();
     private Thread myThread = Thread.currentThread();
@@ -58,6 +60,7 @@ public class ShadowLooper {
 
     @Implementation
     public static synchronized Looper myLooper() {
+        staticState.touch();
         return looperForThread.get();
     }
 
@@ -4,6 +4,7 @@ import android.webkit.MimeTypeMap;
 import com.xtremelabs.robolectric.Robolectric;
 import com.xtremelabs.robolectric.internal.Implementation;
 import com.xtremelabs.robolectric.internal.Implements;
+import com.xtremelabs.robolectric.internal.StaticState;
 
 import java.util.HashMap;
 import java.util.Map;
@@ -15,6 +16,7 @@ import static com.xtremelabs.robolectric.Robolectric.shadowOf;
  */
 @Implements(MimeTypeMap.class)
 public class ShadowMimeTypeMap {
+    private static final StaticState staticState = StaticState.register(ShadowMimeTypeMap.class);
 
     Map<String, String> extensionToMimeTypeMap = new HashMap<String, String>();
     Map<String, String> mimeTypeToExtensionMap = new HashMap<String, String>();
@@ -24,6 +26,7 @@ public class ShadowMimeTypeMap {
 
     @Implementation
     public static MimeTypeMap getSingleton() {
+        staticState.touch();
         if (sSingleton == null) {
             synchronized (sSingletonLock) {
                 if (sSingleton == null) {
@@ -10,16 +10,57 @@ import com.xtremelabs.robolectric.internal.Implements;
 import com.xtremelabs.robolectric.internal.RealObject;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
+/**
+ * Keeps a parcel's contents in a growable byte array laid out as the real {@code Parcel} lays them out: little-endian
+ * values padded to four bytes, with strings written as their length followed by their UTF-16 characters and a
+ * terminating null. Reading past the end of the data gives zero or null.
+ * <p/>
+ * Bundles, parcelables, binders, and map values other than strings and boxed primitives are kept in a table of
+ * objects, and only a reference to them is written, so they come back as the same instances. A parcel holding any
+ * of them can't be marshalled, just as a real parcel holding binders can't.
+ * <p/>
+ * The type of each value written is remembered, and reading it back as another type throws a
+ * {@code ClassCastException}. Data that was unmarshalled can be read as anything.
+ * <p/>
+ * Unlike a real parcel, reads and writes have separate cursors, so values can be read back from the start as soon as
+ * they're written. {@link Parcel#setDataPosition(int)} moves both, and {@link Parcel#dataPosition()} reports
+ * whichever was used last.
+ */
 @Implements(Parcel.class)
 @SuppressWarnings("unchecked")
 public class ShadowParcel {
-    private ArrayList parcelData = new ArrayList();
-    private int index = 0;
+    private static final int TYPE_UNKNOWN = 0;
+    private static final int TYPE_INT = 1;
+    private static final int TYPE_LONG = 2;
+    private static final int TYPE_FLOAT = 3;
+    private static final int TYPE_DOUBLE = 4;
+    private static final int TYPE_BYTE = 5;
+    private static final int TYPE_STRING = 6;
+    private static final int TYPE_OBJECT = 7;
+    private static final String[] TYPE_NAMES = {"unknown", "int", "long", "float", "double", "byte", "String", "object"};
+
+    private static final int VAL_NULL = -1;
+    private static final int VAL_STRING = 0;
+    private static final int VAL_INTEGER = 1;
+    private static final int VAL_LONG = 6;
+    private static final int VAL_FLOAT = 7;
+    private static final int VAL_DOUBLE = 8;
+    private static final int VAL_BOOLEAN = 9;
+    private static final int VAL_OBJECT = -2;
+
+    private byte[] data = new byte[0];
+    private byte[] wordTypes = new byte[0];
+    private int dataSize = 0;
+    private int writePosition = 0;
+    private int readPosition = 0;
+    private boolean readLast = false;
+    private List<Object> objects = new ArrayList<Object>();
 
     @RealObject
     private Parcel realParcel;
@@ -29,46 +70,131 @@ public class ShadowParcel {
         return Robolectric.newInstanceOf(Parcel.class);
     }
 
+    @Implementation
+    public void recycle() {
+        data = new byte[0];
+        wordTypes = new byte[0];
+        dataSize = 0;
+        writePosition = 0;
+        readPosition = 0;
+        readLast = false;
+        objects.clear();
+    }
+
+    @Implementation
+    public int dataSize() {
+        return dataSize;
+    }
+
+    @Implementation
+    public int dataAvail() {
+        return Math.max(0, dataSize - readPosition);
+    }
+
+    @Implementation
+    public int dataPosition() {
+        return readLast ? readPosition : writePosition;
+    }
+
+    @Implementation
+    public int dataCapacity() {
+        return data.length;
+    }
+
+    @Implementation
+    public void setDataSize(int size) {
+        ensureCapacity(size);
+        dataSize = size;
+        writePosition = Math.min(writePosition, size);
+        readPosition = Math.min(readPosition, size);
+    }
+
+    @Implementation
+    public void setDataPosition(int position) {
+        if (position < 0) {
+            throw new IllegalArgumentException("negative position " + position);
+        }
+        writePosition = position;
+        readPosition = position;
+        readLast = false;
+    }
+
+    @Implementation
+    public void setDataCapacity(int capacity) {
+        ensureCapacity(capacity);
+    }
+
+    @Implementation
+    public byte[] marshall() {
+        if (!objects.isEmpty()) {
+            throw new RuntimeException("Tried to marshall a Parcel that contained Bundle, Parcelable or Binder objects.");
+        }
+        return Arrays.copyOf(data, dataSize);
+    }
+
+    /**
+     * Leaves the write cursor at the end of the data, as a real parcel leaves its position, and the read cursor at
+     * the start.
+     */
+    @Implementation
+    public void unmarshall(byte[] bytes, int offset, int length) {
+        recycle();
+        ensureCapacity(length);
+        System.arraycopy(bytes, offset, data, 0, length);
+        dataSize = length;
+        writePosition = length;
+    }
+
     @Implementation
     public void writeString(String str) {
         if (str == null) {
+            writeTyped(TYPE_STRING, -1, 4);
             return;
         }
-        parcelData.add(str);
+        int length = str.length();
+        int start = writePosition;
+        writeTyped(TYPE_STRING, length, 4 + pad(2 * (length + 1)));
+        int position = start + 4;
+        for (int i = 0; i < length; i++) {
+            char c = str.charAt(i);
+            data[position++] = (byte) c;
+            data[position++] = (byte) (c >> 8);
+        }
     }
 
     @Implementation
     public void writeInt(int i) {
-        parcelData.add(i);
+        writeTyped(TYPE_INT, i, 4);
     }
 
     @Implementation
     public void writeLong(long i) {
-        parcelData.add(i);
+        int start = writePosition;
+        writeTyped(TYPE_LONG, (int) i, 8);
+        putInt(start + 4, (int) (i >>> 32));
     }
 
     @Implementation
     public void writeFloat(float f) {
-        parcelData.add(f);
+        writeTyped(TYPE_FLOAT, Float.floatToRawIntBits(f), 4);
     }
 
     @Implementation
     public void writeDouble(double f) {
-        parcelData.add(f);
+        long bits = Double.doubleToRawLongBits(f);
+        int start = writePosition;
+        writeTyped(TYPE_DOUBLE, (int) bits, 8);
+        putInt(start + 4, (int) (bits >>> 32));
     }
 
     @Implementation
-    @SuppressWarnings("unchecked")
     public void writeByte(byte b) {
-        parcelData.add(b);
+        writeTyped(TYPE_BYTE, b, 4);
     }
 
     @Implementation
     public void writeStrongBinder(IBinder binder) {
-        if (binder == null) {
-            return;
-        }
-        parcelData.add(binder);
+        writeObject(binder);
     }
 
     @Implementation
@@ -77,52 +203,97 @@ public class ShadowParcel {
             writeInt(-1);
             return;
         }
-        Set<Map.Entry<String,Object>> entries = map.entrySet();
+        Set<Map.Entry<Object, Object>> entries = map.entrySet();
         writeInt(entries.size());
-        for (Map.Entry<String,Object> e : entries) {
-            parcelData.add(e.getKey());
-            parcelData.add(e.getValue());
+        for (Map.Entry<Object, Object> e : entries) {
+            writeValue(e.getKey());
+            writeValue(e.getValue());
+        }
+    }
+
+    /**
+     * Writes strings, boxed primitives and null in the real wire format, and anything else by reference.
+     */
+    @Implementation
+    public final void writeValue(Object v) {
+        if (v == null) {
+            writeInt(VAL_NULL);
+        } else if (v instanceof String) {
+            writeInt(VAL_STRING);
+            writeString((String) v);
+        } else if (v instanceof Integer) {
+            writeInt(VAL_INTEGER);
+            writeInt((Integer) v);
+        } else if (v instanceof Long) {
+            writeInt(VAL_LONG);
+            writeLong((Long) v);
+        } else if (v instanceof Float) {
+            writeInt(VAL_FLOAT);
+            writeFloat((Float) v);
+        } else if (v instanceof Double) {
+            writeInt(VAL_DOUBLE);
+            writeDouble((Double) v);
+        } else if (v instanceof Boolean) {
+            writeInt(VAL_BOOLEAN);
+            writeInt((Boolean) v ? 1 : 0);
+        } else {
+            writeInt(VAL_OBJECT);
+            writeObject(v);
         }
     }
 
     @Implementation
     public String readString() {
-        return index < parcelData.size() ? (String) parcelData.get(index++) : null;
+        if (!canRead(TYPE_STRING, 4)) {
+            return null;
+        }
+        int length = getInt(readPosition);
+        if (length < 0) {
+            readPosition += 4;
+            return null;
+        }
+        int byteCount = 4 + pad(2 * (length + 1));
+        if (readPosition + byteCount > dataSize) {
+            return null;
+        }
+        String string = getString(readPosition);
+        readPosition += byteCount;
+        return string;
     }
 
     @Implementation
     public int readInt() {
-        return index < parcelData.size() ? (Integer) parcelData.get(index++) : 0;
+        return canRead(TYPE_INT, 4) ? readRawInt() : 0;
     }
 
     @Implementation
     public float readFloat() {
-        return index < parcelData.size() ? (Float) parcelData.get(index++) : 0;
+        return canRead(TYPE_FLOAT, 4) ? Float.intBitsToFloat(readRawInt()) : 0;
     }
 
     @Implementation
     public double readDouble() {
-        return index < parcelData.size() ? (Double) parcelData.get(index++) : 0;
+        return canRead(TYPE_DOUBLE, 8) ? Double.longBitsToDouble(readRawLong()) : 0;
     }
 
     @Implementation
     public byte readByte() {
-        return index < parcelData.size() ? (Byte) parcelData.get(index++) : 0;
+        return canRead(TYPE_BYTE, 4) ? (byte) readRawInt() : 0;
     }
 
     @Implementation
     public long readLong() {
-        return index < parcelData.size() ? (Long) parcelData.get(index++) : 0;
+        return canRead(TYPE_LONG, 8) ? readRawLong() : 0;
     }
 
     @Implementation
     public Bundle readBundle() {
-        return index < parcelData.size() ? (Bundle) parcelData.get(index++) : null;
+        return (Bundle) readObject();
     }
 
     @Implementation
     public IBinder readStrongBinder() {
-        return index < parcelData.size() ? (IBinder) parcelData.get(index++) : null;
+        return (IBinder) readObject();
     }
 
     @Implementation
@@ -134,13 +305,39 @@ public class ShadowParcel {
         }
         HashMap map = new HashMap(count);
         for (int i = 0; i < count; ++i) {
-            Object key = parcelData.get(index++);
-            Object value = parcelData.get(index++);
+            Object key = readValue(loader);
+            Object value = readValue(loader);
             map.put(key, value);
         }
         return map;
     }
 
+    @Implementation
+    public final Object readValue(ClassLoader loader) {
+        int type = readInt();
+        switch (type) {
+            case VAL_NULL:
+                return null;
+            case VAL_STRING:
+                return readString();
+            case VAL_INTEGER:
+                return readInt();
+            case VAL_LONG:
+                return readLong();
+            case VAL_FLOAT:
+                return readFloat();
+            case VAL_DOUBLE:
+                return readDouble();
+            case VAL_BOOLEAN:
+                return readInt() == 1;
+            case VAL_OBJECT:
+                return readObject();
+            default:
+                throw new RuntimeException("Parcel " + realParcel + ": Unmarshalling unknown type code " + type
+                        + " at offset " + (readPosition - 4));
+        }
+    }
+
     @Implementation
     public Bundle readBundle(ClassLoader loader) {
         return readBundle();
@@ -148,17 +345,17 @@ public class ShadowParcel {
 
     @Implementation
     public void writeBundle(Bundle bundle) {
-        parcelData.add(bundle);
+        writeObject(bundle);
     }
 
     @Implementation
     public void writeParcelable(Parcelable p, int flags) {
-        parcelData.add(p);
+        writeObject(p);
     }
 
     @Implementation
     public Parcelable readParcelable(ClassLoader cl) {
-        return index < parcelData.size() ? (Parcelable) parcelData.get(index++) : null;
+        return (Parcelable) readObject();
     }
 
     @Implementation
@@ -249,7 +446,7 @@ public class ShadowParcel {
             return null;
         }
     }
-    
+
     @Implementation
     public void writeStringList(List<String> strings) {
         if (strings == null) {
@@ -338,12 +535,152 @@ public class ShadowParcel {
         }
     }
 
+    /**
+     * @deprecated use {@link Parcel#dataPosition()} instead
+     */
     public int getIndex() {
-        return index;
+        return readPosition;
     }
 
+    /**
+     * @return the values written so far, boxed, with strings as {@code String}s and objects as themselves; the words
+     *         of unmarshalled data come back as {@code Integer}s
+     * @deprecated read the values back with the {@code Parcel}'s own methods instead
+     */
     public List getParcelData() {
-        return parcelData;
+        List<Object> values = new ArrayList<Object>();
+        int position = 0;
+        while (position + 4 <= dataSize) {
+            int word = getInt(position);
+            switch (wordTypes[position >> 2]) {
+                case TYPE_LONG:
+                    values.add((long) getInt(position + 4) << 32 | word & 0xffffffffL);
+                    position += 8;
+                    break;
+                case TYPE_DOUBLE:
+                    values.add(Double.longBitsToDouble((long) getInt(position + 4) << 32 | word & 0xffffffffL));
+                    position += 8;
+                    break;
+                case TYPE_FLOAT:
+                    values.add(Float.intBitsToFloat(word));
+                    position += 4;
+                    break;
+                case TYPE_BYTE:
+                    values.add((byte) word);
+                    position += 4;
+                    break;
+                case TYPE_STRING:
+                    values.add(getString(position));
+                    position += word < 0 ? 4 : 4 + pad(2 * (word + 1));
+                    break;
+                case TYPE_OBJECT:
+                    values.add(word < 0 ? null : objects.get(word));
+                    position += 4;
+                    break;
+                default:
+                    values.add(word);
+                    position += 4;
+            }
+        }
+        return values;
     }
 
+    private void writeObject(Object object) {
+        if (object == null) {
+            writeTyped(TYPE_OBJECT, -1, 4);
+        } else {
+            writeTyped(TYPE_OBJECT, objects.size(), 4);
+            objects.add(object);
+        }
+    }
+
+    private Object readObject() {
+        if (!canRead(TYPE_OBJECT, 4)) {
+            return null;
+        }
+        int reference = readRawInt();
+        return reference < 0 || reference >= objects.size() ? null : objects.get(reference);
+    }
+
+    /**
+     * Makes room for {@code byteCount} bytes at the current position, marks them as a value of type {@code type},
+     * writes {@code firstWord} as their first four bytes and zeroes the rest.
+     */
+    private void writeTyped(int type, int firstWord, int byteCount) {
+        int end = writePosition + byteCount;
+        ensureCapacity(end);
+        int firstWordIndex = writePosition >> 2;
+        wordTypes[firstWordIndex] = (byte) type;
+        for (int i = firstWordIndex + 1; i < (end + 3) >> 2; i++) {
+            wordTypes[i] = TYPE_UNKNOWN;
+        }
+        Arrays.fill(data, writePosition + 4, end, (byte) 0);
+        putInt(writePosition, firstWord);
+        writePosition = end;
+        readLast = false;
+        dataSize = Math.max(dataSize, end);
+    }
+
+    private boolean canRead(int type, int byteCount) {
+        readLast = true;
+        if (readPosition + byteCount > dataSize) {
+            return false;
+        }
+        int writtenType = wordTypes[readPosition >> 2];
+        if (writtenType != TYPE_UNKNOWN && writtenType != type) {
+            throw new ClassCastException("can't read the " + TYPE_NAMES[writtenType] + " at position " + readPosition
+                    + " as " + TYPE_NAMES[type]);
+        }
+        return true;
+    }
+
+    private int readRawInt() {
+        int value = getInt(readPosition);
+        readPosition += 4;
+        return value;
+    }
+
+    private long readRawLong() {
+        long low = getInt(readPosition) & 0xffffffffL;
+        long high = getInt(readPosition + 4);
+        readPosition += 8;
+        return high << 32 | low;
+    }
+
+    private void putInt(int position, int value) {
+        data[position] = (byte) value;
+        data[position + 1] = (byte) (value >> 8);
+        data[position + 2] = (byte) (value >> 16);
+        data[position + 3] = (byte) (value >> 24);
+    }
+
+    private int getInt(int position) {
+        return (data[position] & 0xff) | (data[position + 1] & 0xff) << 8
+                | (data[position + 2] & 0xff) << 16 | data[position + 3] << 24;
+    }
+
+    private String getString(int position) {
+        int length = getInt(position);
+        if (length < 0) {
+            return null;
+        }
+        char[] chars = new char[length];
+        position += 4;
+        for (int i = 0; i < length; i++) {
+            chars[i] = (char) ((data[position++] & 0xff) | (data[position++] & 0xff) << 8);
+        }
+        return new String(chars);
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > data.length) {
+            int newLength = Math.max(capacity, Math.max(64, data.length * 2));
+            data = Arrays.copyOf(data, newLength);
+            wordTypes = Arrays.copyOf(wordTypes, (newLength + 3) >> 2);
+        }
+    }
+
+    private static int pad(int byteCount) {
+        return (byteCount + 3) & ~3;
+    }
 }
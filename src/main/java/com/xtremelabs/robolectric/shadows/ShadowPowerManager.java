@@ -5,18 +5,21 @@ import android.os.PowerManager;
 import com.xtremelabs.robolectric.Robolectric;
 import com.xtremelabs.robolectric.internal.Implementation;
 import com.xtremelabs.robolectric.internal.Implements;
+import com.xtremelabs.robolectric.internal.StaticState;
 
 /**
  * Shadows the {@code android.os.PowerManager} class.
  */
 @Implements(PowerManager.class)
 public class ShadowPowerManager {
+    private static final StaticState staticState = StaticState.register(ShadowPowerManager.class);
 
 	private boolean isScreenOn = true;
 
     @Implementation
     public PowerManager.WakeLock newWakeLock(int flags, String tag) {
     	PowerManager.WakeLock wl = Robolectric.newInstanceOf(PowerManager.WakeLock.class);
+    	staticState.touch();
     	Robolectric.getShadowApplication().addWakeLock(wl);
         return wl;
     }
@@ -1,34 +1,45 @@
 package com.xtremelabs.robolectric.shadows;
 
 import android.database.sqlite.SQLiteCursor;
+import android.database.sqlite.SQLiteException;
 import com.xtremelabs.robolectric.internal.Implementation;
 import com.xtremelabs.robolectric.internal.Implements;
 
+import java.math.BigDecimal;
+import java.sql.Blob;
 import java.sql.Clob;
-import java.sql.Connection;
 import java.sql.ResultSet;
 import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
-import java.sql.Statement;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * Simulates an Android Cursor object, by wrapping a JDBC ResultSet.
+ * <p/>
+ * Rows are read from the ResultSet only as the cursor moves onto them, {@value #WINDOW_SIZE} at a time, and kept
+ * in per-column arrays of the value's type, much like Android's {@code CursorWindow}. Moving backwards re-reads
+ * them from those arrays, and {@link #getCount()} reads whatever rows are left.
  */
 @Implements(SQLiteCursor.class)
 public class ShadowSQLiteCursor extends ShadowAbstractCursor {
+    /* package */ static final int WINDOW_SIZE = 512;
 
     private ResultSet resultSet;
-    
-    
+    private List<RowWindow> windows = new ArrayList<RowWindow>();
+    private int filledRowCount;
+    private boolean allRowsFilled;
+    private RowWindow currentWindow;
+    private int currentWindowRow;
+
+
     /**
      * Stores the column names so they are retrievable after the resultSet has closed
      */
     private void cacheColumnNames(ResultSet rs) {
     	try {
             ResultSetMetaData metaData = rs.getMetaData();
-            int columnCount = metaData.getColumnCount();    
+            int columnCount = metaData.getColumnCount();
             columnNameArray = new String[columnCount];
             for (int columnIndex = 1; columnIndex <= columnCount; columnIndex++) {
                 String cName = metaData.getColumnName(columnIndex).toLowerCase();
@@ -39,20 +50,20 @@ public class ShadowSQLiteCursor extends ShadowAbstractCursor {
             throw new RuntimeException("SQL exception in cacheColumnNames", e);
         }
     }
-    
-   
 
-  
+
+
+
     private Integer getColIndex(String columnName) {
         if (columnName == null) {
             return -1;
         }
-        
+
         Integer i  = this.columnNames.get(columnName.toLowerCase());
         if (i==null) return -1;
         return i;
     }
-    
+
     @Implementation
     public int getColumnIndex(String columnName) {
     	return getColIndex(columnName);
@@ -67,101 +78,125 @@ public class ShadowSQLiteCursor extends ShadowAbstractCursor {
         return columnIndex;
     }
 
+    @Implementation
+    @Override
+    public int getCount() {
+        fillRowsUpTo(Integer.MAX_VALUE);
+        return rowCount;
+    }
+
     @Implementation
     @Override
     public final boolean moveToLast() {
         return super.moveToLast();
     }
-    
+
     @Implementation
     @Override
     public final boolean moveToFirst() {
-        return super.moveToFirst();
+        setPosition(0);
+        return hasRow(0);
     }
 
     @Implementation
     @Override
     public boolean moveToNext() {
-        return super.moveToNext();
+        if (!hasRow(currentRowNumber + 1)) {
+            currentRowNumber = filledRowCount;
+            return false;
+        }
+        setPosition(currentRowNumber + 1);
+        return true;
     }
-    
+
     @Implementation
     @Override
     public boolean moveToPrevious() {
-        return super.moveToPrevious();
+        if (currentRowNumber < 0 || !hasRow(0)) {
+            return false;
+        }
+        setPosition(currentRowNumber - 1);
+        return true;
     }
-    
+
     @Implementation
     @Override
     public boolean moveToPosition(int pos) {
-    	return super.moveToPosition(pos);
+        if (!hasRow(pos)) {
+            return false;
+        }
+        setPosition(pos);
+        return true;
+    }
+
+    @Implementation
+    @Override
+    public boolean isLast() {
+        return currentRowNumber >= 0 && hasRow(currentRowNumber) && !hasRow(currentRowNumber + 1);
+    }
+
+    @Implementation
+    @Override
+    public boolean isAfterLast() {
+        return currentRowNumber >= 0 && !hasRow(currentRowNumber);
+    }
+
+    @Override
+    protected void setPosition(int pos) {
+        currentRowNumber = pos;
+        if (pos >= 0 && hasRow(pos)) {
+            currentWindow = windows.get(pos / WINDOW_SIZE);
+            currentWindowRow = pos % WINDOW_SIZE;
+        } else {
+            currentWindow = null;
+        }
     }
 
     @Implementation
     public byte[] getBlob(int columnIndex) {
     	checkPosition();
-        return (byte[]) this.currentRow.get(getColumnNames()[columnIndex]);
+        return currentWindow.getBlob(currentWindowRow, columnIndex);
     }
 
     @Implementation
     public String getString(int columnIndex) {
         checkPosition();
-        Object value = this.currentRow.get(getColumnNames()[columnIndex]);
-        if (value instanceof Clob) {
-            try {
-                return ((Clob) value).getSubString(1, (int)((Clob) value).length());
-            } catch (SQLException x) {
-                throw new RuntimeException(x);
-            }
-        } else {
-            return (String)value;
-        }
+        return currentWindow.getString(currentWindowRow, columnIndex);
     }
-	
+
 	@Implementation
 	public short getShort(int columnIndex) {
 		checkPosition();
-		Object o =this.currentRow.get(getColumnNames()[columnIndex]);
-    	if (o==null) return 0;
-        return new Short(o.toString());
+        return (short) currentWindow.getLong(currentWindowRow, columnIndex);
 	}
-	
+
     @Implementation
     public int getInt(int columnIndex) {
     	checkPosition();
-    	Object o =this.currentRow.get(getColumnNames()[columnIndex]);
-    	if (o==null) return 0;
-        return new Integer(o.toString());
+        return (int) currentWindow.getLong(currentWindowRow, columnIndex);
     }
 
     @Implementation
     public long getLong(int columnIndex) {
     	checkPosition();
-    	Object o =this.currentRow.get(getColumnNames()[columnIndex]);
-    	if (o==null) return 0;
-        return new Long(o.toString());
+        return currentWindow.getLong(currentWindowRow, columnIndex);
     }
 
     @Implementation
     public float getFloat(int columnIndex) {
     	checkPosition();
-    	Object o =this.currentRow.get(getColumnNames()[columnIndex]);
-    	if (o==null) return 0;
-        return new Float(o.toString());
-        
+        return (float) currentWindow.getDouble(currentWindowRow, columnIndex);
     }
 
     @Implementation
     public double getDouble(int columnIndex) {
     	checkPosition();
-    	Object o =this.currentRow.get(getColumnNames()[columnIndex]);
-    	if (o==null) return 0;
-    	return new Double(o.toString());
+        return currentWindow.getDouble(currentWindowRow, columnIndex);
     }
-    
+
     private void checkPosition() {
-        if (-1 == currentRowNumber || getCount() == currentRowNumber) {      
-            throw new IndexOutOfBoundsException(currentRowNumber + " " + getCount());
+        if (currentWindow == null) {
+            throw new IndexOutOfBoundsException(currentRowNumber + " " + filledRowCount);
         }
     }
 
@@ -174,8 +209,10 @@ public class ShadowSQLiteCursor extends ShadowAbstractCursor {
         try {
             resultSet.close();
             resultSet = null;
-            rows = null;
-            currentRow = null;
+            windows = new ArrayList<RowWindow>();
+            filledRowCount = 0;
+            allRowsFilled = true;
+            currentWindow = null;
         } catch (SQLException e) {
             throw new RuntimeException("SQL exception in close", e);
         }
@@ -188,8 +225,8 @@ public class ShadowSQLiteCursor extends ShadowAbstractCursor {
 
     @Implementation
     public boolean isNull(int columnIndex) {
-        Object o = this.currentRow.get(getColumnNames()[columnIndex]);
-        return o == null;
+        checkPosition();
+        return currentWindow.isNull(currentWindowRow, columnIndex);
     }
 
     /**
@@ -201,7 +238,7 @@ public class ShadowSQLiteCursor extends ShadowAbstractCursor {
     public ResultSet getResultSet() {
         return resultSet;
     }
-    
+
     /**
      * Allows test cases access to the underlying JDBC ResultSetMetaData, for use in
      * assertions. Available even if cl
@@ -210,53 +247,175 @@ public class ShadowSQLiteCursor extends ShadowAbstractCursor {
      */
     public ResultSet getResultSetMetaData() {
         return resultSet;
-    }    
-    
-    /**
-     * loads a row's values
-     * @param rs
-     * @return
-     * @throws SQLException
-     */
-    private Map<String,Object> fillRowValues(ResultSet rs) throws SQLException {
-    	Map<String,Object> row = new HashMap<String,Object>();
-    	for (String s : getColumnNames()) {
-			  row.put(s, rs.getObject(s));
-    	}
-    	return row;
     }
-    private void fillRows(String sql, Connection connection) throws SQLException {
-    	//ResultSets in SQLite\Android are only TYPE_FORWARD_ONLY. Android caches results in the WindowedCursor to allow moveToPrevious() to function.
-    	//Robolectric will have to cache the results too. In the rows map.
-    	Statement statement = connection.createStatement(ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
-        ResultSet rs = statement.executeQuery(sql);
-        int count = 0;
-        if (rs.next()) {  
-        	     do {
-        	    	Map<String,Object> row = fillRowValues(rs);
-         	    	rows.put(count, row);
-        	    	count++;
-        	     } while (rs.next());  
-        	 } else {  
-        		 rs.close(); 
-        	 } 
-        
-        rowCount = count;
-        
+
+    private boolean hasRow(int pos) {
+        fillRowsUpTo(pos);
+        return pos < filledRowCount;
+    }
+
+    private void fillRowsUpTo(int pos) {
+        //ResultSets in SQLite\Android are only TYPE_FORWARD_ONLY. Android caches results in the WindowedCursor to allow moveToPrevious() to function.
+        //Robolectric does the same, reading a window's worth of rows whenever the cursor moves past the ones it has.
+        try {
+            while (!allRowsFilled && pos >= filledRowCount) {
+                RowWindow window = new RowWindow(columnNameArray.length, WINDOW_SIZE);
+                while (window.rowCount < WINDOW_SIZE && resultSet.next()) {
+                    window.addRow(resultSet);
+                }
+                if (window.rowCount > 0) {
+                    windows.add(window);
+                    filledRowCount += window.rowCount;
+                }
+                if (window.rowCount < WINDOW_SIZE) {
+                    allRowsFilled = true;
+                    rowCount = filledRowCount;
+                }
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException("SQL exception in fillRows", e);
+        }
     }
-    
+
+    /**
+     * Uses {@code result} as it is, without running {@code sql} again; its rows are read as the cursor moves.
+     */
     public void setResultSet(ResultSet result, String sql) {
         this.resultSet = result;
         rowCount = 0;
+        windows = new ArrayList<RowWindow>();
+        filledRowCount = 0;
+        allRowsFilled = result == null;
+        currentWindow = null;
 
-        //Cache all rows.  Caching rows should be thought of as a simple replacement for ShadowCursorWindow
         if (resultSet != null) {
         	cacheColumnNames(resultSet);
-        	try {
-        		fillRows(sql, result.getStatement().getConnection());
-			} catch (SQLException e) {
-			    throw new RuntimeException("SQL exception in setResultSet", e);
-			}
+        }
+    }
+
+    /**
+     * Up to {@link #WINDOW_SIZE} consecutive rows, stored by column. Each column only gets arrays for the types of
+     * values it actually holds.
+     */
+    private static class RowWindow {
+        private static final byte TYPE_NULL = 0;
+        private static final byte TYPE_LONG = 1;
+        private static final byte TYPE_DOUBLE = 2;
+        private static final byte TYPE_STRING = 3;
+        private static final byte TYPE_BLOB = 4;
+
+        private final int capacity;
+        private final byte[][] types;
+        private final long[][] longs;
+        private final double[][] doubles;
+        private final String[][] strings;
+        private final byte[][][] blobs;
+        int rowCount;
+
+        RowWindow(int columnCount, int capacity) {
+            this.capacity = capacity;
+            types = new byte[columnCount][capacity];
+            longs = new long[columnCount][];
+            doubles = new double[columnCount][];
+            strings = new String[columnCount][];
+            blobs = new byte[columnCount][][];
+        }
+
+        void addRow(ResultSet resultSet) throws SQLException {
+            for (int column = 0; column < types.length; column++) {
+                put(rowCount, column, resultSet.getObject(column + 1));
+            }
+            rowCount++;
+        }
+
+        private void put(int row, int column, Object value) throws SQLException {
+            if (value == null) {
+                types[column][row] = TYPE_NULL;
+            } else if (value instanceof Double || value instanceof Float || value instanceof BigDecimal) {
+                if (doubles[column] == null) {
+                    doubles[column] = new double[capacity];
+                }
+                doubles[column][row] = ((Number) value).doubleValue();
+                types[column][row] = TYPE_DOUBLE;
+            } else if (value instanceof Number || value instanceof Boolean) {
+                if (longs[column] == null) {
+                    longs[column] = new long[capacity];
+                }
+                longs[column][row] = value instanceof Boolean ? (((Boolean) value) ? 1 : 0) : ((Number) value).longValue();
+                types[column][row] = TYPE_LONG;
+            } else if (value instanceof byte[] || value instanceof Blob) {
+                if (blobs[column] == null) {
+                    blobs[column] = new byte[capacity][];
+                }
+                blobs[column][row] = value instanceof Blob ? ((Blob) value).getBytes(1, (int) ((Blob) value).length()) : (byte[]) value;
+                types[column][row] = TYPE_BLOB;
+            } else {
+                if (strings[column] == null) {
+                    strings[column] = new String[capacity];
+                }
+                strings[column][row] = value instanceof Clob ? ((Clob) value).getSubString(1, (int) ((Clob) value).length()) : value.toString();
+                types[column][row] = TYPE_STRING;
+            }
+        }
+
+        boolean isNull(int row, int column) {
+            return types[column][row] == TYPE_NULL;
+        }
+
+        long getLong(int row, int column) {
+            switch (types[column][row]) {
+                case TYPE_NULL:
+                    return 0;
+                case TYPE_LONG:
+                    return longs[column][row];
+                case TYPE_DOUBLE:
+                    return (long) doubles[column][row];
+                case TYPE_STRING:
+                    return Long.parseLong(strings[column][row]);
+                default:
+                    throw new SQLiteException("unable to convert BLOB to long");
+            }
+        }
+
+        double getDouble(int row, int column) {
+            switch (types[column][row]) {
+                case TYPE_NULL:
+                    return 0;
+                case TYPE_LONG:
+                    return longs[column][row];
+                case TYPE_DOUBLE:
+                    return doubles[column][row];
+                case TYPE_STRING:
+                    return Double.parseDouble(strings[column][row]);
+                default:
+                    throw new SQLiteException("unable to convert BLOB to double");
+            }
+        }
+
+        String getString(int row, int column) {
+            switch (types[column][row]) {
+                case TYPE_NULL:
+                    return null;
+                case TYPE_LONG:
+                    return Long.toString(longs[column][row]);
+                case TYPE_DOUBLE:
+                    return Double.toString(doubles[column][row]);
+                case TYPE_STRING:
+                    return strings[column][row];
+                default:
+                    throw new SQLiteException("unable to convert BLOB to string");
+            }
+        }
+
+        byte[] getBlob(int row, int column) {
+            switch (types[column][row]) {
+                case TYPE_NULL:
+                    return null;
+                case TYPE_BLOB:
+                    return blobs[column][row];
+                default:
+                    throw new SQLiteException("unable to convert value to BLOB");
+            }
         }
     }
 }
@@ -11,6 +11,8 @@ import com.xtremelabs.robolectric.internal.RealObject;
 import com.xtremelabs.robolectric.util.DatabaseConfig;
 import com.xtremelabs.robolectric.util.SQLite.*;
 
+import java.io.File;
+import java.io.IOException;
 import java.sql.*;
 import java.util.*;
 import java.util.concurrent.locks.ReentrantLock;
@@ -23,11 +25,20 @@ import static com.xtremelabs.robolectric.util.SQLite.*;
  * Shadow for {@code SQLiteDatabase} that simulates the movement of a {@code Cursor} through database tables.
  * Implemented as a wrapper around an embedded SQL database, accessed via JDBC.  The JDBC connection is
  * made available to test cases for use in fixture setup and assertions.
+ * <p/>
+ * Each opened database gets its own in-memory database and connection. Fixtures that are expensive to build can
+ * be saved once with {@link #saveSnapshot(String)} and copied into later databases with
+ * {@link #restoreSnapshot(String)}.
  */
 @Implements(SQLiteDatabase.class)
 public class ShadowSQLiteDatabase {
+    private static final int MAX_CACHED_STATEMENTS = 100;
+    private static final Map<String, Snapshot> snapshots = new HashMap<String, Snapshot>();
+
     @RealObject SQLiteDatabase realSQLiteDatabase;
-    private static Connection connection;
+    private Connection connection;
+    private StatementCache statementCache;
+    private String path;
     private final ReentrantLock mLock = new ReentrantLock(true);
     private boolean mLockingEnabled = true;
     private WeakHashMap<SQLiteClosable, Object> mPrograms;
@@ -58,8 +69,17 @@ public class ShadowSQLiteDatabase {
 
     @Implementation
     public static SQLiteDatabase openDatabase(String path, SQLiteDatabase.CursorFactory factory, int flags) {
-        connection = DatabaseConfig.getMemoryConnection();
-        return newInstanceOf(SQLiteDatabase.class);
+        SQLiteDatabase database = newInstanceOf(SQLiteDatabase.class);
+        ShadowSQLiteDatabase shadowDatabase = shadowOf(database);
+        shadowDatabase.path = path;
+        shadowDatabase.connection = DatabaseConfig.getMemoryConnection();
+        shadowDatabase.statementCache = new StatementCache(shadowDatabase.connection);
+        return database;
+    }
+
+    @Implementation
+    public String getPath() {
+        return path;
     }
 
     @Implementation
@@ -97,50 +117,183 @@ public class ShadowSQLiteDatabase {
                                      ContentValues initialValues, int conflictAlgorithm) throws android.database.SQLException {
 
         try {
-            SQLStringAndBindings sqlInsertString = buildInsertString(table, initialValues, conflictAlgorithm);
-            PreparedStatement insert = connection.prepareStatement(sqlInsertString.sql, Statement.RETURN_GENERATED_KEYS);
-            Iterator<Object> columns = sqlInsertString.columnValues.iterator();
-            int i = 1;
-            long result = -1;
-            while (columns.hasNext()) {
-                insert.setObject(i++, columns.next());
+            return executeInsert(buildInsertString(table, initialValues, conflictAlgorithm));
+        } catch (SQLException e) {
+            throw new android.database.SQLException(e.getLocalizedMessage());
+        }
+    }
+
+    private long executeInsert(SQLStringAndBindings sqlInsertString) throws SQLException {
+        PreparedStatement insert = statementCache.prepare(sqlInsertString.sql, false).statement;
+        Iterator<Object> columns = sqlInsertString.columnValues.iterator();
+        int i = 1;
+        long result = -1;
+        while (columns.hasNext()) {
+            insert.setObject(i++, columns.next());
+        }
+        insert.executeUpdate();
+        ResultSet resultSet = insert.getGeneratedKeys();
+        if (resultSet.next()) {
+            result = resultSet.getLong(1);
+        }
+        resultSet.close();
+        return result;
+    }
+
+    /**
+     * Inserts {@code rows} into {@code table}, for seeding test fixtures. Runs of consecutive rows with the same
+     * columns share one statement and are sent together with {@link PreparedStatement#executeBatch()}, all in one
+     * transaction unless the test already has one open. If any row fails, none of them are inserted.
+     * <p/>
+     * The database gives the rows of a run consecutive ids, so each row's id is worked out from the last id the run
+     * generated. Rows that set the table's primary key themselves are inserted one at a time instead, as
+     * {@link SQLiteDatabase#insert(String, String, ContentValues)} would.
+     *
+     * @return the row id of each row, in order
+     */
+    public long[] insertAll(String table, ContentValues... rows) {
+        if (!isOpen()) {
+            throw new IllegalStateException("database not open");
+        }
+
+        long[] rowIds = new long[rows.length];
+        boolean ownTransaction = !inTransaction;
+        try {
+            if (ownTransaction) {
+                connection.setAutoCommit(false);
             }
-            insert.executeUpdate();
-            ResultSet resultSet = insert.getGeneratedKeys();
-            if (resultSet.next()) {
-                result = resultSet.getLong(1);
+            Set<String> primaryKeyColumns = getPrimaryKeyColumns(table);
+            String batchSql = null;
+            PreparedStatement batch = null;
+            int batchStart = 0;
+            for (int row = 0; row < rows.length; row++) {
+                SQLStringAndBindings sqlInsertString = buildInsertString(table, rows[row], SQLiteDatabase.CONFLICT_NONE);
+                boolean setsPrimaryKey = setsAnyColumn(rows[row], primaryKeyColumns);
+                if (setsPrimaryKey || !sqlInsertString.sql.equals(batchSql)) {
+                    executeBatch(batch, rowIds, batchStart, row);
+                    batchSql = null;
+                    batch = null;
+                }
+                if (setsPrimaryKey) {
+                    rowIds[row] = executeInsert(sqlInsertString);
+                    continue;
+                }
+
+                if (batch == null) {
+                    batchSql = sqlInsertString.sql;
+                    batch = statementCache.prepare(batchSql, false).statement;
+                    batchStart = row;
+                }
+                int i = 1;
+                for (Object value : sqlInsertString.columnValues) {
+                    batch.setObject(i++, value);
+                }
+                batch.addBatch();
             }
-            resultSet.close();
-            return result;
+            executeBatch(batch, rowIds, batchStart, rows.length);
+            if (ownTransaction) {
+                connection.commit();
+            }
+            return rowIds;
         } catch (SQLException e) {
+            if (ownTransaction) {
+                try {
+                    connection.rollback();
+                } catch (SQLException ignore) {
+                    // the insert's exception is the one worth reporting
+                }
+            }
             throw new android.database.SQLException(e.getLocalizedMessage());
+        } finally {
+            if (ownTransaction) {
+                try {
+                    connection.setAutoCommit(true);
+                } catch (SQLException e) {
+                    throw new RuntimeException("SQL exception in insertAll", e);
+                }
+            }
         }
     }
 
+    /**
+     * Sends {@code batch}, which holds rows {@code start} to {@code end} (exclusive), and fills in their ids.
+     */
+    private void executeBatch(PreparedStatement batch, long[] rowIds, int start, int end) throws SQLException {
+        if (batch == null) {
+            return;
+        }
+        batch.executeBatch();
+
+        Statement statement = connection.createStatement();
+        try {
+            ResultSet resultSet = statement.executeQuery(DatabaseConfig.getSelectLastInsertIdentity());
+            long lastRowId = resultSet.next() ? resultSet.getLong(1) : -1;
+            resultSet.close();
+            for (int row = start; row < end; row++) {
+                rowIds[row] = lastRowId == -1 ? -1 : lastRowId - (end - 1 - row);
+            }
+        } finally {
+            statement.close();
+        }
+    }
+
+    private Set<String> getPrimaryKeyColumns(String table) throws SQLException {
+        Set<String> primaryKeyColumns = new HashSet<String>();
+        DatabaseMetaData metaData = connection.getMetaData();
+        // H2 keeps unquoted names in upper case
+        for (String tableName : new String[]{table, table.toUpperCase()}) {
+            ResultSet resultSet = metaData.getPrimaryKeys(null, null, tableName);
+            try {
+                while (resultSet.next()) {
+                    primaryKeyColumns.add(resultSet.getString("COLUMN_NAME").toLowerCase());
+                }
+            } finally {
+                resultSet.close();
+            }
+            if (!primaryKeyColumns.isEmpty()) {
+                break;
+            }
+        }
+        return primaryKeyColumns;
+    }
+
+    private static boolean setsAnyColumn(ContentValues row, Set<String> columns) {
+        for (Map.Entry<String, Object> value : row.valueSet()) {
+            if (columns.contains(value.getKey().toLowerCase())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     @Implementation
     public Cursor query(boolean distinct, String table, String[] columns,
                         String selection, String[] selectionArgs, String groupBy,
                         String having, String orderBy, String limit) {
 
-        String where = selection;
         if (selection != null && selectionArgs != null) {
-            where = buildWhereClause(selection, selectionArgs);
+            checkSelectionArgs(selection, selectionArgs);
         }
 
         String sql = SQLiteQueryBuilder.buildQueryString(distinct, table,
-                columns, where, groupBy, having, orderBy, limit);
+                columns, selection, groupBy, having, orderBy, limit);
         querySql.add(sql);
 
+        CachedStatement query;
         ResultSet resultSet;
         try {
-            Statement statement = connection.createStatement(DatabaseConfig.getResultSetType(), ResultSet.CONCUR_READ_ONLY);
-            resultSet = statement.executeQuery(sql);
+            query = statementCache.prepare(sql, true);
+            if (selection != null) {
+                bindStrings(query.statement, selectionArgs);
+            }
+            resultSet = query.statement.executeQuery();
         } catch (SQLException e) {
             throw new RuntimeException("SQL exception in query", e);
         }
 
         SQLiteCursor cursor = new SQLiteCursor(null, null, null, null);
         shadowOf(cursor).setResultSet(resultSet, sql);
+        query.cursor = cursor;
         cursors.add(cursor);
         return cursor;
     }
@@ -161,15 +314,23 @@ public class ShadowSQLiteDatabase {
 
     @Implementation
     public int update(String table, ContentValues values, String whereClause, String[] whereArgs) {
-        SQLStringAndBindings sqlUpdateString = buildUpdateString(table, values, whereClause, whereArgs);
+        if (whereClause != null && whereArgs != null) {
+            checkSelectionArgs(whereClause, whereArgs);
+        }
+        SQLStringAndBindings sqlUpdateString = buildUpdateString(table, values, whereClause, null);
 
         try {
-            PreparedStatement statement = connection.prepareStatement(sqlUpdateString.sql);
+            PreparedStatement statement = statementCache.prepare(sqlUpdateString.sql, false).statement;
             Iterator<Object> columns = sqlUpdateString.columnValues.iterator();
             int i = 1;
             while (columns.hasNext()) {
                 statement.setObject(i++, columns.next());
             }
+            if (whereClause != null && whereArgs != null) {
+                for (String whereArg : whereArgs) {
+                    statement.setString(i++, whereArg);
+                }
+            }
 
             return statement.executeUpdate();
         } catch (SQLException e) {
@@ -179,10 +340,17 @@ public class ShadowSQLiteDatabase {
 
     @Implementation
     public int delete(String table, String whereClause, String[] whereArgs) {
-        String sql = buildDeleteString(table, whereClause, whereArgs);
+        if (whereClause != null && whereArgs != null) {
+            checkSelectionArgs(whereClause, whereArgs);
+        }
+        String sql = buildDeleteString(table, whereClause, null);
 
         try {
-            return connection.prepareStatement(sql).executeUpdate();
+            PreparedStatement statement = statementCache.prepare(sql, false).statement;
+            if (whereClause != null) {
+                bindStrings(statement, whereArgs);
+            }
+            return statement.executeUpdate();
         } catch (SQLException e) {
             throw new RuntimeException("SQL exception in delete", e);
         }
@@ -196,7 +364,7 @@ public class ShadowSQLiteDatabase {
 
         try {
             String scrubbedSql = DatabaseConfig.getScrubSQL(sql);
-            connection.createStatement().execute(scrubbedSql);
+            statementCache.prepare(scrubbedSql, false).statement.execute();
         } catch (java.sql.SQLException e) {
             android.database.SQLException ase = new android.database.SQLException();
             ase.initCause(e);
@@ -205,29 +373,27 @@ public class ShadowSQLiteDatabase {
     }
 
     @Implementation
-    public void execSQL(String sql, Object[] bindArgs) throws SQLException {
+    public void execSQL(String sql, Object[] bindArgs) throws android.database.SQLException {
         if (bindArgs == null) {
             throw new IllegalArgumentException("Empty bindArgs");
         }
+        if (!isOpen()) {
+            throw new IllegalStateException("database not open");
+        }
         String scrubbedSql = DatabaseConfig.getScrubSQL(sql);
 
-
-        SQLiteStatement statement = null;
         try {
-            statement = compileStatement(scrubbedSql);
-            if (bindArgs != null) {
-                int numArgs = bindArgs.length;
-                for (int i = 0; i < numArgs; i++) {
-                    DatabaseUtils.bindObjectToProgram(statement, i + 1, bindArgs[i]);
-                }
+            PreparedStatement statement = statementCache.prepare(scrubbedSql, false).statement;
+            for (int i = 0; i < bindArgs.length; i++) {
+                bindObject(statement, i + 1, bindArgs[i]);
             }
             statement.execute();
         } catch (SQLiteDatabaseCorruptException e) {
             throw e;
-        } finally {
-            if (statement != null) {
-                statement.close();
-            }
+        } catch (java.sql.SQLException e) {
+            android.database.SQLException ase = new android.database.SQLException();
+            ase.initCause(e);
+            throw ase;
         }
     }
 
@@ -246,29 +412,24 @@ public class ShadowSQLiteDatabase {
 
     @Implementation
     public Cursor rawQueryWithFactory(SQLiteDatabase.CursorFactory cursorFactory, String sql, String[] selectionArgs, String editTable) {
-        String sqlBody = sql;
         if (sql != null) {
-            sqlBody = buildWhereClause(sql, selectionArgs);
+            checkSelectionArgs(sql, selectionArgs);
         }
 
+        CachedStatement query;
         ResultSet resultSet;
         try {
-            SQLiteStatement stmt = compileStatement(sql);
-
-            int numArgs = selectionArgs == null ? 0
-                    : selectionArgs.length;
-            for (int i = 0; i < numArgs; i++) {
-                stmt.bindString(i + 1, selectionArgs[i]);
-            }
-
-            resultSet = Robolectric.shadowOf(stmt).getStatement().executeQuery();
+            query = statementCache.prepare(DatabaseConfig.getScrubSQL(sql), true);
+            bindStrings(query.statement, selectionArgs);
+            resultSet = query.statement.executeQuery();
         } catch (SQLException e) {
             throw new RuntimeException("SQL exception in query", e);
         }
         //TODO: assert rawquery with args returns actual values
 
         SQLiteCursor cursor = (SQLiteCursor) cursorFactory.newCursor(null, null, null, null);
-        shadowOf(cursor).setResultSet(resultSet, sqlBody);
+        shadowOf(cursor).setResultSet(resultSet, sql);
+        query.cursor = cursor;
         cursors.add(cursor);
         return cursor;
     }
@@ -283,7 +444,14 @@ public class ShadowSQLiteDatabase {
         if (!isOpen()) {
             return;
         }
+        // cursors read their rows as they move, so finish reading them while the connection is still there
+        for (Cursor cursor : cursors) {
+            if (!cursor.isClosed()) {
+                cursor.getCount();
+            }
+        }
         try {
+            statementCache.close();
             connection.close();
             connection = null;
         } catch (SQLException e) {
@@ -353,6 +521,61 @@ public class ShadowSQLiteDatabase {
         return connection;
     }
 
+    /**
+     * Saves the schema and contents of this database under {@code name}, replacing any earlier snapshot with that
+     * name, so later tests can {@link #restoreSnapshot(String)} them instead of building them again.
+     */
+    public void saveSnapshot(String name) {
+        if (!isOpen()) {
+            throw new IllegalStateException("database not open");
+        }
+        try {
+            File file = File.createTempFile("robolectric-database-", ".snapshot");
+            file.deleteOnExit();
+            DatabaseConfig.saveSnapshot(connection, file);
+
+            Snapshot previous;
+            synchronized (snapshots) {
+                previous = snapshots.put(name, new Snapshot(DatabaseConfig.getDatabaseMap().getClass(), file));
+            }
+            if (previous != null) {
+                previous.file.delete();
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("couldn't save snapshot " + name, e);
+        } catch (SQLException e) {
+            throw new RuntimeException("SQL exception in saveSnapshot", e);
+        }
+    }
+
+    /**
+     * Replaces the schema and contents of this database with those saved by {@link #saveSnapshot(String)}.
+     *
+     * @return false, leaving the database as it is, if there's no snapshot called {@code name} made with the current
+     * {@code DatabaseMap}
+     */
+    public boolean restoreSnapshot(String name) {
+        if (!isOpen()) {
+            throw new IllegalStateException("database not open");
+        }
+        Snapshot snapshot;
+        synchronized (snapshots) {
+            snapshot = snapshots.get(name);
+        }
+        if (snapshot == null || snapshot.databaseMapClass != DatabaseConfig.getDatabaseMap().getClass()) {
+            return false;
+        }
+
+        try {
+            // the cached statements may refer to tables the snapshot doesn't have
+            statementCache.close();
+            DatabaseConfig.restoreSnapshot(connection, snapshot.file);
+            return true;
+        } catch (SQLException e) {
+            throw new RuntimeException("SQL exception in restoreSnapshot", e);
+        }
+    }
+
     @Implementation
     public SQLiteStatement compileStatement(String sql) throws SQLException {
         lock();
@@ -398,7 +621,131 @@ public class ShadowSQLiteDatabase {
         return false;
     }
 
+    /**
+     * @return the SQL of each {@code query()}, with a '?' wherever one of its selectionArgs was bound
+     */
     public List<String> getQuerySql() {
         return querySql;
     }
+
+    private static void bindStrings(PreparedStatement statement, String[] args) throws SQLException {
+        if (args == null) {
+            return;
+        }
+        for (int i = 0; i < args.length; i++) {
+            statement.setString(i + 1, args[i]);
+        }
+    }
+
+    /**
+     * Binds {@code value} the way {@link DatabaseUtils#bindObjectToProgram} would.
+     */
+    private static void bindObject(PreparedStatement statement, int index, Object value) throws SQLException {
+        if (value == null) {
+            statement.setNull(index, Types.NULL);
+        } else if (value instanceof Double || value instanceof Float) {
+            statement.setDouble(index, ((Number) value).doubleValue());
+        } else if (value instanceof Number) {
+            statement.setLong(index, ((Number) value).longValue());
+        } else if (value instanceof Boolean) {
+            statement.setLong(index, ((Boolean) value) ? 1 : 0);
+        } else if (value instanceof byte[]) {
+            statement.setBytes(index, (byte[]) value);
+        } else {
+            statement.setString(index, value.toString());
+        }
+    }
+
+    /**
+     * A statement from the {@link StatementCache}, and for a query, the cursor over its latest results.
+     */
+    private static class CachedStatement {
+        final PreparedStatement statement;
+        Cursor cursor;
+
+        CachedStatement(PreparedStatement statement) {
+            this.statement = statement;
+        }
+
+        /**
+         * Running the statement again, or closing it, closes its results, so whatever the cursor hasn't read yet
+         * is read first.
+         */
+        void finishCursor() {
+            if (cursor != null && !cursor.isClosed()) {
+                cursor.getCount();
+            }
+            cursor = null;
+        }
+
+        void close() throws SQLException {
+            finishCursor();
+            statement.close();
+        }
+    }
+
+    /**
+     * The most recently used statements on a connection, by their SQL, so statements run over and over are only
+     * prepared once.
+     */
+    private static class StatementCache extends LinkedHashMap<String, CachedStatement> {
+        private final Connection connection;
+
+        StatementCache(Connection connection) {
+            super(16, 0.75f, true);
+            this.connection = connection;
+        }
+
+        /**
+         * @return the statement for {@code sql}, with no parameters bound
+         */
+        CachedStatement prepare(String sql, boolean isQuery) throws SQLException {
+            String key = (isQuery ? "query:" : "update:") + sql;
+            CachedStatement cachedStatement = get(key);
+            if (cachedStatement == null) {
+                PreparedStatement statement = isQuery
+                        ? connection.prepareStatement(sql, DatabaseConfig.getResultSetType(), ResultSet.CONCUR_READ_ONLY)
+                        : connection.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS);
+                cachedStatement = new CachedStatement(statement);
+                put(key, cachedStatement);
+            } else {
+                cachedStatement.finishCursor();
+                cachedStatement.statement.clearParameters();
+            }
+            return cachedStatement;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, CachedStatement> eldest) {
+            if (size() <= MAX_CACHED_STATEMENTS) {
+                return false;
+            }
+            try {
+                eldest.getValue().close();
+            } catch (SQLException ignore) {
+                // it's not used again either way
+            }
+            return true;
+        }
+
+        void close() throws SQLException {
+            try {
+                for (CachedStatement cachedStatement : values()) {
+                    cachedStatement.close();
+                }
+            } finally {
+                clear();
+            }
+        }
+    }
+
+    private static class Snapshot {
+        final Class<?> databaseMapClass;
+        final File file;
+
+        Snapshot(Class<?> databaseMapClass, File file) {
+            this.databaseMapClass = databaseMapClass;
+            this.file = file;
+        }
+    }
 }
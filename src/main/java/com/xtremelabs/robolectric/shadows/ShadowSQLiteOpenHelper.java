@@ -8,37 +8,40 @@ import com.xtremelabs.robolectric.internal.Implementation;
 import com.xtremelabs.robolectric.internal.Implements;
 import com.xtremelabs.robolectric.internal.RealObject;
 
+import java.util.HashMap;
+import java.util.Map;
+
 /**
  * Shadow for {@code SQLiteOpenHelper}.  Provides basic support for retrieving
  * databases and partially implements the subclass contract.  (Currently,
- * support for {@code #onUpgrade} is missing).
+ * support for {@code #onUpgrade} is missing).  Helpers with the same name share
+ * a database, and constructing a helper starts that name's database afresh.
  */
 @Implements(SQLiteOpenHelper.class)
 public class ShadowSQLiteOpenHelper {
     @RealObject private SQLiteOpenHelper realHelper;
-    private static SQLiteDatabase database;
+    private static final Map<String, SQLiteDatabase> databases = new HashMap<String, SQLiteDatabase>();
     private String name;
 
     public void __constructor__(Context context, String name, CursorFactory factory, int version) {
         this.name = name;
-        if (database != null) {
-            database.close();
-        }
-        database = null;
+        close();
     }
 
     @Implementation
     public synchronized void close() {
+        SQLiteDatabase database = databases.remove(name);
         if (database != null) {
             database.close();
         }
-        database = null;
     }
 
     @Implementation
     public synchronized SQLiteDatabase getReadableDatabase() {
+        SQLiteDatabase database = databases.get(name);
         if (database == null) {
-            database = SQLiteDatabase.openDatabase("path", null, 0);
+            database = SQLiteDatabase.openDatabase(name, null, 0);
+            databases.put(name, database);
             realHelper.onCreate(database);
         }
 
@@ -48,8 +51,10 @@ public class ShadowSQLiteOpenHelper {
 
     @Implementation
     public synchronized SQLiteDatabase getWritableDatabase() {
+        SQLiteDatabase database = databases.get(name);
         if (database == null) {
-            database = SQLiteDatabase.openDatabase("path", null, 0);
+            database = SQLiteDatabase.openDatabase(name, null, 0);
+            databases.put(name, database);
             realHelper.onCreate(database);
         }
 
@@ -2,6 +2,7 @@ package com.xtremelabs.robolectric.shadows;
 
 import com.xtremelabs.robolectric.internal.Implementation;
 import com.xtremelabs.robolectric.internal.Implements;
+import com.xtremelabs.robolectric.internal.StaticState;
 
 import android.os.StatFs;
 
@@ -11,6 +12,7 @@ import java.util.Map;
 
 @Implements(StatFs.class)
 public class ShadowStatFs {
+    private static final StaticState staticState = StaticState.register(ShadowStatFs.class);
     public static final int BLOCK_SIZE = 4096;
     private static final Stats DEFAULT_STATS = new Stats(0, 0, 0);
     private static Map<String, Stats> stats = new HashMap<String, Stats>();
@@ -53,6 +55,7 @@ public class ShadowStatFs {
     }
 
     public static void registerStats(String path, int blockCount, int freeBlocks, int availableBlocks) {
+        staticState.touch();
         stats.put(path, new Stats(blockCount, freeBlocks, availableBlocks));
     }
 
@@ -117,7 +117,11 @@ public class ShadowView {
 
     @Implementation
     public void setId(int id) {
+        int oldId = this.id;
         this.id = id;
+        if (oldId != id) {
+            viewIdChanged(realView, oldId, id);
+        }
     }
 
     @Implementation
@@ -218,6 +222,23 @@ public class ShadowView {
         return null;
     }
 
+    /**
+     * Lets the {@code ViewGroup}s above this view update their id indexes when {@code view}, this view or one in
+     * its subtree, changes id.
+     */
+    /* package */ void viewIdChanged(View view, int oldId, int newId) {
+        if (parent != null) {
+            parent.viewIdChanged(view, oldId, newId);
+        }
+    }
+
+    /**
+     * @return whether {@link #findViewById(int)} would find a view with {@code id}, which mustn't be 0
+     */
+    /* package */ boolean containsViewWithId(int id) {
+        return id == this.id;
+    }
+
     @Implementation
     public View getRootView() {
         ShadowView root = this;
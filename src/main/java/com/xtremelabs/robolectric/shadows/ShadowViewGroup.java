@@ -10,16 +10,25 @@ import com.xtremelabs.robolectric.internal.Implements;
 
 import java.io.PrintStream;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
 
 import static com.xtremelabs.robolectric.Robolectric.shadowOf;
 
 /**
  * Shadow for {@code ViewGroup} that simulates its implementation
+ * <p/>
+ * Each {@code ViewGroup} indexes the views in its subtree, itself included, by id. The index is updated as views are
+ * added, removed or given new ids, so {@link #findViewById(int)} only has to walk down the children that contain
+ * the id, and needn't walk at all when the id is missing or unique.
  */
 @SuppressWarnings({"UnusedDeclaration"})
 @Implements(ViewGroup.class)
 public class ShadowViewGroup extends ShadowView {
     private ArrayList<View> children = new ArrayList<View>();
+    private Map<Integer, List<View>> viewsById = new HashMap<Integer, List<View>>();
     private AnimationListener animListener;
     private LayoutAnimationController layoutAnim;
     private boolean disallowInterceptTouchEvent = false;
@@ -32,10 +41,22 @@ public class ShadowViewGroup extends ShadowView {
             return realView;
         }
 
+        if (id != 0) {
+            List<View> views = viewsById.get(id);
+            if (views == null) {
+                return null;
+            } else if (views.size() == 1) {
+                return views.get(0);
+            }
+        }
+
+        // several views have the id, and the first of them in depth-first order wins
         for (View child : children) {
-            View found = child.findViewById(id);
-            if (found != null) {
-                return found;
+            if (id == 0 || shadowOf(child).containsViewWithId(id)) {
+                View found = child.findViewById(id);
+                if (found != null) {
+                    return found;
+                }
             }
         }
         return null;
@@ -76,6 +97,7 @@ public class ShadowViewGroup extends ShadowView {
             children.add(index, child);
         }
         shadowOf(child).parent = this;
+        updateIndexForSubtree(child, true);
         requestLayout();
     }
 
@@ -122,6 +144,7 @@ public class ShadowViewGroup extends ShadowView {
     @Implementation
     public void removeAllViews() {
         for (View child : children) {
+            updateIndexForSubtree(child, false);
             shadowOf(child).parent = null;
         }
         children.clear();
@@ -131,6 +154,7 @@ public class ShadowViewGroup extends ShadowView {
     @Implementation
     public void removeViewAt(int position) {
         View child = children.remove(position);
+        updateIndexForSubtree(child, false);
         shadowOf(child).parent = null;
         requestLayout();
     }
@@ -139,11 +163,78 @@ public class ShadowViewGroup extends ShadowView {
     public void removeView(View view) {
         boolean removed = children.remove(view);
         if (removed) {
+            updateIndexForSubtree(view, false);
             shadowOf(view).parent = null;
         }
         requestLayout();
     }
 
+    @Override
+    /* package */ void viewIdChanged(View view, int oldId, int newId) {
+        removeFromIndex(view, oldId);
+        addToIndex(view, newId);
+        super.viewIdChanged(view, oldId, newId);
+    }
+
+    @Override
+    /* package */ boolean containsViewWithId(int id) {
+        return viewsById.containsKey(id);
+    }
+
+    /**
+     * Adds the views in {@code subtreeRoot}'s subtree to, or removes them from, the indexes of this view group and
+     * the groups above it.
+     */
+    private void updateIndexForSubtree(View subtreeRoot, boolean add) {
+        ShadowView shadowSubtreeRoot = shadowOf(subtreeRoot);
+        List<View> views = new ArrayList<View>();
+        if (shadowSubtreeRoot instanceof ShadowViewGroup) {
+            for (List<View> viewsWithId : ((ShadowViewGroup) shadowSubtreeRoot).viewsById.values()) {
+                views.addAll(viewsWithId);
+            }
+        } else {
+            views.add(subtreeRoot);
+        }
+
+        for (ShadowView group = this; group != null; group = group.parent) {
+            for (View view : views) {
+                if (add) {
+                    ((ShadowViewGroup) group).addToIndex(view, view.getId());
+                } else {
+                    ((ShadowViewGroup) group).removeFromIndex(view, view.getId());
+                }
+            }
+        }
+    }
+
+    private void addToIndex(View view, int id) {
+        if (id == 0) {
+            return;
+        }
+        List<View> views = viewsById.get(id);
+        if (views == null) {
+            views = new ArrayList<View>(1);
+            viewsById.put(id, views);
+        }
+        views.add(view);
+    }
+
+    private void removeFromIndex(View view, int id) {
+        List<View> views = viewsById.get(id);
+        if (views == null) {
+            return;
+        }
+        for (Iterator<View> iterator = views.iterator(); iterator.hasNext(); ) {
+            if (iterator.next() == view) {
+                iterator.remove();
+                break;
+            }
+        }
+        if (views.isEmpty()) {
+            viewsById.remove(id);
+        }
+    }
+
     @Override
     @Implementation
     public boolean hasFocus() {
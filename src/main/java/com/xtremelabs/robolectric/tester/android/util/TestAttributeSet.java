@@ -6,11 +6,24 @@ import com.xtremelabs.robolectric.res.AttrResourceLoader;
 import com.xtremelabs.robolectric.res.ResourceExtractor;
 import com.xtremelabs.robolectric.util.I18nException;
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
+/**
+ * An {@code AttributeSet} over a map from attribute names, such as {@code android:text}, to their values.
+ * <p/>
+ * The names are indexed by local name, with and without their {@code android} prefix, when they're first looked up.
+ * Values are always read from the map. Changes made through {@link #put(String, String)} rebuild the index; changes
+ * made to the map directly are noticed when they add or remove names, but an index-based lookup may miss a name that
+ * replaced another one, so prefer {@code put}.
+ */
 public class TestAttributeSet implements AttributeSet {
     Map<String, String> attributes = new HashMap<String, String>();
+    private List<String> indexedNames;
+    private Map<String, String> namesByLocalName;
+    private Map<String, String> androidNamesByLocalName;
     private ResourceExtractor resourceExtractor;
     private AttrResourceLoader attrResourceLoader;
     private Class<? extends View> viewClass;
@@ -54,6 +67,7 @@ public class TestAttributeSet implements AttributeSet {
 
     public TestAttributeSet put(String name, String value) {
         attributes.put(name, value);
+        indexedNames = null;
         return this;
     }
 
@@ -81,16 +95,24 @@ public class TestAttributeSet implements AttributeSet {
 
     @Override
     public int getAttributeCount() {
-        throw new UnsupportedOperationException();
+        return getIndexedNames().size();
     }
 
     @Override
     public String getAttributeName(int index) {
-        throw new UnsupportedOperationException();
+        return getLocalName(getIndexedNames().get(index));
     }
 
     @Override
-    public String getAttributeValue(int resourceId) {
+    public String getAttributeValue(int index) {
+        return getAttributeValueAt(index);
+    }
+
+    /**
+     * Looks up the attribute named by the resource {@code resourceId}, such as {@code R.attr.textStyle}, whatever its
+     * prefix.
+     */
+    public String getAttributeValueForResource(int resourceId) {
         String qualifiedResourceName = resourceExtractor.getResourceName(resourceId);
         if (qualifiedResourceName != null) {
             String resourceName = qualifiedResourceName.substring(qualifiedResourceName.indexOf('/') + 1);
@@ -112,12 +134,12 @@ public class TestAttributeSet implements AttributeSet {
 
     @Override
     public int getAttributeListValue(String namespace, String attribute, String[] options, int defaultValue) {
-        throw new UnsupportedOperationException();
+        return convertValueToList(getAttributeValueInMap(namespace, attribute), options, defaultValue);
     }
 
     @Override
     public int getAttributeUnsignedIntValue(String namespace, String attribute, int defaultValue) {
-        throw new UnsupportedOperationException();
+        return convertValueToUnsignedInt(getAttributeValueInMap(namespace, attribute), defaultValue);
     }
 
     @Override
@@ -133,12 +155,13 @@ public class TestAttributeSet implements AttributeSet {
 
     @Override
     public int getAttributeListValue(int index, String[] options, int defaultValue) {
-        throw new UnsupportedOperationException();
+        return convertValueToList(getAttributeValueAt(index), options, defaultValue);
     }
 
     @Override
-    public boolean getAttributeBooleanValue(int resourceId, boolean defaultValue) {
-        throw new UnsupportedOperationException();
+    public boolean getAttributeBooleanValue(int index, boolean defaultValue) {
+        String value = getAttributeValueAt(index);
+        return (value != null) ? Boolean.valueOf(value) : defaultValue;
     }
 
     @Override
@@ -152,25 +175,49 @@ public class TestAttributeSet implements AttributeSet {
     }
 
     @Override
-    public int getAttributeResourceValue(int resourceId, int defaultValue) {
-        String attrName = resourceExtractor.getResourceName(resourceId);
-        String value = getAttributeValueInMap(null, attrName);
-        return (value == null) ? defaultValue : resourceExtractor.getResourceId(value);
+    public int getAttributeResourceValue(int index, int defaultValue) {
+        return toResourceId(getAttributeValueAt(index), defaultValue);
+    }
+
+    /**
+     * Like {@link #getAttributeValueForResource(int)}, but resolves the attribute's value to a resource id.
+     */
+    public int getAttributeResourceValueForResource(int resourceId, int defaultValue) {
+        return toResourceId(getAttributeValueForResource(resourceId), defaultValue);
+    }
+
+    private int toResourceId(String value, int defaultValue) {
+        Integer resourceId = (value == null) ? null : resourceExtractor.getResourceId(value);
+        return (resourceId == null) ? defaultValue : resourceId;
     }
 
     @Override
     public int getAttributeIntValue(int index, int defaultValue) {
-        throw new UnsupportedOperationException();
+        String value = getAttributeValueAt(index);
+        String attribute = getAttributeName(index);
+
+        if (attrResourceLoader.hasAttributeFor(viewClass, "xxx", attribute)) {
+            value = attrResourceLoader.convertValueToEnum(viewClass, "xxx", attribute, value);
+        }
+
+        return (value != null) ? Integer.valueOf(value) : defaultValue;
     }
 
     @Override
     public int getAttributeUnsignedIntValue(int index, int defaultValue) {
-        throw new UnsupportedOperationException();
+        return convertValueToUnsignedInt(getAttributeValueAt(index), defaultValue);
     }
 
     @Override
     public float getAttributeFloatValue(int index, float defaultValue) {
-        throw new UnsupportedOperationException();
+        String value = getAttributeValueAt(index);
+        String attribute = getAttributeName(index);
+
+        if (attrResourceLoader.hasAttributeFor(viewClass, "xxx", attribute)) {
+            value = attrResourceLoader.convertValueToEnum(viewClass, "xxx", attribute, value);
+        }
+
+        return (value != null) ? Float.valueOf(value) : defaultValue;
     }
 
     @Override
@@ -206,24 +253,90 @@ public class TestAttributeSet implements AttributeSet {
         }
     }
 
+    /**
+     * Only names with the {@code android} prefix match the {@code android} namespace; any other namespace, or none,
+     * matches the name whatever its prefix.
+     */
     private String getAttributeValueInMap(String namespace, String attribute) {
-        String value = null;
-        for (String key : attributes.keySet()) {
-            String[] mappedKeys = {null, key};
-            if (key.contains(":")) {
-                mappedKeys = key.split(":");
-            }
+        String name = findName(namespace, attribute);
+        if (name != null && !attributes.containsKey(name)) {
+            indexedNames = null;
+            name = findName(namespace, attribute);
+        }
+        return name == null ? null : systemValue(attributes.get(name));
+    }
 
-            if (mappedKeys[1].equals(attribute) && (
-                    namespace == null || !namespace.equals("android") ||
-                            (namespace.equals("android") && namespace.equals(mappedKeys[0])))) {
-                value = attributes.get(key);
-                break;
-            }
+    private String findName(String namespace, String attribute) {
+        getIndexedNames();
+        if ("android".equals(namespace)) {
+            return androidNamesByLocalName.get(attribute);
+        } else {
+            return namesByLocalName.get(attribute);
         }
+    }
+
+    private String getAttributeValueAt(int index) {
+        return systemValue(attributes.get(getIndexedNames().get(index)));
+    }
+
+    private String systemValue(String value) {
         if (value != null && isSystem && value.startsWith("@+id")) {
             value = value.replace("@+id", "@+android:id");
         }
         return value;
     }
+
+    private List<String> getIndexedNames() {
+        if (indexedNames == null || indexedNames.size() != attributes.size()) {
+            List<String> names = new ArrayList<String>(attributes.size());
+            Map<String, String> byLocalName = new HashMap<String, String>();
+            Map<String, String> androidByLocalName = new HashMap<String, String>();
+            for (String name : attributes.keySet()) {
+                names.add(name);
+                String localName = getLocalName(name);
+                if (!byLocalName.containsKey(localName)) {
+                    byLocalName.put(localName, name);
+                }
+                if (name.startsWith("android:") && !androidByLocalName.containsKey(localName)) {
+                    androidByLocalName.put(localName, name);
+                }
+            }
+            namesByLocalName = byLocalName;
+            androidNamesByLocalName = androidByLocalName;
+            indexedNames = names;
+        }
+        return indexedNames;
+    }
+
+    private static String getLocalName(String name) {
+        int prefixEnd = name.indexOf(':');
+        if (prefixEnd < 0) {
+            return name;
+        }
+        int localNameEnd = name.indexOf(':', prefixEnd + 1);
+        return localNameEnd < 0 ? name.substring(prefixEnd + 1) : name.substring(prefixEnd + 1, localNameEnd);
+    }
+
+    private static int convertValueToList(String value, String[] options, int defaultValue) {
+        if (value != null) {
+            for (int i = 0; i < options.length; i++) {
+                if (value.equals(options[i])) {
+                    return i;
+                }
+            }
+        }
+        return defaultValue;
+    }
+
+    private static int convertValueToUnsignedInt(String value, int defaultValue) {
+        if (value == null) {
+            return defaultValue;
+        } else if (value.startsWith("#")) {
+            return (int) Long.parseLong(value.substring(1), 16);
+        } else if (value.startsWith("0x") || value.startsWith("0X")) {
+            return (int) Long.parseLong(value.substring(2), 16);
+        } else {
+            return (int) Long.parseLong(value);
+        }
+    }
 }
@@ -0,0 +1,52 @@
+package com.xtremelabs.robolectric.tester.org.apache.http;
+
+import org.apache.http.Header;
+import org.apache.http.entity.AbstractHttpEntity;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * A repeatable entity whose content is read straight out of a {@code ByteBuffer}, such as a region of a
+ * memory-mapped file, without copying it first.
+ */
+class ByteBufferHttpEntity extends AbstractHttpEntity {
+    private final ByteBuffer content;
+
+    ByteBufferHttpEntity(ByteBuffer content, Header contentType, Header contentEncoding) {
+        this.content = content.slice();
+        setContentType(contentType);
+        setContentEncoding(contentEncoding);
+    }
+
+    @Override
+    public boolean isRepeatable() {
+        return true;
+    }
+
+    @Override
+    public long getContentLength() {
+        return content.remaining();
+    }
+
+    @Override
+    public InputStream getContent() {
+        return new ByteBufferInputStream(content.duplicate());
+    }
+
+    @Override
+    public void writeTo(OutputStream outputStream) throws IOException {
+        if (outputStream == null) {
+            throw new IllegalArgumentException("Output stream may not be null");
+        }
+        ByteBufferInputStream.writeTo(content, outputStream);
+        outputStream.flush();
+    }
+
+    @Override
+    public boolean isStreaming() {
+        return false;
+    }
+}
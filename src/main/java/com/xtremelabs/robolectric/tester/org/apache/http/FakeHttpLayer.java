@@ -12,20 +12,26 @@ import org.apache.http.protocol.HttpContext;
 
 import java.io.IOException;
 import java.net.URI;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Deque;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.regex.Pattern;
 
 public class FakeHttpLayer {
-    List<HttpResponseGenerator> pendingHttpResponses = new ArrayList<HttpResponseGenerator>();
+    Deque<HttpResponseGenerator> pendingHttpResponses = new ArrayDeque<HttpResponseGenerator>();
     List<HttpRequestInfo> httpRequestInfos = new ArrayList<HttpRequestInfo>();
     List<HttpResponse> httpResponses = new ArrayList<HttpResponse>();
-    List<HttpEntityStub.ResponseRule> httpResponseRules = new ArrayList<HttpEntityStub.ResponseRule>();
+    ResponseRuleIndex httpResponseRules = new ResponseRuleIndex();
+    Map<HttpEntityStub.ResponseRule, NetworkModel> networkModelsByRule = new IdentityHashMap<HttpEntityStub.ResponseRule, NetworkModel>();
     HttpResponse defaultHttpResponse;
     private HttpResponse defaultResponse;
     private boolean interceptHttpRequests = true;
+    private HttpCassetteRecorder cassetteRecorder;
+    private NetworkModel networkModel;
 
     public HttpRequestInfo getLastSentHttpRequestInfo() {
         List<HttpRequestInfo> requestInfos = Robolectric.getFakeHttpLayer().getSentHttpRequestInfos();
@@ -78,8 +84,38 @@ public class FakeHttpLayer {
         addHttpResponseRule(new RequestMatcherResponseRule(requestMatcher, responses));
     }
 
+    /**
+     * Add a response rule. Rules added later take precedence over earlier ones that match the same request.
+     */
     public void addHttpResponseRule(HttpEntityStub.ResponseRule responseRule) {
-        httpResponseRules.add(0, responseRule);
+        httpResponseRules.add(responseRule);
+    }
+
+    /**
+     * Add a response rule whose responses are subject to {@code networkModel} rather than the global one.
+     */
+    public void addHttpResponseRule(HttpEntityStub.ResponseRule responseRule, NetworkModel networkModel) {
+        addHttpResponseRule(responseRule);
+        networkModelsByRule.put(responseRule, networkModel);
+    }
+
+    /**
+     * Simulate the network's latency, losses and bandwidth for every response that doesn't come from a rule with a
+     * network model of its own.
+     *
+     * @param networkModel the network model, or null for responses to come back instantly
+     */
+    public void setNetworkModel(NetworkModel networkModel) {
+        this.networkModel = networkModel;
+    }
+
+    /**
+     * Add a rule for each request recorded on {@code cassette}, which replays its recorded responses.
+     */
+    public void replayHttpResponses(HttpCassette cassette) {
+        for (HttpEntityStub.ResponseRule responseRule : cassette.getResponseRules()) {
+            addHttpResponseRule(responseRule);
+        }
     }
 
     public void setDefaultHttpResponse(HttpResponse defaultHttpResponse) {
@@ -90,23 +126,23 @@ public class FakeHttpLayer {
         setDefaultHttpResponse(new TestHttpResponse(statusCode, responseBody));
     }
 
-    private HttpResponse findResponse(HttpRequest httpRequest) throws HttpException, IOException {
+    public HttpResponse emulateRequest(HttpHost httpHost, HttpRequest httpRequest, HttpContext httpContext, RequestDirector requestDirector) throws HttpException, IOException {
+        HttpResponse httpResponse;
+        NetworkModel responseNetworkModel = networkModel;
         if (!pendingHttpResponses.isEmpty()) {
-            return pendingHttpResponses.remove(0).getResponse(httpRequest);
-        }
-
-        for (HttpEntityStub.ResponseRule httpResponseRule : httpResponseRules) {
-            if (httpResponseRule.matches(httpRequest)) {
-                return httpResponseRule.getResponse();
+            httpResponse = pendingHttpResponses.poll().getResponse(httpRequest);
+        } else {
+            HttpEntityStub.ResponseRule httpResponseRule = httpResponseRules.findMatch(new ParsedHttpRequest(httpRequest));
+            if (httpResponseRule != null) {
+                httpResponse = httpResponseRule.getResponse();
+                if (networkModelsByRule.containsKey(httpResponseRule)) {
+                    responseNetworkModel = networkModelsByRule.get(httpResponseRule);
+                }
+            } else {
+                httpResponse = defaultHttpResponse;
             }
         }
 
-        return defaultHttpResponse;
-    }
-
-    public HttpResponse emulateRequest(HttpHost httpHost, HttpRequest httpRequest, HttpContext httpContext, RequestDirector requestDirector) throws HttpException, IOException {
-        HttpResponse httpResponse = findResponse(httpRequest);
-
         if (httpResponse == null) {
             throw new RuntimeException("Unexpected call to execute, no pending responses are available. See Robolectric.addPendingResponse(). Request was: " +
                     httpRequest.getRequestLine().getMethod() + " " + httpRequest.getRequestLine().getUri());
@@ -120,6 +156,10 @@ public class FakeHttpLayer {
             }
         }
 
+        if (responseNetworkModel != null) {
+            httpResponse = responseNetworkModel.transmit(httpRequest, httpResponse);
+        }
+
         addRequestInfo(new HttpRequestInfo(httpRequest, httpHost, httpContext, requestDirector));
         addHttpResponse(httpResponse);
         return httpResponse;
@@ -177,6 +217,7 @@ public class FakeHttpLayer {
 
     public void clearHttpResponseRules() {
         httpResponseRules.clear();
+        networkModelsByRule.clear();
     }
 
     public void clearPendingHttpResponses() {
@@ -206,6 +247,33 @@ public class FakeHttpLayer {
         this.httpResponses.add(response);
     }
 
+    /**
+     * As a consumer of the fake http call, you should never call this method. This should be used solely
+     * by components that exercise real http calls.
+     *
+     * @param httpRequest The request that was sent to the server
+     * @param response The final response received by the server; its entity is replaced if it is being recorded
+     */
+    public void addHttpResponse(HttpRequest httpRequest, HttpResponse response) throws IOException {
+        if (cassetteRecorder != null) {
+            cassetteRecorder.record(httpRequest, response);
+        }
+        addHttpResponse(response);
+    }
+
+    /**
+     * Stop intercepting HTTP requests, and record the real requests and their responses on a cassette that can be
+     * replayed later with {@link #replayHttpResponses(HttpCassette)}.
+     *
+     * @param cassetteRecorder where to record, or null to stop recording
+     */
+    public void recordHttpResponses(HttpCassetteRecorder cassetteRecorder) {
+        this.cassetteRecorder = cassetteRecorder;
+        if (cassetteRecorder != null) {
+            interceptHttpRequests(false);
+        }
+    }
+
     /**
      * Helper method that returns the latest received response from the server.
      * @return The latest HTTP response or null, if no responses are available
@@ -266,7 +334,18 @@ public class FakeHttpLayer {
 
         @Override
         public boolean matches(HttpRequest request) {
-            return requestMatcher.matches(request);
+            return matches(new ParsedHttpRequest(request));
+        }
+
+        boolean matches(ParsedHttpRequest request) {
+            if (requestMatcher instanceof RequestMatcherBuilder) {
+                return ((RequestMatcherBuilder) requestMatcher).matches(request);
+            }
+            return requestMatcher.matches(request.getRequest());
+        }
+
+        RequestMatcher getRequestMatcher() {
+            return requestMatcher;
         }
 
         @Override
@@ -298,6 +377,14 @@ public class FakeHttpLayer {
             return request.getRequestLine().getMethod().equals(method) &&
                     request.getRequestLine().getUri().equals(uri);
         }
+
+        String getMethod() {
+            return method;
+        }
+
+        String getUri() {
+            return uri;
+        }
     }
 
     public static class UriRequestMatcher implements RequestMatcher {
@@ -311,6 +398,10 @@ public class FakeHttpLayer {
         public boolean matches(HttpRequest request) {
             return request.getRequestLine().getUri().equals(uri);
         }
+
+        String getUri() {
+            return uri;
+        }
     }
 
     public static class RequestMatcherBuilder implements RequestMatcher {
@@ -371,8 +462,13 @@ public class FakeHttpLayer {
 
         @Override
         public boolean matches(HttpRequest request) {
-            URI uri = URI.create(request.getRequestLine().getUri());
-            if (method != null && !method.equals(request.getRequestLine().getMethod())) {
+            return matches(new ParsedHttpRequest(request));
+        }
+
+        boolean matches(ParsedHttpRequest parsedRequest) {
+            HttpRequest request = parsedRequest.getRequest();
+            URI uri = parsedRequest.getUri();
+            if (method != null && !method.equals(parsedRequest.getMethod())) {
                 return false;
             }
             if (hostname != null && !hostname.equals(uri.getHost())) {
@@ -381,21 +477,16 @@ public class FakeHttpLayer {
             if (path != null && !path.equals(uri.getRawPath())) {
                 return false;
             }
-            if (noParams && !uri.getRawQuery().equals(null)) {
+            if (noParams && uri.getRawQuery() != null) {
                 return false;
             }
             if (params.size() > 0) {
-                Map<String, String> requestParams = ParamsParser.parseParams(request);
-                if (!requestParams.equals(params)) {
+                if (!parsedRequest.getParams().equals(params)) {
                     return false;
                 }
             }
             if (headers.size() > 0) {
-                Map<String, String> actualRequestHeaders = new HashMap<String, String>();
-                for (Header header : request.getAllHeaders()) {
-                    actualRequestHeaders.put(header.getName(), header.getValue());
-                }
-                if (!headers.equals(actualRequestHeaders)) {
+                if (!headers.equals(parsedRequest.getHeaders())) {
                     return false;
                 }
             }
@@ -0,0 +1,159 @@
+package com.xtremelabs.robolectric.tester.org.apache.http;
+
+import org.apache.http.Header;
+import org.apache.http.HttpResponse;
+import org.apache.http.ProtocolVersion;
+import org.apache.http.message.BasicHeader;
+import org.apache.http.message.BasicHttpResponse;
+import org.apache.http.message.BasicStatusLine;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * HTTP exchanges recorded by an {@link HttpCassetteRecorder}, loaded so that they can be replayed by a
+ * {@link FakeHttpLayer}.
+ * <p/>
+ * A cassette is a directory holding an index of the requests and response headers, and a single file with every
+ * response body. The body file is memory-mapped when the cassette is loaded, and replayed responses read their bodies
+ * straight out of the mapping. The body file must therefore be smaller than 2GB.
+ * <p/>
+ * Each recorded request is replayed by a rule for its method and URI. A request recorded more than once gets its
+ * responses back in the order they were recorded, and once they run out, the last one again.
+ *
+ * @see FakeHttpLayer#replayHttpResponses(HttpCassette)
+ */
+public class HttpCassette {
+    static final String INDEX_FILE_NAME = "index";
+    static final String BODIES_FILE_NAME = "bodies";
+    static final int MAGIC = 0x52484331; // "RHC1"
+    static final int VERSION = 1;
+    static final int EXCHANGE = 1;
+
+    private final Map<String, List<RecordedResponse>> responsesByRequest = new LinkedHashMap<String, List<RecordedResponse>>();
+    private final MappedByteBuffer bodies;
+    private int exchangeCount;
+
+    public HttpCassette(File directory) throws IOException {
+        RandomAccessFile bodiesFile = new RandomAccessFile(new File(directory, BODIES_FILE_NAME), "r");
+        try {
+            bodies = bodiesFile.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, bodiesFile.length());
+        } finally {
+            // the mapping stays valid after the file is closed
+            bodiesFile.close();
+        }
+
+        DataInputStream index = new DataInputStream(new BufferedInputStream(
+                new FileInputStream(new File(directory, INDEX_FILE_NAME))));
+        try {
+            if (index.readInt() != MAGIC || index.readInt() != VERSION) {
+                throw new IOException(directory + " isn't a cassette this version of Robolectric can read");
+            }
+            int tag;
+            while ((tag = index.read()) == EXCHANGE) {
+                readExchange(index);
+            }
+            if (tag != -1) {
+                throw new IOException("corrupt cassette index in " + directory);
+            }
+        } finally {
+            index.close();
+        }
+    }
+
+    public int getExchangeCount() {
+        return exchangeCount;
+    }
+
+    /**
+     * @return a new rule for each recorded method and URI, ready to be added to a {@link FakeHttpLayer}
+     */
+    public List<HttpEntityStub.ResponseRule> getResponseRules() {
+        List<HttpEntityStub.ResponseRule> rules = new ArrayList<HttpEntityStub.ResponseRule>(responsesByRequest.size());
+        for (List<RecordedResponse> responses : responsesByRequest.values()) {
+            RecordedResponse first = responses.get(0);
+            rules.add(new ReplayResponseRule(new FakeHttpLayer.DefaultRequestMatcher(first.method, first.uri), responses));
+        }
+        return rules;
+    }
+
+    private void readExchange(DataInputStream index) throws IOException {
+        RecordedResponse response = new RecordedResponse();
+        response.method = index.readUTF();
+        response.uri = index.readUTF();
+        response.protocolVersion = new ProtocolVersion(index.readUTF(), index.readUnsignedByte(), index.readUnsignedByte());
+        response.statusCode = index.readUnsignedShort();
+        response.reasonPhrase = index.readUTF();
+        response.headers = new Header[index.readUnsignedShort()];
+        for (int i = 0; i < response.headers.length; i++) {
+            response.headers[i] = new BasicHeader(index.readUTF(), index.readUTF());
+        }
+        long bodyOffset = index.readLong();
+        long bodyLength = index.readLong();
+        if (bodyLength >= 0) {
+            ByteBuffer body = bodies.duplicate();
+            body.position((int) bodyOffset);
+            body.limit((int) (bodyOffset + bodyLength));
+            response.body = body.slice();
+        }
+
+        String key = response.method + " " + response.uri;
+        List<RecordedResponse> responses = responsesByRequest.get(key);
+        if (responses == null) {
+            responses = new ArrayList<RecordedResponse>();
+            responsesByRequest.put(key, responses);
+        }
+        responses.add(response);
+        exchangeCount++;
+    }
+
+    private static class RecordedResponse {
+        private String method;
+        private String uri;
+        private ProtocolVersion protocolVersion;
+        private int statusCode;
+        private String reasonPhrase;
+        private Header[] headers;
+        private ByteBuffer body;
+
+        HttpResponse toHttpResponse() {
+            BasicHttpResponse response = new BasicHttpResponse(new BasicStatusLine(protocolVersion, statusCode, reasonPhrase));
+            response.setHeaders(headers);
+            if (body != null) {
+                response.setEntity(new ByteBufferHttpEntity(body,
+                        response.getFirstHeader("Content-Type"), response.getFirstHeader("Content-Encoding")));
+            }
+            return response;
+        }
+    }
+
+    private static class ReplayResponseRule extends FakeHttpLayer.RequestMatcherResponseRule {
+        private final List<RecordedResponse> responses;
+        private int nextResponse;
+
+        ReplayResponseRule(RequestMatcher requestMatcher, List<RecordedResponse> responses) {
+            super(requestMatcher, (HttpResponse) null);
+            this.responses = responses;
+        }
+
+        @Override
+        public HttpResponse getResponse() {
+            RecordedResponse response = responses.get(nextResponse);
+            if (nextResponse < responses.size() - 1) {
+                nextResponse++;
+            }
+            return response.toHttpResponse();
+        }
+    }
+}
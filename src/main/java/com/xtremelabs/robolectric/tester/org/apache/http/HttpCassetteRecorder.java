@@ -0,0 +1,116 @@
+package com.xtremelabs.robolectric.tester.org.apache.http;
+
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpResponse;
+import org.apache.http.ProtocolVersion;
+import org.apache.http.StatusLine;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+
+/**
+ * Writes real HTTP exchanges to an {@link HttpCassette} directory, so that they can be replayed offline later.
+ * <p/>
+ * Each response body is streamed straight to the cassette's body file, and a response whose body can only be read
+ * once has it read back from there, so bodies are never held in memory.
+ *
+ * @see FakeHttpLayer#recordHttpResponses(HttpCassetteRecorder)
+ */
+public class HttpCassetteRecorder {
+    private final RandomAccessFile bodies;
+    private final DataOutputStream index;
+    private int exchangeCount;
+
+    /**
+     * Starts a new cassette in {@code directory}, replacing any cassette already there.
+     */
+    public HttpCassetteRecorder(File directory) throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("couldn't create cassette directory " + directory);
+        }
+        bodies = new RandomAccessFile(new File(directory, HttpCassette.BODIES_FILE_NAME), "rw");
+        bodies.setLength(0);
+        index = new DataOutputStream(new BufferedOutputStream(
+                new FileOutputStream(new File(directory, HttpCassette.INDEX_FILE_NAME))));
+        index.writeInt(HttpCassette.MAGIC);
+        index.writeInt(HttpCassette.VERSION);
+        index.flush();
+    }
+
+    /**
+     * Adds {@code request} and {@code response} to the cassette. If the response's entity can only be read once, it is
+     * replaced with one that reads the recorded body back from the cassette.
+     */
+    public synchronized void record(HttpRequest request, HttpResponse response) throws IOException {
+        HttpEntity entity = response.getEntity();
+        long bodyOffset = bodies.length();
+        long bodyLength = -1;
+        if (entity != null) {
+            bodyLength = writeBody(entity, bodyOffset);
+            if (!entity.isRepeatable()) {
+                response.setEntity(new ByteBufferHttpEntity(
+                        bodies.getChannel().map(FileChannel.MapMode.READ_ONLY, bodyOffset, bodyLength),
+                        entity.getContentType(), entity.getContentEncoding()));
+            }
+        }
+
+        StatusLine statusLine = response.getStatusLine();
+        ProtocolVersion protocolVersion = statusLine.getProtocolVersion();
+        Header[] headers = response.getAllHeaders();
+
+        index.writeByte(HttpCassette.EXCHANGE);
+        index.writeUTF(request.getRequestLine().getMethod());
+        index.writeUTF(request.getRequestLine().getUri());
+        index.writeUTF(protocolVersion.getProtocol());
+        index.writeByte(protocolVersion.getMajor());
+        index.writeByte(protocolVersion.getMinor());
+        index.writeShort(statusLine.getStatusCode());
+        index.writeUTF(statusLine.getReasonPhrase() == null ? "" : statusLine.getReasonPhrase());
+        index.writeShort(headers.length);
+        for (Header header : headers) {
+            index.writeUTF(header.getName());
+            index.writeUTF(header.getValue());
+        }
+        index.writeLong(bodyOffset);
+        index.writeLong(bodyLength);
+        index.flush();
+        exchangeCount++;
+    }
+
+    public synchronized int getExchangeCount() {
+        return exchangeCount;
+    }
+
+    public synchronized void close() throws IOException {
+        try {
+            index.close();
+        } finally {
+            bodies.close();
+        }
+    }
+
+    private long writeBody(HttpEntity entity, long offset) throws IOException {
+        bodies.seek(offset);
+        long length = 0;
+        InputStream content = entity.getContent();
+        try {
+            byte[] buffer = new byte[8192];
+            int count;
+            while ((count = content.read(buffer)) != -1) {
+                bodies.write(buffer, 0, count);
+                length += count;
+            }
+        } finally {
+            content.close();
+        }
+        return length;
+    }
+}
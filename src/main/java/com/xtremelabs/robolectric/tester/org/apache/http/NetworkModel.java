@@ -0,0 +1,228 @@
+package com.xtremelabs.robolectric.tester.org.apache.http;
+
+import com.xtremelabs.robolectric.util.Scheduler;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpResponse;
+import org.apache.http.conn.ConnectTimeoutException;
+import org.apache.http.entity.HttpEntityWrapper;
+import org.apache.http.message.BasicHttpResponse;
+import org.apache.http.params.HttpConnectionParams;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.SocketTimeoutException;
+import java.util.Random;
+
+/**
+ * Simulates the time fake HTTP requests spend on the network: connection latency, lost connection attempts that are
+ * retried, and a bandwidth cap on response bodies. The time is charged to a {@link Scheduler}'s clock with
+ * {@link Scheduler#elapse(long)} rather than slept, so timeouts are deterministic; runnables that fall due while a
+ * request is in flight run at the scheduler's next advance, as they would on a thread that had been blocked.
+ * <p/>
+ * A request whose connection timeout is shorter than its latency fails with a {@code ConnectTimeoutException}, and one
+ * whose socket timeout is shorter than the time it takes to receive a read's worth of body fails with a
+ * {@code SocketTimeoutException}, as does one whose every connection attempt is lost.
+ * <p/>
+ * Latencies and losses are drawn from a seeded random number generator, so runs are repeatable.
+ *
+ * @see FakeHttpLayer#setNetworkModel(NetworkModel)
+ */
+public class NetworkModel {
+    private final Scheduler scheduler;
+    private final Random random;
+    private LatencyDistribution latencyDistribution = fixedLatency(0);
+    private long bytesPerSecond;
+    private double packetLossRate;
+    private int retryCount;
+    private long retryIntervalMs;
+
+    public interface LatencyDistribution {
+        long nextLatencyMs(Random random);
+    }
+
+    public NetworkModel(Scheduler scheduler) {
+        this(scheduler, 0);
+    }
+
+    public NetworkModel(Scheduler scheduler, long seed) {
+        this.scheduler = scheduler;
+        this.random = new Random(seed);
+    }
+
+    public NetworkModel latency(long latencyMs) {
+        return latency(fixedLatency(latencyMs));
+    }
+
+    /**
+     * Spread latencies evenly between {@code minLatencyMs} and {@code maxLatencyMs}, inclusive.
+     */
+    public NetworkModel latency(final long minLatencyMs, final long maxLatencyMs) {
+        if (maxLatencyMs < minLatencyMs) {
+            throw new IllegalArgumentException("maximum latency " + maxLatencyMs + " is less than minimum " + minLatencyMs);
+        }
+        return latency(new LatencyDistribution() {
+            @Override
+            public long nextLatencyMs(Random random) {
+                return minLatencyMs + (long) (random.nextDouble() * (maxLatencyMs - minLatencyMs + 1));
+            }
+        });
+    }
+
+    public NetworkModel latency(LatencyDistribution latencyDistribution) {
+        this.latencyDistribution = latencyDistribution;
+        return this;
+    }
+
+    /**
+     * @param bytesPerSecond the rate at which response bodies can be read, or 0 for no limit
+     */
+    public NetworkModel bandwidth(long bytesPerSecond) {
+        this.bytesPerSecond = bytesPerSecond;
+        return this;
+    }
+
+    /**
+     * @param lossRate        the chance, from 0 to 1, that a connection attempt is lost
+     * @param retryCount      how many times a lost attempt is retried before the request fails
+     * @param retryIntervalMs how long each lost attempt takes to be given up on
+     */
+    public NetworkModel packetLoss(double lossRate, int retryCount, long retryIntervalMs) {
+        this.packetLossRate = lossRate;
+        this.retryCount = retryCount;
+        this.retryIntervalMs = retryIntervalMs;
+        return this;
+    }
+
+    /**
+     * Charges the time it takes to connect for {@code request}, and returns {@code response}, or if its body's
+     * bandwidth is limited, a copy whose body charges for the time it takes to read.
+     */
+    HttpResponse transmit(HttpRequest request, HttpResponse response) throws IOException {
+        connect(request);
+
+        HttpEntity entity = response.getEntity();
+        if (bytesPerSecond <= 0 || entity == null) {
+            return response;
+        }
+        BasicHttpResponse throttledResponse = new BasicHttpResponse(response.getStatusLine());
+        throttledResponse.setHeaders(response.getAllHeaders());
+        throttledResponse.setParams(response.getParams());
+        throttledResponse.setEntity(new ThrottledEntity(entity, HttpConnectionParams.getSoTimeout(request.getParams())));
+        return throttledResponse;
+    }
+
+    private void connect(HttpRequest request) throws IOException {
+        int connectionTimeout = HttpConnectionParams.getConnectionTimeout(request.getParams());
+        for (int attempt = 0; attempt <= retryCount; attempt++) {
+            long latencyMs = latencyDistribution.nextLatencyMs(random);
+            if (packetLossRate > 0 && random.nextDouble() < packetLossRate) {
+                scheduler.elapse(retryIntervalMs);
+            } else if (connectionTimeout > 0 && latencyMs > connectionTimeout) {
+                scheduler.elapse(connectionTimeout);
+                throw new ConnectTimeoutException("Connect to " + request.getRequestLine().getUri() + " timed out");
+            } else {
+                scheduler.elapse(latencyMs);
+                return;
+            }
+        }
+        throw new SocketTimeoutException("Lost every attempt to connect to " + request.getRequestLine().getUri());
+    }
+
+    private static LatencyDistribution fixedLatency(final long latencyMs) {
+        return new LatencyDistribution() {
+            @Override
+            public long nextLatencyMs(Random random) {
+                return latencyMs;
+            }
+        };
+    }
+
+    private class ThrottledEntity extends HttpEntityWrapper {
+        private final int socketTimeout;
+
+        ThrottledEntity(HttpEntity wrappedEntity, int socketTimeout) {
+            super(wrappedEntity);
+            this.socketTimeout = socketTimeout;
+        }
+
+        @Override
+        public InputStream getContent() throws IOException {
+            return new ThrottledInputStream(wrappedEntity.getContent(), socketTimeout);
+        }
+
+        @Override
+        public void writeTo(OutputStream outputStream) throws IOException {
+            InputStream content = getContent();
+            try {
+                byte[] buffer = new byte[8192];
+                int count;
+                while ((count = content.read(buffer)) != -1) {
+                    outputStream.write(buffer, 0, count);
+                }
+            } finally {
+                content.close();
+            }
+        }
+    }
+
+    /**
+     * Hands out at most a tenth of a second's worth of bytes per read, and charges for them as they're read.
+     */
+    private class ThrottledInputStream extends FilterInputStream {
+        private final int socketTimeout;
+        private final int maxReadLength;
+        private long bytesRead;
+        private long chargedMs;
+
+        ThrottledInputStream(InputStream in, int socketTimeout) {
+            super(in);
+            this.socketTimeout = socketTimeout;
+            this.maxReadLength = (int) Math.max(1, Math.min(Integer.MAX_VALUE, bytesPerSecond / 10));
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] singleByte = new byte[1];
+            return read(singleByte, 0, 1) == -1 ? -1 : singleByte[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) throws IOException {
+            int count = super.read(bytes, offset, Math.min(length, maxReadLength));
+            if (count > 0) {
+                bytesRead += count;
+                long dueMs = bytesRead * 1000 / bytesPerSecond;
+                long readMs = dueMs - chargedMs;
+                if (socketTimeout > 0 && readMs > socketTimeout) {
+                    scheduler.elapse(socketTimeout);
+                    throw new SocketTimeoutException("Read timed out");
+                }
+                scheduler.elapse(readMs);
+                chargedMs = dueMs;
+            }
+            return count;
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+
+        @Override
+        public long skip(long count) throws IOException {
+            byte[] buffer = new byte[(int) Math.min(count, 8192)];
+            long skipped = 0;
+            while (skipped < count) {
+                int read = read(buffer, 0, (int) Math.min(count - skipped, buffer.length));
+                if (read == -1) {
+                    break;
+                }
+                skipped += read;
+            }
+            return skipped;
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package com.xtremelabs.robolectric.tester.org.apache.http;
+
+import org.apache.http.Header;
+import org.apache.http.HttpRequest;
+
+import java.net.URI;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * An {@code HttpRequest} together with the parts of it that response rules match against, each parsed at most once
+ * however many rules look at it.
+ */
+class ParsedHttpRequest {
+    private final HttpRequest request;
+    private final String method;
+    private final String uriString;
+    private URI uri;
+    private Map<String, String> params;
+    private Map<String, String> headers;
+
+    ParsedHttpRequest(HttpRequest request) {
+        this.request = request;
+        this.method = request.getRequestLine().getMethod();
+        this.uriString = request.getRequestLine().getUri();
+    }
+
+    HttpRequest getRequest() {
+        return request;
+    }
+
+    String getMethod() {
+        return method;
+    }
+
+    String getUriString() {
+        return uriString;
+    }
+
+    /**
+     * @throws IllegalArgumentException if the request's URI can't be parsed
+     */
+    URI getUri() {
+        if (uri == null) {
+            uri = URI.create(uriString);
+        }
+        return uri;
+    }
+
+    Map<String, String> getParams() {
+        if (params == null) {
+            params = ParamsParser.parseParams(request);
+        }
+        return params;
+    }
+
+    Map<String, String> getHeaders() {
+        if (headers == null) {
+            headers = new HashMap<String, String>();
+            for (Header header : request.getAllHeaders()) {
+                headers.put(header.getName(), header.getValue());
+            }
+        }
+        return headers;
+    }
+}
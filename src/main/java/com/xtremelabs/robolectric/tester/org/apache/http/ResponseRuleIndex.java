@@ -0,0 +1,161 @@
+package com.xtremelabs.robolectric.tester.org.apache.http;
+
+import com.xtremelabs.robolectric.tester.org.apache.http.FakeHttpLayer.DefaultRequestMatcher;
+import com.xtremelabs.robolectric.tester.org.apache.http.FakeHttpLayer.RequestMatcherBuilder;
+import com.xtremelabs.robolectric.tester.org.apache.http.FakeHttpLayer.RequestMatcherResponseRule;
+import com.xtremelabs.robolectric.tester.org.apache.http.FakeHttpLayer.UriRequestMatcher;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The response rules of a {@link FakeHttpLayer}, indexed so that a request is only matched against the rules that
+ * could accept it.
+ * <p/>
+ * Rules for a method and exact URI, or for an exact URI, are keyed by it. {@link RequestMatcherBuilder} rules are
+ * keyed by their path, or failing that their host or method, as they were when the rule was added. Any other rule,
+ * such as a regex or custom matcher, is tried for every request.
+ * <p/>
+ * The most recently added rule that matches a request wins, as though every rule were tried from newest to oldest.
+ */
+class ResponseRuleIndex {
+    private final List<Entry> allRules = new ArrayList<Entry>();
+    private final Map<String, List<Entry>> rulesByMethodAndUri = new HashMap<String, List<Entry>>();
+    private final Map<String, List<Entry>> rulesByUri = new HashMap<String, List<Entry>>();
+    private final Map<String, List<Entry>> rulesByPath = new HashMap<String, List<Entry>>();
+    private final Map<String, List<Entry>> rulesByHost = new HashMap<String, List<Entry>>();
+    private final Map<String, List<Entry>> rulesByMethod = new HashMap<String, List<Entry>>();
+    private final List<Entry> unindexedRules = new ArrayList<Entry>();
+
+    void add(HttpEntityStub.ResponseRule rule) {
+        Entry entry = new Entry(allRules.size(), rule);
+        allRules.add(entry);
+
+        RequestMatcher matcher = rule instanceof RequestMatcherResponseRule ?
+                ((RequestMatcherResponseRule) rule).getRequestMatcher() : null;
+        if (matcher instanceof DefaultRequestMatcher) {
+            DefaultRequestMatcher defaultMatcher = (DefaultRequestMatcher) matcher;
+            addTo(rulesByMethodAndUri, methodAndUri(defaultMatcher.getMethod(), defaultMatcher.getUri()), entry);
+        } else if (matcher instanceof UriRequestMatcher) {
+            addTo(rulesByUri, ((UriRequestMatcher) matcher).getUri(), entry);
+        } else if (matcher instanceof RequestMatcherBuilder) {
+            RequestMatcherBuilder builder = (RequestMatcherBuilder) matcher;
+            if (builder.getPath() != null) {
+                addTo(rulesByPath, builder.getPath(), entry);
+            } else if (builder.getHostname() != null) {
+                addTo(rulesByHost, builder.getHostname(), entry);
+            } else if (builder.getMethod() != null) {
+                addTo(rulesByMethod, builder.getMethod(), entry);
+            } else {
+                unindexedRules.add(entry);
+            }
+        } else {
+            unindexedRules.add(entry);
+        }
+    }
+
+    boolean isEmpty() {
+        return allRules.isEmpty();
+    }
+
+    void clear() {
+        allRules.clear();
+        rulesByMethodAndUri.clear();
+        rulesByUri.clear();
+        rulesByPath.clear();
+        rulesByHost.clear();
+        rulesByMethod.clear();
+        unindexedRules.clear();
+    }
+
+    /**
+     * @return the most recently added rule that matches {@code request}, or null if none does
+     */
+    HttpEntityStub.ResponseRule findMatch(ParsedHttpRequest request) {
+        List<List<Entry>> candidates = new ArrayList<List<Entry>>();
+        addCandidates(candidates, rulesByMethodAndUri.get(methodAndUri(request.getMethod(), request.getUriString())));
+        addCandidates(candidates, rulesByUri.get(request.getUriString()));
+        addCandidates(candidates, rulesByMethod.get(request.getMethod()));
+        addCandidates(candidates, unindexedRules);
+        if (!rulesByPath.isEmpty() || !rulesByHost.isEmpty()) {
+            URI uri;
+            try {
+                uri = request.getUri();
+            } catch (IllegalArgumentException e) {
+                // let every rule have its say on a URI that won't parse, just as it would without the index
+                return findMatch(request, allRules);
+            }
+            addCandidates(candidates, rulesByPath.get(uri.getRawPath()));
+            addCandidates(candidates, rulesByHost.get(uri.getHost()));
+        }
+
+        int[] positions = new int[candidates.size()];
+        for (int i = 0; i < positions.length; i++) {
+            positions[i] = candidates.get(i).size() - 1;
+        }
+        while (true) {
+            int newest = -1;
+            for (int i = 0; i < positions.length; i++) {
+                if (positions[i] >= 0 && (newest < 0 ||
+                        candidates.get(i).get(positions[i]).sequence > candidates.get(newest).get(positions[newest]).sequence)) {
+                    newest = i;
+                }
+            }
+            if (newest < 0) {
+                return null;
+            }
+            Entry entry = candidates.get(newest).get(positions[newest]--);
+            if (entry.matches(request)) {
+                return entry.rule;
+            }
+        }
+    }
+
+    private static HttpEntityStub.ResponseRule findMatch(ParsedHttpRequest request, List<Entry> entries) {
+        for (int i = entries.size() - 1; i >= 0; i--) {
+            if (entries.get(i).matches(request)) {
+                return entries.get(i).rule;
+            }
+        }
+        return null;
+    }
+
+    private static void addCandidates(List<List<Entry>> candidates, List<Entry> entries) {
+        if (entries != null && !entries.isEmpty()) {
+            candidates.add(entries);
+        }
+    }
+
+    private static void addTo(Map<String, List<Entry>> rules, String key, Entry entry) {
+        List<Entry> entries = rules.get(key);
+        if (entries == null) {
+            entries = new ArrayList<Entry>();
+            rules.put(key, entries);
+        }
+        entries.add(entry);
+    }
+
+    private static String methodAndUri(String method, String uri) {
+        return method + " " + uri;
+    }
+
+    private static class Entry {
+        private final int sequence;
+        private final HttpEntityStub.ResponseRule rule;
+
+        Entry(int sequence, HttpEntityStub.ResponseRule rule) {
+            this.sequence = sequence;
+            this.rule = rule;
+        }
+
+        boolean matches(ParsedHttpRequest request) {
+            if (rule instanceof RequestMatcherResponseRule) {
+                return ((RequestMatcherResponseRule) rule).matches(request);
+            }
+            return rule.matches(request.getRequest());
+        }
+    }
+}
@@ -11,18 +11,26 @@ import org.apache.http.params.BasicHttpParams;
 import org.apache.http.params.HttpParams;
 
 import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.NoSuchElementException;
 
+/**
+ * A canned response whose body is a string or bytes, or for large bodies, a file, a {@code ByteBuffer} (which may be
+ * memory-mapped), or a stream generated afresh each time the body is read. Only byte array bodies are copied.
+ */
 public class TestHttpResponse extends HttpResponseStub {
 
     private int statusCode;
-    private byte[] responseBody;
+    private Body responseBody;
     private TestStatusLine statusLine = new TestStatusLine();
     private TestHttpEntity httpEntity = new TestHttpEntity();
     private int openEntityContentStreamCount = 0;
@@ -31,12 +39,12 @@ public class TestHttpResponse extends HttpResponseStub {
 
     public TestHttpResponse() {
         this.statusCode = 200;
-        this.responseBody = new byte[0];
+        this.responseBody = new ByteArrayBody(new byte[0]);
     }
 
     public TestHttpResponse(int statusCode, String responseBody) {
         this.statusCode = statusCode;
-        this.responseBody = responseBody.getBytes();
+        this.responseBody = new ByteArrayBody(responseBody.getBytes());
     }
 
     public TestHttpResponse(int statusCode, String responseBody, Header... headers) {
@@ -44,13 +52,39 @@ public class TestHttpResponse extends HttpResponseStub {
     }
 
     public TestHttpResponse(int statusCode, byte[] responseBody, Header... headers) {
+        this(statusCode, new ByteArrayBody(responseBody.clone()), headers);
+    }
+
+    /**
+     * @param responseBody a file that is read each time the response's content is requested
+     */
+    public TestHttpResponse(int statusCode, File responseBody, Header... headers) {
+        this(statusCode, new FileBody(responseBody), headers);
+    }
+
+    /**
+     * @param responseBody the bytes between the buffer's position and limit, which are read without being copied
+     */
+    public TestHttpResponse(int statusCode, ByteBuffer responseBody, Header... headers) {
+        this(statusCode, new ByteBufferBody(responseBody.slice()), headers);
+    }
+
+    /**
+     * Creates a response with a chunked body of unknown length, generated each time the response's content is
+     * requested.
+     */
+    public TestHttpResponse(int statusCode, ContentGenerator responseBody, Header... headers) {
+        this(statusCode, new GeneratedBody(responseBody), headers);
+    }
+
+    private TestHttpResponse(int statusCode, Body responseBody, Header... headers) {
         this.statusCode = statusCode;
-        this.responseBody = responseBody.clone();
+        this.responseBody = responseBody;
         this.headers = headers;
     }
 
     protected void setResponseBody(String responseBody) {
-        this.responseBody = responseBody.getBytes();
+        this.responseBody = new ByteArrayBody(responseBody.getBytes());
     }
 
     @Override public StatusLine getStatusLine() {
@@ -186,10 +220,14 @@ public class TestHttpResponse extends HttpResponseStub {
     
     public class TestHttpEntity extends HttpEntityStub {
 
-        private ByteArrayInputStream inputStream;
+        private InputStream inputStream;
 
         @Override public long getContentLength() {
-            return responseBody.length;
+            return responseBody.getLength();
+        }
+
+        @Override public boolean isChunked() {
+            return responseBody.getLength() < 0;
         }
         
         @Override public Header getContentType() {
@@ -210,19 +248,24 @@ public class TestHttpResponse extends HttpResponseStub {
         }
 
         @Override public InputStream getContent() throws IOException, IllegalStateException {
-            openEntityContentStreamCount++;
-            inputStream = new ByteArrayInputStream(responseBody) {
+            inputStream = new FilterInputStream(responseBody.open()) {
+                private boolean closed;
+
                 @Override
                 public void close() throws IOException {
-                    openEntityContentStreamCount--;
+                    if (!closed) {
+                        closed = true;
+                        openEntityContentStreamCount--;
+                    }
                     super.close();
                 }
             };
+            openEntityContentStreamCount++;
             return inputStream;
         }
 
         @Override public void writeTo(OutputStream outputStream) throws IOException {
-            outputStream.write(responseBody);
+            responseBody.writeTo(outputStream);
         }
 
         @Override public void consumeContent() throws IOException {
@@ -246,4 +289,109 @@ public class TestHttpResponse extends HttpResponseStub {
             return "TestStatusLine[" + getReasonPhrase() + "]";
         }
     }
+
+    /**
+     * Generates the body of a response, afresh each time it is read.
+     */
+    public interface ContentGenerator {
+        InputStream generateContent() throws IOException;
+    }
+
+    private interface Body {
+        /**
+         * @return the length of the body in bytes, or -1 if it isn't known in advance
+         */
+        long getLength();
+
+        InputStream open() throws IOException;
+
+        void writeTo(OutputStream outputStream) throws IOException;
+    }
+
+    private static class ByteArrayBody implements Body {
+        private final byte[] bytes;
+
+        ByteArrayBody(byte[] bytes) {
+            this.bytes = bytes;
+        }
+
+        @Override public long getLength() {
+            return bytes.length;
+        }
+
+        @Override public InputStream open() {
+            return new ByteArrayInputStream(bytes);
+        }
+
+        @Override public void writeTo(OutputStream outputStream) throws IOException {
+            outputStream.write(bytes);
+        }
+    }
+
+    private static class ByteBufferBody implements Body {
+        private final ByteBuffer buffer;
+
+        ByteBufferBody(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override public long getLength() {
+            return buffer.remaining();
+        }
+
+        @Override public InputStream open() {
+            return new ByteBufferInputStream(buffer.duplicate());
+        }
+
+        @Override public void writeTo(OutputStream outputStream) throws IOException {
+            ByteBufferInputStream.writeTo(buffer, outputStream);
+        }
+    }
+
+    private static abstract class StreamBody implements Body {
+        @Override public void writeTo(OutputStream outputStream) throws IOException {
+            InputStream content = open();
+            try {
+                byte[] buffer = new byte[8192];
+                int count;
+                while ((count = content.read(buffer)) != -1) {
+                    outputStream.write(buffer, 0, count);
+                }
+            } finally {
+                content.close();
+            }
+        }
+    }
+
+    private static class FileBody extends StreamBody {
+        private final File file;
+
+        FileBody(File file) {
+            this.file = file;
+        }
+
+        @Override public long getLength() {
+            return file.length();
+        }
+
+        @Override public InputStream open() throws IOException {
+            return new FileInputStream(file);
+        }
+    }
+
+    private static class GeneratedBody extends StreamBody {
+        private final ContentGenerator contentGenerator;
+
+        GeneratedBody(ContentGenerator contentGenerator) {
+            this.contentGenerator = contentGenerator;
+        }
+
+        @Override public long getLength() {
+            return -1;
+        }
+
+        @Override public InputStream open() throws IOException {
+            return contentGenerator.generateContent();
+        }
+    }
 }
@@ -0,0 +1,86 @@
+package com.xtremelabs.robolectric.util;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs background tasks on a bounded set of worker threads, while a {@link Scheduler} and its virtual clock still
+ * decide when each one starts.
+ * <p/>
+ * When the scheduler reaches a task it hands the task to a worker, and posts a runnable that waits for the task and
+ * then runs its completion callback on the scheduler's thread. Tasks the scheduler reaches at the same time therefore
+ * run concurrently, while their callbacks run one at a time, in the order the tasks were posted.
+ * <p/>
+ * Workers are daemon threads that stop after a second without work, so an abandoned pool doesn't outlive its test.
+ */
+public class BackgroundWorkerPool {
+    private final ThreadPoolExecutor executor;
+
+    public BackgroundWorkerPool(int threadCount) {
+        if (threadCount < 1) {
+            throw new IllegalArgumentException("need at least one worker thread, not " + threadCount);
+        }
+        executor = new ThreadPoolExecutor(threadCount, threadCount, 1, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(), new WorkerThreadFactory());
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+    public int getThreadCount() {
+        return executor.getMaximumPoolSize();
+    }
+
+    /**
+     * Starts {@code task} on a worker thread when {@code scheduler} reaches it, then runs {@code whenDone}, if it
+     * isn't null, on the scheduler's thread once the task has finished or been cancelled.
+     */
+    public void post(final Scheduler scheduler, final FutureTask<?> task, final Runnable whenDone) {
+        scheduler.post(new Runnable() {
+            @Override
+            public void run() {
+                executor.execute(task);
+                scheduler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        awaitCompletion(task);
+                        if (whenDone != null) {
+                            whenDone.run();
+                        }
+                    }
+                });
+            }
+        });
+    }
+
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    private static void awaitCompletion(FutureTask<?> task) {
+        try {
+            task.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            // the task's owner sees this through the task itself
+        } catch (CancellationException e) {
+            // likewise
+        }
+    }
+
+    private static class WorkerThreadFactory implements ThreadFactory {
+        private final AtomicInteger threadCount = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "robolectric-background-worker-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
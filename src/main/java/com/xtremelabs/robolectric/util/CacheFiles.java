@@ -0,0 +1,64 @@
+package com.xtremelabs.robolectric.util;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Naming and writing of the files Robolectric keeps between runs, which several JVMs may be reading and writing at once.
+ */
+public class CacheFiles {
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    public static String toHex(byte[] bytes) {
+        char[] chars = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            chars[i * 2] = HEX_DIGITS[(bytes[i] >> 4) & 0xf];
+            chars[i * 2 + 1] = HEX_DIGITS[bytes[i] & 0xf];
+        }
+        return new String(chars);
+    }
+
+    /**
+     * Writes {@code bytes} to a temporary file beside {@code file} and renames it into place, so that readers never
+     * see a partly written file. Failures are ignored, since the caller can always produce the bytes again.
+     *
+     * @param replace whether an existing {@code file} should be replaced, or may be kept because it can only hold
+     *                the same bytes
+     */
+    public static void writeAtomically(File file, byte[] bytes, boolean replace) {
+        File directory = file.getParentFile();
+        if (!directory.isDirectory() && !directory.mkdirs() && !directory.isDirectory()) {
+            return;
+        }
+
+        File tempFile = null;
+        OutputStream outputStream = null;
+        try {
+            tempFile = File.createTempFile(file.getName(), ".tmp", directory);
+            outputStream = new FileOutputStream(tempFile);
+            outputStream.write(bytes);
+            outputStream.close();
+            outputStream = null;
+
+            if (replace) {
+                file.delete();
+            }
+            if (!tempFile.renameTo(file)) {
+                tempFile.delete();
+            }
+        } catch (IOException e) {
+            if (tempFile != null) {
+                tempFile.delete();
+            }
+        } finally {
+            if (outputStream != null) {
+                try {
+                    outputStream.close();
+                } catch (IOException ignore) {
+                }
+            }
+        }
+    }
+}
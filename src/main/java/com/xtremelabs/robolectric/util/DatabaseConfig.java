@@ -1,5 +1,6 @@
 package com.xtremelabs.robolectric.util;
 
+import java.io.File;
 import java.lang.annotation.ElementType;
 import java.lang.annotation.Inherited;
 import java.lang.annotation.Retention;
@@ -8,15 +9,27 @@ import java.lang.annotation.Target;
 import java.sql.Connection;
 import java.sql.DriverManager;
 import java.sql.SQLException;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 
 public class DatabaseConfig {
+    private static final int MAX_SCRUBBED_SQL = 1000;
+
     private static DatabaseMap dbMap = null;
     private static boolean isLoaded = false;
+    private static final Map<String, String> scrubbedSql = new LinkedHashMap<String, String>(16, 0.75f, true) {
+        @Override protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+            return size() > MAX_SCRUBBED_SQL;
+        }
+    };
 
     public static void setDatabaseMap(DatabaseMap map) {
         dbMap = map;
         isLoaded = false; //make sure to reset isLoaded or mixing databases in a test suite will fail.
+        synchronized (scrubbedSql) {
+            scrubbedSql.clear();
+        }
     }
 
     public static DatabaseMap getDatabaseMap() {
@@ -73,14 +86,25 @@ public class DatabaseConfig {
     }
 
     /**
-     * Makes any edits necessary in the SQL string for it to be compatible with the database in use.
+     * Makes any edits necessary in the SQL string for it to be compatible with the database in use. The most
+     * recently used results are remembered, since the same statements tend to be run over and over.
      *
      * @return
      * @throws SQLException
      */
     public static String getScrubSQL(String sql) throws SQLException {
         if (isMapNull()) throw new NullDatabaseMapException("No database map set!");
-        return dbMap.getScrubSQL(sql);
+        synchronized (scrubbedSql) {
+            String scrubbed = scrubbedSql.get(sql);
+            if (scrubbed != null) {
+                return scrubbed;
+            }
+        }
+        String scrubbed = dbMap.getScrubSQL(sql);
+        synchronized (scrubbedSql) {
+            scrubbedSql.put(sql, scrubbed);
+        }
+        return scrubbed;
     }
 
     public static String getSelectLastInsertIdentity() {
@@ -93,6 +117,29 @@ public class DatabaseConfig {
         return dbMap.getResultSetType();
     }
 
+    /**
+     * Saves the schema and contents of the database on {@code connection} to {@code file}.
+     */
+    public static void saveSnapshot(Connection connection, File file) throws SQLException {
+        getSnapshotDatabaseMap().saveSnapshot(connection, file);
+    }
+
+    /**
+     * Replaces the schema and contents of the database on {@code connection} with a snapshot saved by
+     * {@link #saveSnapshot(Connection, File)}.
+     */
+    public static void restoreSnapshot(Connection connection, File file) throws SQLException {
+        getSnapshotDatabaseMap().restoreSnapshot(connection, file);
+    }
+
+    private static SnapshotDatabaseMap getSnapshotDatabaseMap() {
+        if (isMapNull()) throw new NullDatabaseMapException("No database map set!");
+        if (!(dbMap instanceof SnapshotDatabaseMap)) {
+            throw new UnsupportedOperationException(dbMap.getClass().getName() + " doesn't support snapshots");
+        }
+        return (SnapshotDatabaseMap) dbMap;
+    }
+
     public interface DatabaseMap {
         String getDriverClassName();
 
@@ -105,6 +152,15 @@ public class DatabaseConfig {
         int getResultSetType();
     }
 
+    /**
+     * A {@link DatabaseMap} whose databases can be saved to a file and copied into another database.
+     */
+    public interface SnapshotDatabaseMap extends DatabaseMap {
+        void saveSnapshot(Connection connection, File file) throws SQLException;
+
+        void restoreSnapshot(Connection connection, File file) throws SQLException;
+    }
+
     public static class NullDatabaseMapException extends RuntimeException {
         private static final long serialVersionUID = -4580960157495617424L;
 
@@ -1,12 +1,15 @@
 package com.xtremelabs.robolectric.util;
 
+import java.io.File;
+import java.sql.Connection;
 import java.sql.Driver;
 import java.sql.DriverManager;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Statement;
 
 
-public class H2Map implements DatabaseConfig.DatabaseMap {
+public class H2Map implements DatabaseConfig.SnapshotDatabaseMap {
 
     @Override
     public String getDriverClassName() {
@@ -72,4 +75,24 @@ public class H2Map implements DatabaseConfig.DatabaseMap {
         return ResultSet.TYPE_SCROLL_INSENSITIVE;
     }
 
+    @Override
+    public void saveSnapshot(Connection connection, File file) throws SQLException {
+        execute(connection, "SCRIPT TO '" + file.getAbsolutePath().replace("'", "''") + "'");
+    }
+
+    @Override
+    public void restoreSnapshot(Connection connection, File file) throws SQLException {
+        execute(connection, "DROP ALL OBJECTS");
+        execute(connection, "RUNSCRIPT FROM '" + file.getAbsolutePath().replace("'", "''") + "'");
+    }
+
+    private void execute(Connection connection, String sql) throws SQLException {
+        Statement statement = connection.createStatement();
+        try {
+            statement.execute(sql);
+        } finally {
+            statement.close();
+        }
+    }
+
 }
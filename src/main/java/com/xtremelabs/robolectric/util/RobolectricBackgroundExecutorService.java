@@ -54,13 +54,7 @@ public class RobolectricBackgroundExecutorService implements ExecutorService {
     }
 
     private <T> Future<T> schedule(final FutureTask<T> futureTask) {
-        Robolectric.getShadowApplication().getBackgroundScheduler().post(new Runnable() {
-            @Override
-            public void run() {
-                futureTask.run();
-            }
-        });
-
+        Robolectric.getShadowApplication().postBackgroundTask(futureTask, null);
         return futureTask;
     }
 
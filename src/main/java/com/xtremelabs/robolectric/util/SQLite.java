@@ -111,12 +111,29 @@ public class SQLite {
      * @return where clause
      */
     public static String buildWhereClause(String selection, String[] selectionArgs) throws SQLiteException {
+        checkSelectionArgs(selection, selectionArgs);
+
         String whereClause = selection;
+        if (selectionArgs != null) {
+            for (String selectionArg : selectionArgs) {
+                whereClause = whereClause.replaceFirst("\\?", "'" + selectionArg + "'");
+            }
+        }
+        return whereClause;
+    }
+
+    /**
+     * Check that there is a non-null arg for each '?' in a WHERE clause, so they can be bound to it.
+     *
+     * @param selection     SQL where clause fragment
+     * @param selectionArgs Array of substitutions for args in selection
+     */
+    public static void checkSelectionArgs(String selection, String[] selectionArgs) throws SQLiteException {
         int argsNeeded = 0;
         int args = 0;
 
-        for (char c : selection.toCharArray()) {
-            if (c == '?') argsNeeded++;
+        for (int i = 0; i < selection.length(); i++) {
+            if (selection.charAt(i) == '?') argsNeeded++;
         }
         if (selectionArgs != null) {
             for (int x = 0; x < selectionArgs.length; x++) {
@@ -125,14 +142,11 @@ public class SQLite {
                 } else {
                     args++;
                 }
-                whereClause = whereClause.replaceFirst("\\?", "'" + selectionArgs[x] + "'");
             }
         }
         if (argsNeeded != args) {
             throw new SQLiteException("bind or column index out of range: count of selectionArgs does not match count of (?) placeholders for given sql statement!");
         }
-
-        return whereClause;
     }
 
    /**
@@ -1,8 +1,12 @@
 package com.xtremelabs.robolectric.util;
 
+import java.io.File;
+import java.sql.Connection;
 import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
 
-public class SQLiteMap implements DatabaseConfig.DatabaseMap {
+public class SQLiteMap implements DatabaseConfig.SnapshotDatabaseMap {
 
     public String getDriverClassName() {
         return "org.sqlite.JDBC";
@@ -23,4 +27,24 @@ public class SQLiteMap implements DatabaseConfig.DatabaseMap {
     public int getResultSetType() {
         return ResultSet.TYPE_FORWARD_ONLY;
     }
+
+    /**
+     * Uses the driver's "backup to" extension, which copies the database page by page with SQLite's backup API.
+     */
+    public void saveSnapshot(Connection connection, File file) throws SQLException {
+        execute(connection, "backup to \"" + file.getAbsolutePath() + "\"");
+    }
+
+    public void restoreSnapshot(Connection connection, File file) throws SQLException {
+        execute(connection, "restore from \"" + file.getAbsolutePath() + "\"");
+    }
+
+    private void execute(Connection connection, String sql) throws SQLException {
+        Statement statement = connection.createStatement();
+        try {
+            statement.executeUpdate(sql);
+        } finally {
+            statement.close();
+        }
+    }
 }
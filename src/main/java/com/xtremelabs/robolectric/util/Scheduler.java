@@ -1,18 +1,38 @@
 package com.xtremelabs.robolectric.util;
 
 import java.util.ArrayList;
-import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.List;
-import java.util.ListIterator;
-
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs posted runnables in order of their scheduled time, and in the order they were posted when those are equal.
+ * <p/>
+ * Runnables are kept in a binary heap, so posting and running them take logarithmic time however many are queued.
+ * {@link #remove(Runnable)} finds a runnable's entries through an index and only marks them removed; they're skipped
+ * when they reach the head of the queue, or dropped when they come to outnumber the live ones.
+ * <p/>
+ * Runnables posted from other threads are queued without taking the scheduler's lock, so worker threads can post
+ * while the scheduler's own thread waits for them inside a runnable. They join the heap at the scheduler's next
+ * operation, as does any time those threads {@link #elapse(long) elapse}.
+ */
 public class Scheduler {
-    private List<PostedRunnable> postedRunnables = new ArrayList<PostedRunnable>();
-    private long currentTime = 0;
+    private PriorityQueue<PostedRunnable> postedRunnables = new PriorityQueue<PostedRunnable>();
+    private final Map<Runnable, List<PostedRunnable>> postedRunnablesByRunnable = new IdentityHashMap<Runnable, List<PostedRunnable>>();
+    private final ConcurrentLinkedQueue<PostedRunnable> postedFromOtherThreads = new ConcurrentLinkedQueue<PostedRunnable>();
+    private int removedRunnableCount = 0;
+    private final AtomicLong nextSequence = new AtomicLong(0);
+    private final AtomicLong nextFrontOfQueueSequence = new AtomicLong(-1);
+    private final AtomicLong pendingElapsedTime = new AtomicLong(0);
+    private volatile long currentTime = 0;
     private boolean paused = false;
     private Thread associatedThread = Thread.currentThread();
     private boolean isConstantlyIdling = false;
 
-    public synchronized long getCurrentTime() {
+    public long getCurrentTime() {
         return currentTime;
     }
 
@@ -29,34 +49,50 @@ public class Scheduler {
         return paused;
     }
 
-    public synchronized void postDelayed(Runnable runnable, long delayMillis) {
-        if ((!isConstantlyIdling && (paused || delayMillis > 0)) || Thread.currentThread() != associatedThread) {
-	        postedRunnables.add(new PostedRunnable(runnable, currentTime + delayMillis));
-	        Collections.sort(postedRunnables);
-        } else {
-            runnable.run();
+    public void postDelayed(Runnable runnable, long delayMillis) {
+        if (Thread.currentThread() != associatedThread) {
+            postedFromOtherThreads.add(new PostedRunnable(runnable, currentTime + delayMillis, nextSequence.getAndIncrement()));
+            return;
+        }
+        synchronized (this) {
+            if (!isConstantlyIdling && (paused || delayMillis > 0)) {
+                enqueue(new PostedRunnable(runnable, currentTime + delayMillis, nextSequence.getAndIncrement()));
+            } else {
+                runnable.run();
+            }
         }
     }
 
-    public synchronized void post(Runnable runnable) {
+    public void post(Runnable runnable) {
         postDelayed(runnable, 0);
     }
 
-    public synchronized void postAtFrontOfQueue(Runnable runnable) {
-        if (paused || Thread.currentThread() != associatedThread) {
-        	postedRunnables.add(0, new PostedRunnable(runnable, currentTime));
-        } else {
-            runnable.run();
+    public void postAtFrontOfQueue(Runnable runnable) {
+        if (Thread.currentThread() != associatedThread) {
+            postedFromOtherThreads.add(new PostedRunnable(runnable, currentTime, nextFrontOfQueueSequence.getAndDecrement()));
+            return;
+        }
+        synchronized (this) {
+            if (paused) {
+                enqueue(new PostedRunnable(runnable, currentTime, nextFrontOfQueueSequence.getAndDecrement()));
+            } else {
+                runnable.run();
+            }
         }
     }
 
     public synchronized void remove(Runnable runnable) {
-        ListIterator<PostedRunnable> iterator = postedRunnables.listIterator();
-        while (iterator.hasNext()) {
-            PostedRunnable next = iterator.next();
-            if (next.runnable == runnable) {
-                iterator.remove();
-            }
+        acceptPostsFromOtherThreads();
+        List<PostedRunnable> removed = postedRunnablesByRunnable.remove(runnable);
+        if (removed == null) {
+            return;
+        }
+        for (PostedRunnable postedRunnable : removed) {
+            postedRunnable.removed = true;
+        }
+        removedRunnableCount += removed.size();
+        if (removedRunnableCount > postedRunnables.size() / 2) {
+            purgeRemovedRunnables();
         }
     }
 
@@ -65,7 +101,13 @@ public class Scheduler {
             return false;
         }
 
-        return advanceTo(postedRunnables.get(postedRunnables.size() - 1).scheduledTime);
+        long lastScheduledTime = Long.MIN_VALUE;
+        for (PostedRunnable postedRunnable : postedRunnables) {
+            if (!postedRunnable.removed) {
+                lastScheduledTime = Math.max(lastScheduledTime, postedRunnable.scheduledTime);
+            }
+        }
+        return advanceTo(lastScheduledTime);
     }
 
     public synchronized boolean advanceToNextPostedRunnable() {
@@ -73,7 +115,7 @@ public class Scheduler {
             return false;
         }
 
-        return advanceTo(postedRunnables.get(0).scheduledTime);
+        return advanceTo(peek().scheduledTime);
     }
 
     public synchronized boolean advanceBy(long intervalMs) {
@@ -91,18 +133,41 @@ public class Scheduler {
             runOneTask();
             ++runCount;
         }
-        currentTime = endingTime;
+        // a runnable may have let more time than this elapse
+        currentTime = Math.max(currentTime, endingTime);
 
         return runCount > 0;
     }
 
+    /**
+     * Moves the clock forward by {@code intervalMs} without running anything, as though the scheduler's thread had
+     * spent that long blocked. Runnables that fall due are left for the next {@code advance} or {@link #runOneTask()},
+     * which runs them at the later time.
+     * <p/>
+     * Called from any other thread, the time is recorded rather than applied, since the scheduler's thread may itself
+     * be waiting for the caller; it's added to the clock at the scheduler's next operation.
+     */
+    public void elapse(long intervalMs) {
+        if (intervalMs <= 0) {
+            return;
+        }
+        if (Thread.currentThread() != associatedThread) {
+            pendingElapsedTime.addAndGet(intervalMs);
+            return;
+        }
+        synchronized (this) {
+            acceptPostsFromOtherThreads();
+            currentTime += intervalMs;
+        }
+    }
+
     public synchronized boolean runOneTask() {
         if (enqueuedTaskCount() < 1) {
             return false;
         }
 
-        PostedRunnable postedRunnable = postedRunnables.remove(0);
-        currentTime = postedRunnable.scheduledTime;
+        PostedRunnable postedRunnable = dequeue();
+        currentTime = Math.max(currentTime, postedRunnable.scheduledTime);
         postedRunnable.run();
         return true;
     }
@@ -113,8 +178,8 @@ public class Scheduler {
         }
 
         while (howMany > 0) {
-            PostedRunnable postedRunnable = postedRunnables.remove(0);
-            currentTime = postedRunnable.scheduledTime;
+            PostedRunnable postedRunnable = dequeue();
+            currentTime = Math.max(currentTime, postedRunnable.scheduledTime);
             postedRunnable.run();
             howMany--;
         }
@@ -122,7 +187,8 @@ public class Scheduler {
     }
 
     public synchronized int enqueuedTaskCount() {
-        return postedRunnables.size();
+        acceptPostsFromOtherThreads();
+        return postedRunnables.size() - removedRunnableCount;
     }
 
     public synchronized boolean areAnyRunnable() {
@@ -130,13 +196,16 @@ public class Scheduler {
     }
 
     public synchronized void reset() {
+        postedFromOtherThreads.clear();
         postedRunnables.clear();
+        postedRunnablesByRunnable.clear();
+        removedRunnableCount = 0;
         paused = false;
         isConstantlyIdling = false;
     }
 
     public synchronized int size() {
-        return postedRunnables.size();
+        return enqueuedTaskCount();
     }
 
     public void idleConstantly(boolean shouldIdleConstantly) {
@@ -146,15 +215,24 @@ public class Scheduler {
     class PostedRunnable implements Comparable<PostedRunnable> {
         Runnable runnable;
         long scheduledTime;
+        long sequence;
+        boolean removed;
 
-        PostedRunnable(Runnable runnable, long scheduledTime) {
+        PostedRunnable(Runnable runnable, long scheduledTime, long sequence) {
             this.runnable = runnable;
             this.scheduledTime = scheduledTime;
+            this.sequence = sequence;
         }
 
         @Override
         public int compareTo(PostedRunnable postedRunnable) {
-            return (int) (scheduledTime - postedRunnable.scheduledTime);
+            if (scheduledTime != postedRunnable.scheduledTime) {
+                return scheduledTime < postedRunnable.scheduledTime ? -1 : 1;
+            }
+            if (sequence != postedRunnable.sequence) {
+                return sequence < postedRunnable.sequence ? -1 : 1;
+            }
+            return 0;
         }
 
         public void run() {
@@ -163,6 +241,61 @@ public class Scheduler {
     }
 
     private boolean nextTaskIsScheduledBefore(long endingTime) {
-        return enqueuedTaskCount() > 0 && postedRunnables.get(0).scheduledTime <= endingTime;
+        return enqueuedTaskCount() > 0 && peek().scheduledTime <= endingTime;
+    }
+
+    private void acceptPostsFromOtherThreads() {
+        if (pendingElapsedTime.get() != 0) {
+            currentTime += pendingElapsedTime.getAndSet(0);
+        }
+        PostedRunnable postedRunnable;
+        while ((postedRunnable = postedFromOtherThreads.poll()) != null) {
+            enqueue(postedRunnable);
+        }
+    }
+
+    private void enqueue(PostedRunnable postedRunnable) {
+        postedRunnables.add(postedRunnable);
+        List<PostedRunnable> entries = postedRunnablesByRunnable.get(postedRunnable.runnable);
+        if (entries == null) {
+            entries = new ArrayList<PostedRunnable>(1);
+            postedRunnablesByRunnable.put(postedRunnable.runnable, entries);
+        }
+        entries.add(postedRunnable);
+    }
+
+    /**
+     * @return the next runnable that hasn't been removed; callers check {@link #enqueuedTaskCount()} first
+     */
+    private PostedRunnable peek() {
+        PostedRunnable head = postedRunnables.peek();
+        while (head.removed) {
+            postedRunnables.poll();
+            removedRunnableCount--;
+            head = postedRunnables.peek();
+        }
+        return head;
+    }
+
+    private PostedRunnable dequeue() {
+        PostedRunnable postedRunnable = peek();
+        postedRunnables.poll();
+        List<PostedRunnable> entries = postedRunnablesByRunnable.get(postedRunnable.runnable);
+        entries.remove(postedRunnable);
+        if (entries.isEmpty()) {
+            postedRunnablesByRunnable.remove(postedRunnable.runnable);
+        }
+        return postedRunnable;
+    }
+
+    private void purgeRemovedRunnables() {
+        PriorityQueue<PostedRunnable> live = new PriorityQueue<PostedRunnable>(Math.max(1, enqueuedTaskCount()));
+        for (PostedRunnable postedRunnable : postedRunnables) {
+            if (!postedRunnable.removed) {
+                live.add(postedRunnable);
+            }
+        }
+        postedRunnables = live;
+        removedRunnableCount = 0;
     }
 }
@@ -0,0 +1,84 @@
+package com.xtremelabs.robolectric;
+
+import android.app.Activity;
+import android.widget.TextView;
+import org.junit.Test;
+import org.junit.runner.Description;
+import org.junit.runner.JUnitCore;
+import org.junit.runner.Result;
+import org.junit.runner.RunWith;
+import org.junit.runner.notification.Failure;
+import org.junit.runner.notification.RunListener;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import static com.xtremelabs.robolectric.Robolectric.shadowOf;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+public class ParallelTestRunnerTest {
+    @Test
+    public void shouldRunTestMethodsOnSeveralThreads() throws Exception {
+        String oldThreads = System.getProperty("robolectric.parallelThreads");
+        System.setProperty("robolectric.parallelThreads", "2");
+        // the tests run on copies of their classes defined per thread, so the threads are told apart by the listener
+        final Set<String> threadNames = Collections.synchronizedSet(new HashSet<String>());
+        JUnitCore junit = new JUnitCore();
+        junit.addListener(new RunListener() {
+            @Override public void testStarted(Description description) {
+                threadNames.add(Thread.currentThread().getName());
+            }
+        });
+        Result result;
+        try {
+            result = junit.run(ParallelTests.class);
+        } finally {
+            if (oldThreads == null) {
+                System.clearProperty("robolectric.parallelThreads");
+            } else {
+                System.setProperty("robolectric.parallelThreads", oldThreads);
+            }
+        }
+
+        for (Failure failure : result.getFailures()) {
+            throw new AssertionError(failure.getTrace());
+        }
+        assertEquals(4, result.getRunCount());
+        assertTrue(threadNames.size() > 1);
+        for (String threadName : threadNames) {
+            assertTrue(threadName, threadName.startsWith("robolectric-test-"));
+        }
+    }
+
+    @RunWith(WithTestDefaultsRunner.class)
+    public static class ParallelTests {
+        @Test public void first() throws Exception {
+            useShadows();
+        }
+
+        @Test public void second() throws Exception {
+            useShadows();
+        }
+
+        @Test public void third() throws Exception {
+            useShadows();
+        }
+
+        @Test public void fourth() throws Exception {
+            useShadows();
+        }
+
+        private void useShadows() throws Exception {
+            assertNotNull(Robolectric.application);
+            TextView textView = new TextView(new Activity());
+            textView.setText("text");
+            assertEquals("text", shadowOf(textView).innerText());
+
+            // keeps this thread busy long enough for the other one to take a test too
+            Thread.sleep(100);
+        }
+    }
+}
@@ -53,15 +53,14 @@ public class AndroidTranslatorUnitTest {
         AndroidTranslator translator = new AndroidTranslator(handler, cache);
 
         translator.onLoad(classPool, "java.lang.Object");
-        verify(cache).isWriting();
-        verifyNoMoreInteractions(cache);
+        verifyZeroInteractions(cache);
         verifyZeroInteractions(handler);
     }
 
-    @Test(expected = IllegalStateException.class)
-    public void shouldThrowIllegalStateIfClassCacheIsWriting() throws Exception {
-        ClassCache cache = mock(ClassCache.class);
-        when(cache.isWriting()).thenReturn(true);
-        new AndroidTranslator(null, cache).onLoad(classPool, "java.lang.Object");
+    @Test
+    public void instrumentationConfigShouldChangeWhenCustomShadowClassIsAdded() throws Exception {
+        String before = androidTranslator.getInstrumentationConfig();
+        androidTranslator.addCustomShadowClass("my.custom.Klazz");
+        assertFalse(before.equals(androidTranslator.getInstrumentationConfig()));
     }
 }
@@ -1,124 +1,143 @@
 package com.xtremelabs.robolectric.bytecode;
 
-import org.junit.Assert;
+import org.junit.After;
+import org.junit.Before;
 import org.junit.Test;
 
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
 public class ClassCacheTest {
+    private static final byte[] ORIGINAL_BYTES = {1, 2, 3};
+    private static final byte[] INSTRUMENTED_BYTES = {4, 5, 6, 7};
 
+    private File cacheDirectory;
+
+    @Before
+    public void setUp() throws Exception {
+        cacheDirectory = File.createTempFile("class-cache", "");
+        cacheDirectory.delete();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        delete(cacheDirectory);
+    }
 
     @Test
-    public void fixForCorberturaAndSonarCodeCoverage() throws InterruptedException {
-        final ClassCache classCache = new ClassCache("target/test.txt", AndroidTranslator.CACHE_VERSION);
-        
-        // Substitute this LOCK with your monitor (could be you object you are
-        // testing etc.)
-        Thread locker = new Thread() {
-            @Override
-            public void run() {
-                synchronized (classCache) {
-                    try {
-                        Thread.sleep(Long.MAX_VALUE);
-                    } catch (InterruptedException e) {
-                        return;
-                    }
-                }
-            }
-        };
-
-        locker.start();
-
-        TestThreadIsWriting attempt = new TestThreadIsWriting(classCache);
-        
-        try {
-            int timeToWait = 500;
-            locker.join(timeToWait, 0);
-
-            attempt.start();
-            long before = System.currentTimeMillis();
-            attempt.join(timeToWait, 0);
-            long after = System.currentTimeMillis();
-            Assert.assertEquals(false, attempt.ready);
-            Assert.assertEquals(1, (after - before) / timeToWait);
-            locker.interrupt();
-        } finally {
-            
-        }
+    public void shouldReturnNullForClassesNotYetCached() throws Exception {
+        ClassCache classCache = new ClassCache(cacheDirectory, AndroidTranslator.CACHE_VERSION);
+        assertNull(classCache.getClassBytesFor("some.Class", ORIGINAL_BYTES, "config"));
     }
 
     @Test
-    public void fixForCorberturaAndSonarCodeCoverageTheOtherWayAround() throws InterruptedException {
-        final ClassCache classCache = new ClassCache("target/test.txt", AndroidTranslator.CACHE_VERSION);
-        
-        // Substitute this LOCK with your monitor (could be you object you are
-        // testing etc.)
-        Thread locker = new Thread() {
-            @Override
-            public void run() {
-                synchronized (classCache) {
-                    try {
-                        Thread.sleep(Long.MAX_VALUE);
-                    } catch (InterruptedException e) {
-                        return;
-                    }
-                }
-            }
-        };
-
-        locker.start();
-
-        TestThreadSaveAllClassesToCache attempt = new TestThreadSaveAllClassesToCache(classCache);
-        
-        try {
-            int timeToWait = 500;
-            locker.join(timeToWait, 0);
-
-            attempt.start();
-            long before = System.currentTimeMillis();
-            attempt.join(timeToWait, 0);
-            long after = System.currentTimeMillis();
-            Assert.assertEquals(false, attempt.ready);
-            Assert.assertEquals(1, (after - before) / timeToWait);
-            locker.interrupt();
-                        
-        } finally {
-            
-        }
+    public void shouldWriteEntriesAsClassesAreAddedAndReadThemFromAnotherCache() throws Exception {
+        ClassCache classCache = new ClassCache(cacheDirectory, AndroidTranslator.CACHE_VERSION);
+        classCache.getClassBytesFor("some.Class", ORIGINAL_BYTES, "config");
+        classCache.addClass("some.Class", INSTRUMENTED_BYTES);
+
+        ClassCache otherClassCache = new ClassCache(cacheDirectory, AndroidTranslator.CACHE_VERSION);
+        assertArrayEquals(INSTRUMENTED_BYTES, otherClassCache.getClassBytesFor("some.Class", ORIGINAL_BYTES, "config"));
     }
 
-    class TestThreadIsWriting extends  Thread {
-        public boolean ready = false;
-        final ClassCache classCache;
-        
-        
-        public TestThreadIsWriting(ClassCache classCache) {
-            super();
-            this.classCache = classCache;
-        }
+    @Test
+    public void shouldMissWhenOriginalBytesChange() throws Exception {
+        ClassCache classCache = new ClassCache(cacheDirectory, AndroidTranslator.CACHE_VERSION);
+        classCache.getClassBytesFor("some.Class", ORIGINAL_BYTES, "config");
+        classCache.addClass("some.Class", INSTRUMENTED_BYTES);
 
+        assertNull(classCache.getClassBytesFor("some.Class", new byte[]{1, 2, 4}, "config"));
+    }
 
-        @Override
-        public void run() {
-            classCache.isWriting();
-            ready = true;
-        }
-    };
-
-    class TestThreadSaveAllClassesToCache extends  Thread {
-        public boolean ready = false;
-        final ClassCache classCache;
-        
-        
-        public TestThreadSaveAllClassesToCache(ClassCache classCache) {
-            super();
-            this.classCache = classCache;
-        }
+    @Test
+    public void shouldMissWhenTranslatorVersionOrInstrumentationConfigChange() throws Exception {
+        ClassCache classCache = new ClassCache(cacheDirectory, AndroidTranslator.CACHE_VERSION);
+        classCache.getClassBytesFor("some.Class", ORIGINAL_BYTES, "config");
+        classCache.addClass("some.Class", INSTRUMENTED_BYTES);
+
+        assertNull(new ClassCache(cacheDirectory, AndroidTranslator.CACHE_VERSION + 1).getClassBytesFor("some.Class", ORIGINAL_BYTES, "config"));
+        assertNull(classCache.getClassBytesFor("some.Class", ORIGINAL_BYTES, "other config"));
+    }
+
+    @Test
+    public void shouldMissWhenAnInstrumentedSuperclassChanges() throws Exception {
+        ClassCache classCache = new ClassCache(cacheDirectory, AndroidTranslator.CACHE_VERSION);
+        byte[] classDigest = ClassCache.digest(ORIGINAL_BYTES);
+        classCache.getClassBytesFor("some.Class", Arrays.asList(classDigest, ClassCache.digest(new byte[]{9})), "config");
+        classCache.addClass("some.Class", INSTRUMENTED_BYTES);
+
+        assertArrayEquals(INSTRUMENTED_BYTES, classCache.getClassBytesFor("some.Class", Arrays.asList(classDigest, ClassCache.digest(new byte[]{9})), "config"));
+        assertNull(classCache.getClassBytesFor("some.Class", Arrays.asList(classDigest, ClassCache.digest(new byte[]{8})), "config"));
+        assertNull(classCache.getClassBytesFor("some.Class", ORIGINAL_BYTES, "config"));
+    }
+
+    @Test
+    public void shouldPruneEntriesLeftByOlderTranslatorVersionsOrByConfigsNoLongerInUse() throws Exception {
+        ClassCache oldVersionCache = new ClassCache(cacheDirectory, AndroidTranslator.CACHE_VERSION - 1);
+        oldVersionCache.getClassBytesFor("some.Class", ORIGINAL_BYTES, "config");
+        oldVersionCache.addClass("some.Class", INSTRUMENTED_BYTES);
+        ClassCache otherConfigCache = new ClassCache(cacheDirectory, AndroidTranslator.CACHE_VERSION);
+        otherConfigCache.getClassBytesFor("some.Class", ORIGINAL_BYTES, "recent config");
+        otherConfigCache.addClass("some.Class", INSTRUMENTED_BYTES);
+        otherConfigCache.getClassBytesFor("some.Class", ORIGINAL_BYTES, "abandoned config");
+        otherConfigCache.addClass("some.Class", INSTRUMENTED_BYTES);
+        File abandonedEntry = otherConfigCache.fileFor(ClassCache.keyFor(ORIGINAL_BYTES, AndroidTranslator.CACHE_VERSION, "abandoned config"), "abandoned config");
+        abandonedEntry.getParentFile().getParentFile().setLastModified(System.currentTimeMillis() - ClassCache.STALE_GENERATION_MILLIS - 1000);
+        File unversionedEntry = new File(cacheDirectory, "ab/cdef.class");
+        unversionedEntry.getParentFile().mkdirs();
+        unversionedEntry.createNewFile();
+
+        ClassCache classCache = new ClassCache(cacheDirectory, AndroidTranslator.CACHE_VERSION);
+        assertNull(classCache.getClassBytesFor("some.Class", ORIGINAL_BYTES, "config"));
+
+        assertNull(new ClassCache(cacheDirectory, AndroidTranslator.CACHE_VERSION - 1).getClassBytesFor("some.Class", ORIGINAL_BYTES, "config"));
+        assertFalse(abandonedEntry.exists());
+        assertFalse(unversionedEntry.exists());
+        assertArrayEquals(INSTRUMENTED_BYTES, classCache.getClassBytesFor("some.Class", ORIGINAL_BYTES, "recent config"));
+    }
+
+    @Test
+    public void shouldNotWriteClassesThatWereNeverLookedUp() throws Exception {
+        ClassCache classCache = new ClassCache(cacheDirectory, AndroidTranslator.CACHE_VERSION);
+        classCache.addClass("some.Class", INSTRUMENTED_BYTES);
 
+        assertFalse(cacheDirectory.exists());
+    }
 
-        @Override
-        public void run() {
-            classCache.saveAllClassesToCache(null, null);
-            ready = true;
+    @Test
+    public void shouldNotLeaveTemporaryFilesBehind() throws Exception {
+        ClassCache classCache = new ClassCache(cacheDirectory, AndroidTranslator.CACHE_VERSION);
+        classCache.getClassBytesFor("some.Class", ORIGINAL_BYTES, "config");
+        classCache.addClass("some.Class", INSTRUMENTED_BYTES);
+
+        File entry = classCache.fileFor(ClassCache.keyFor(ORIGINAL_BYTES, AndroidTranslator.CACHE_VERSION, "config"), "config");
+        assertTrue(entry.isFile());
+        assertArrayEquals(new String[]{entry.getName()}, entry.getParentFile().list());
+    }
+
+    @Test
+    public void readFullyShouldReadStreamsLongerThanExpected() throws Exception {
+        byte[] bytes = new byte[10000];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) i;
         }
-    };
+        assertArrayEquals(bytes, ClassCache.readFully(new ByteArrayInputStream(bytes), 3));
+        assertArrayEquals(bytes, ClassCache.readFully(new ByteArrayInputStream(bytes), 0));
+    }
 
+    private void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
 }
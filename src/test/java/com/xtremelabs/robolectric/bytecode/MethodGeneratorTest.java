@@ -2,10 +2,14 @@ package com.xtremelabs.robolectric.bytecode;
 
 import javassist.ClassPool;
 import javassist.CtClass;
+import javassist.CtField;
+import javassist.Modifier;
+import javassist.bytecode.AccessFlag;
 import org.junit.Before;
 import org.junit.Test;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
 public class MethodGeneratorTest {
     private ClassPool classPool;
@@ -22,7 +26,7 @@ public class MethodGeneratorTest {
                 ctClass, Type.OBJECT, false, false);
         assertEquals("if (!com.xtremelabs.robolectric.bytecode.RobolectricInternals.shouldCallDirectly(this)) {\n" +
                 "Object x = com.xtremelabs.robolectric.bytecode.RobolectricInternals.methodInvoked(\n" +
-                "  java.lang.String.class, \"substring\", this, new String[] {\"int\"}, new Object[] {com.xtremelabs.robolectric.bytecode.RobolectricInternals.autobox($1)});\n" +
+                "  java.lang.String.class, \"substring\", this, __paramTypes0__, new Object[] {com.xtremelabs.robolectric.bytecode.RobolectricInternals.autobox($1)});\n" +
                 "if (x != null) return ((java.lang.String) x);\n" +
                 "return null;\n" +
                 "}\n", methodBody);
@@ -36,7 +40,7 @@ public class MethodGeneratorTest {
                 ctClass, Type.OBJECT, false, false);
         assertEquals("if (!com.xtremelabs.robolectric.bytecode.RobolectricInternals.shouldCallDirectly(this)) {\n" +
                 "Object x = com.xtremelabs.robolectric.bytecode.RobolectricInternals.methodInvoked(\n" +
-                "  java.lang.String.class, \"length\", this, new String[0], new Object[0]);\n" +
+                "  java.lang.String.class, \"length\", this, null, null);\n" +
                 "if (x != null) return ((java.lang.String) x);\n" +
                 "return null;\n" +
                 "}\n", methodBody);
@@ -50,7 +54,7 @@ public class MethodGeneratorTest {
                 ctClass, Type.VOID, false, false);
         assertEquals("if (!com.xtremelabs.robolectric.bytecode.RobolectricInternals.shouldCallDirectly(this)) {\n" +
                 "com.xtremelabs.robolectric.bytecode.RobolectricInternals.methodInvoked(\n" +
-                "  java.lang.Object.class, \"wait\", this, new String[] {\"long\"}, new Object[] {com.xtremelabs.robolectric.bytecode.RobolectricInternals.autobox($1)});\n" +
+                "  java.lang.Object.class, \"wait\", this, __paramTypes0__, new Object[] {com.xtremelabs.robolectric.bytecode.RobolectricInternals.autobox($1)});\n" +
                 "return;\n" +
                 "}\n", methodBody);
     }
@@ -63,12 +67,30 @@ public class MethodGeneratorTest {
                 ctClass, Type.OBJECT, true, false);
         assertEquals("if (!com.xtremelabs.robolectric.bytecode.RobolectricInternals.shouldCallDirectly(java.lang.String.class)) {\n" +
                 "Object x = com.xtremelabs.robolectric.bytecode.RobolectricInternals.methodInvoked(\n" +
-                "  java.lang.String.class, \"valueOf\", null, new String[] {\"int\"}, new Object[] {com.xtremelabs.robolectric.bytecode.RobolectricInternals.autobox($1)});\n" +
+                "  java.lang.String.class, \"valueOf\", null, __paramTypes0__, new Object[] {com.xtremelabs.robolectric.bytecode.RobolectricInternals.autobox($1)});\n" +
                 "if (x != null) return ((java.lang.String) x);\n" +
                 "return null;\n" +
                 "}\n", methodBody);
     }
 
+    @Test
+    public void shouldShareParamTypesFieldBetweenMethodsWithSameSignature() throws Exception {
+        CtClass ctClass = classPool.get("java.lang.String");
+        MethodGenerator methodGenerator = new MethodGenerator(ctClass);
+        methodGenerator.generateMethodBody(
+                ctClass.getDeclaredMethod("substring", new CtClass[]{CtClass.intType}),
+                ctClass, Type.OBJECT, false, false);
+        String methodBody = methodGenerator.generateMethodBody(
+                ctClass.getDeclaredMethod("charAt", new CtClass[]{CtClass.intType}),
+                ctClass, Type.CHAR, false, false);
+
+        assertTrue(methodBody.contains("this, __paramTypes0__, new Object[]"));
+        CtField paramTypesField = ctClass.getDeclaredField("__paramTypes0__");
+        assertEquals("java.lang.String[]", paramTypesField.getType().getName());
+        assertTrue(Modifier.isPrivate(paramTypesField.getModifiers()));
+        assertTrue((paramTypesField.getFieldInfo().getAccessFlags() & AccessFlag.SYNTHETIC) != 0);
+    }
+
     @Test
     public void shouldGenerateParameterList() throws Exception {
         MethodGenerator methodGenerator = new MethodGenerator(classPool.getCtClass(Object.class.getName()));
@@ -85,7 +107,7 @@ public class MethodGeneratorTest {
                 ctClass, Type.BOOLEAN, false, true);
         assertEquals("if (!com.xtremelabs.robolectric.bytecode.RobolectricInternals.shouldCallDirectly(this)) {\n" +
                 "Object x = com.xtremelabs.robolectric.bytecode.RobolectricInternals.methodInvoked(\n" +
-                "  java.lang.Object.class, \"equals\", this, new String[] {\"java.lang.Object\"}, new Object[] {com.xtremelabs.robolectric.bytecode.RobolectricInternals.autobox($1)});\n" +
+                "  java.lang.Object.class, \"equals\", this, __paramTypes0__, new Object[] {com.xtremelabs.robolectric.bytecode.RobolectricInternals.autobox($1)});\n" +
                 "if (x != null) return ((java.lang.Boolean) x).booleanValue();\n" +
                 "return super.equals($1);}\n", methodBody);
     }
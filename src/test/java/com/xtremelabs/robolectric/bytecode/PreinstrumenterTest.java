@@ -0,0 +1,141 @@
+package com.xtremelabs.robolectric.bytecode;
+
+import com.xtremelabs.robolectric.internal.Instrument;
+import javassist.ClassPool;
+import javassist.CtClass;
+import javassist.LoaderClassPath;
+import javassist.bytecode.ClassFile;
+import javassist.bytecode.FieldInfo;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+public class PreinstrumenterTest {
+    private File tempDirectory;
+    private File inputJar;
+    private File outputJar;
+
+    @Before
+    public void setUp() throws Exception {
+        tempDirectory = File.createTempFile("preinstrumenter", "");
+        tempDirectory.delete();
+        tempDirectory.mkdirs();
+        inputJar = new File(tempDirectory, "input.jar");
+        outputJar = new File(tempDirectory, "output.jar");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        inputJar.delete();
+        outputJar.delete();
+        tempDirectory.delete();
+    }
+
+    @Test
+    public void shouldWriteInstrumentedClassesUnderTheirClassCacheKeys() throws Exception {
+        byte[] fooBytes = classBytesFor(Foo.class);
+        byte[] notInstrumentedBytes = classBytesFor(ShadowInvoker.class);
+        writeJar(inputJar, Foo.class, fooBytes, ShadowInvoker.class, notInstrumentedBytes);
+
+        int count = new Preinstrumenter(Arrays.asList(inputJar), new ArrayList<String>(), 2).writeTo(outputJar);
+        assertEquals(1, count);
+
+        String instrumentationConfig = new AndroidTranslator(null, null).getInstrumentationConfig();
+        ClassCache classCache = new ClassCache(new File(tempDirectory, "cache"), AndroidTranslator.CACHE_VERSION, outputJar);
+        assertNotNull(classCache.getClassBytesFor(Foo.class.getName(), fooBytes, instrumentationConfig));
+        assertNull(classCache.getClassBytesFor(ShadowInvoker.class.getName(), notInstrumentedBytes, instrumentationConfig));
+    }
+
+    @Test
+    public void shouldProduceTheSameBytesAsLazyInstrumentationWhicheverClassLoadsFirst() throws Exception {
+        writeJar(inputJar, Foo.class, classBytesFor(Foo.class), SubFoo.class, classBytesFor(SubFoo.class));
+        new Preinstrumenter(Arrays.asList(inputJar), new ArrayList<String>(), 2).writeTo(outputJar);
+
+        Map<String, byte[]> subclassFirst = instrumentLazily(SubFoo.class.getName(), Foo.class.getName());
+        Map<String, byte[]> superclassFirst = instrumentLazily(Foo.class.getName(), SubFoo.class.getName());
+
+        AndroidTranslator androidTranslator = new AndroidTranslator(null, null);
+        ClassCache classCache = new ClassCache(new File(tempDirectory, "cache"), AndroidTranslator.CACHE_VERSION, outputJar);
+        for (String className : new String[]{Foo.class.getName(), SubFoo.class.getName()}) {
+            CtClass ctClass = newClassPool().get(className);
+            byte[] preinstrumented = classCache.getClassBytesFor(className, androidTranslator.getOriginalDigests(ctClass),
+                    androidTranslator.getInstrumentationConfig());
+            assertArrayEquals(className, subclassFirst.get(className), preinstrumented);
+            assertArrayEquals(className, superclassFirst.get(className), preinstrumented);
+        }
+
+        ClassFile subFooClassFile = new ClassFile(new DataInputStream(new ByteArrayInputStream(subclassFirst.get(SubFoo.class.getName()))));
+        for (Object field : subFooClassFile.getFields()) {
+            assertFalse(((FieldInfo) field).getName().equals(ShadowWrangler.SHADOW_FIELD_NAME));
+        }
+    }
+
+    /**
+     * Does what {@link javassist.Loader} does for each class a {@link RobolectricClassLoader} loads.
+     */
+    private Map<String, byte[]> instrumentLazily(String... classNamesInLoadOrder) throws Exception {
+        ClassPool classPool = newClassPool();
+        AndroidTranslator androidTranslator = new AndroidTranslator(ShadowWrangler.getInstance(), null);
+        Map<String, byte[]> classBytes = new HashMap<String, byte[]>();
+        for (String className : classNamesInLoadOrder) {
+            androidTranslator.onLoad(classPool, className);
+            classBytes.put(className, classPool.get(className).toBytecode());
+        }
+        return classBytes;
+    }
+
+    private ClassPool newClassPool() throws Exception {
+        ClassPool classPool = new ClassPool();
+        classPool.appendClassPath(new LoaderClassPath(getClass().getClassLoader()));
+        classPool.appendClassPath(inputJar.getAbsolutePath());
+        return classPool;
+    }
+
+    private byte[] classBytesFor(Class<?> clazz) throws Exception {
+        InputStream inputStream = clazz.getClassLoader().getResourceAsStream(clazz.getName().replace('.', '/') + ".class");
+        try {
+            return ClassCache.readFully(inputStream, inputStream.available());
+        } finally {
+            inputStream.close();
+        }
+    }
+
+    private void writeJar(File jar, Object... classesAndBytes) throws Exception {
+        JarOutputStream jarOutputStream = new JarOutputStream(new FileOutputStream(jar));
+        try {
+            for (int i = 0; i < classesAndBytes.length; i += 2) {
+                Class<?> clazz = (Class<?>) classesAndBytes[i];
+                jarOutputStream.putNextEntry(new JarEntry(clazz.getName().replace('.', '/') + ".class"));
+                jarOutputStream.write((byte[]) classesAndBytes[i + 1]);
+                jarOutputStream.closeEntry();
+            }
+        } finally {
+            jarOutputStream.close();
+        }
+    }
+
+    @Instrument
+    public static class SubFoo extends Foo {
+        public SubFoo(String s) {
+            super(s);
+        }
+    }
+}
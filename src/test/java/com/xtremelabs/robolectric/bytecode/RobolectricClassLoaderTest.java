@@ -0,0 +1,28 @@
+package com.xtremelabs.robolectric.bytecode;
+
+import com.xtremelabs.robolectric.internal.Implements;
+import com.xtremelabs.robolectric.util.Join;
+import org.junit.Test;
+
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+public class RobolectricClassLoaderTest {
+    @Test
+    public void threadLoadersShouldShareInstrumentedClassesAndDefineTheirOwnCopiesOfTheRest() throws Exception {
+        RobolectricClassLoader sharedLoader = new RobolectricClassLoader(ShadowWrangler.getInstance());
+        RobolectricClassLoader threadLoader = sharedLoader.newThreadLoader();
+        RobolectricClassLoader otherThreadLoader = sharedLoader.newThreadLoader();
+
+        Class<?> instrumentedClass = sharedLoader.loadClass(Foo.class.getName());
+        assertSame(instrumentedClass, threadLoader.loadClass(Foo.class.getName()));
+        assertSame(instrumentedClass, otherThreadLoader.loadClass(Foo.class.getName()));
+        assertSame(sharedLoader.loadClass(ClassCache.class.getName()), threadLoader.loadClass(ClassCache.class.getName()));
+        assertSame(sharedLoader.loadClass(Implements.class.getName()), threadLoader.loadClass(Implements.class.getName()));
+
+        Class<?> uninstrumentedClass = threadLoader.loadClass(Join.class.getName());
+        assertSame(threadLoader, uninstrumentedClass.getClassLoader());
+        assertNotSame(uninstrumentedClass, otherThreadLoader.loadClass(Join.class.getName()));
+        assertNotSame(uninstrumentedClass, sharedLoader.loadClass(Join.class.getName()));
+    }
+}
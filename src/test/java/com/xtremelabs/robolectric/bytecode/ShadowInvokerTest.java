@@ -0,0 +1,127 @@
+package com.xtremelabs.robolectric.bytecode;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.lang.reflect.Method;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+public class ShadowInvokerTest {
+    @Test
+    public void shouldGenerateTypedCallWithUnboxedPrimitives() throws Exception {
+        String source = ShadowInvoker.generateInvokeMethod(ShadowThing.class.getMethod("describe", String.class, int.class));
+        assertEquals("public Object invoke(Object shadow, Object[] params) throws Throwable {\n" +
+                "if ($2.length != 2 || !($1 instanceof " + ShadowThing.class.getName() + ")" +
+                " || !($2[0] == null || $2[0] instanceof java.lang.String) || !($2[1] instanceof java.lang.Integer))" +
+                " throw argumentTypeMismatch();\n" +
+                "return ((" + ShadowThing.class.getName() + ") $1).describe((java.lang.String) $2[0], ((java.lang.Integer) $2[1]).intValue());\n" +
+                "}", source);
+    }
+
+    @Test
+    public void shouldGenerateStaticCallAndBoxPrimitiveReturn() throws Exception {
+        String source = ShadowInvoker.generateInvokeMethod(ShadowThing.class.getMethod("twice", long[].class));
+        assertEquals("public Object invoke(Object shadow, Object[] params) throws Throwable {\n" +
+                "if ($2.length != 1 || !($2[0] == null || $2[0] instanceof long[])) throw argumentTypeMismatch();\n" +
+                "return java.lang.Long.valueOf(" + ShadowThing.class.getName() + ".twice((long[]) $2[0]));\n" +
+                "}", source);
+    }
+
+    @Test
+    public void shouldCallInstanceMethods() throws Throwable {
+        ShadowInvoker invoker = ShadowInvoker.generate(ShadowThing.class.getMethod("describe", String.class, int.class));
+        assertEquals("apple x 3", invoker.invoke(new ShadowThing(), new Object[]{"apple", 3}));
+    }
+
+    @Test
+    public void shouldCallStaticMethods() throws Throwable {
+        ShadowInvoker invoker = ShadowInvoker.generate(ShadowThing.class.getMethod("twice", long[].class));
+        assertEquals(14L, invoker.invoke(null, new Object[]{new long[]{7}}));
+    }
+
+    @Test
+    public void shouldReturnNullFromVoidMethods() throws Throwable {
+        ShadowThing shadowThing = new ShadowThing();
+        ShadowInvoker invoker = ShadowInvoker.generate(ShadowThing.class.getMethod("setCount", int.class));
+        assertNull(invoker.invoke(shadowThing, new Object[]{5}));
+        assertEquals(5, shadowThing.count);
+    }
+
+    @Test(expected = IOException.class)
+    public void shouldThrowExceptionsUnwrapped() throws Throwable {
+        ShadowInvoker invoker = ShadowInvoker.generate(ShadowThing.class.getMethod("explode"));
+        invoker.invoke(new ShadowThing(), new Object[0]);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectArgumentsOfTheWrongType() throws Throwable {
+        ShadowInvoker invoker = ShadowInvoker.generate(ShadowThing.class.getMethod("describe", String.class, int.class));
+        invoker.invoke(new ShadowThing(), new Object[]{"apple", "three"});
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectNullForPrimitiveArguments() throws Throwable {
+        ShadowInvoker invoker = ShadowInvoker.generate(ShadowThing.class.getMethod("setCount", int.class));
+        invoker.invoke(new ShadowThing(), new Object[]{null});
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectShadowsOfTheWrongType() throws Throwable {
+        ShadowInvoker invoker = ShadowInvoker.generate(ShadowThing.class.getMethod("setCount", int.class));
+        invoker.invoke("not a shadow", new Object[]{5});
+    }
+
+    @Test
+    public void shouldLetTheShadowMethodsOwnIllegalArgumentExceptionsThrough() throws Throwable {
+        ShadowInvoker invoker = ShadowInvoker.generate(ShadowThing.class.getMethod("refuse", String.class));
+        try {
+            invoker.invoke(new ShadowThing(), new Object[]{"nope"});
+            fail();
+        } catch (IllegalArgumentException e) {
+            assertEquals("nope", e.getMessage());
+        }
+    }
+
+    @Test
+    public void shouldReuseTheInvokerGeneratedForAMethod() throws Exception {
+        Method method = ShadowThing.class.getMethod("describe", String.class, int.class);
+        assertSame(ShadowInvoker.generate(method), ShadowInvoker.generate(ShadowThing.class.getMethod("describe", String.class, int.class)));
+    }
+
+    @Test
+    public void shouldNotGenerateInvokersForNonPublicMethods() throws Exception {
+        assertNull(ShadowInvoker.generate(ShadowThing.class.getDeclaredMethod("hidden")));
+    }
+
+    public static class ShadowThing {
+        int count;
+
+        public String describe(String name, int times) {
+            return name + " x " + times;
+        }
+
+        public static long twice(long[] values) {
+            return values[0] * 2;
+        }
+
+        public void setCount(int count) {
+            this.count = count;
+        }
+
+        public void explode() throws IOException {
+            throw new IOException("boom");
+        }
+
+        public void refuse(String value) {
+            throw new IllegalArgumentException(value);
+        }
+
+        @SuppressWarnings({"UnusedDeclaration"})
+        void hidden() {
+        }
+    }
+}
@@ -67,6 +67,76 @@ public class ShadowWranglerTest {
         assertSame(name, foo.getName());
     }
 
+    @Test
+    public void shouldRecomputeInvocationPlansWhenShadowBindingsChange() throws Exception {
+        Foo unshadowedFoo = new Foo(name);
+        assertNull(unshadowedFoo.getName());
+
+        Robolectric.bindShadowClass(ShadowFoo.class);
+
+        Foo foo = new Foo(name);
+        assertSame(name, foo.getName());
+    }
+
+    @Test
+    public void testMethodDelegationWithoutDirectDispatch() throws Exception {
+        Robolectric.bindShadowClass(ShadowFoo.class);
+        ShadowWrangler.getInstance().setDirectDispatch(false);
+        try {
+            Foo foo = new Foo(name);
+            assertSame(name, foo.getName());
+        } finally {
+            ShadowWrangler.getInstance().setDirectDispatch(true);
+        }
+    }
+
+    @Test
+    public void shouldDispatchThroughGeneratedInvokersUnlessTurnedOff() throws Exception {
+        Robolectric.bindShadowClass(CallerRecordingShadowFoo.class);
+        Foo foo = new Foo(name);
+
+        String directCallers = foo.getName();
+        assertThat(directCallers, containsString(ShadowInvoker.class.getName() + "$$"));
+        assertThat(directCallers, not(containsString("java.lang.reflect.Method.invoke")));
+
+        ShadowWrangler.getInstance().setDirectDispatch(false);
+        try {
+            String reflectiveCallers = foo.getName();
+            assertThat(reflectiveCallers, containsString("java.lang.reflect.Method.invoke"));
+            assertThat(reflectiveCallers, not(containsString(ShadowInvoker.class.getName() + "$$")));
+        } finally {
+            ShadowWrangler.getInstance().setDirectDispatch(true);
+        }
+    }
+
+    @Test
+    public void shouldGiveThreadsTheirOwnInstanceWhenAsked() throws Exception {
+        final ShadowWrangler[] instances = new ShadowWrangler[3];
+        Thread thread = new Thread() {
+            @Override public void run() {
+                instances[0] = ShadowWrangler.newThreadInstance();
+                instances[1] = ShadowWrangler.getInstance();
+                Thread child = new Thread() {
+                    @Override public void run() {
+                        instances[2] = ShadowWrangler.getInstance();
+                    }
+                };
+                child.start();
+                try {
+                    child.join();
+                } catch (InterruptedException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        };
+        thread.start();
+        thread.join();
+
+        assertSame(instances[0], instances[1]);
+        assertSame(instances[0], instances[2]);
+        assertNotSame(instances[0], ShadowWrangler.getInstance());
+    }
+
     @Test
     public void testEqualsMethodDelegation() throws Exception {
         Robolectric.bindShadowClass(WithEquals.class);
@@ -229,6 +299,18 @@ public class ShadowWranglerTest {
     public static class ShadowFoo_WithDefaultConstructorAndNoConstructorDelegate {
     }
 
+    @Implements(Foo.class)
+    public static class CallerRecordingShadowFoo {
+        @SuppressWarnings({"UnusedDeclaration"})
+        public String getName() {
+            StringBuilder callers = new StringBuilder();
+            for (StackTraceElement stackTraceElement : new Throwable().getStackTrace()) {
+                callers.append(stackTraceElement.getClassName()).append(".").append(stackTraceElement.getMethodName()).append("\n");
+            }
+            return callers.toString();
+        }
+    }
+
     @Implements(Foo.class)
     public static class ExceptionThrowingShadowFoo {
         @SuppressWarnings({"UnusedDeclaration"})
@@ -0,0 +1,117 @@
+package com.xtremelabs.robolectric.internal;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+public class StaticStateTest {
+    private final List<String> resets = new ArrayList<String>();
+
+    @Test
+    public void shouldOnlyResetTouchedState() throws Exception {
+        StaticState logs = new RecordingStaticState("logs");
+        StaticState dialogs = new RecordingStaticState("dialogs");
+
+        logs.touch();
+        logs.touch();
+        StaticState.resetTouched();
+
+        assertThat(resets, equalTo(list("logs")));
+        assertFalse(logs.isTouched());
+        assertFalse(dialogs.isTouched());
+    }
+
+    @Test
+    public void shouldResetEachTouchedStateOnlyOnce() throws Exception {
+        StaticState logs = new RecordingStaticState("logs");
+
+        logs.touch();
+        StaticState.resetTouched();
+        StaticState.resetTouched();
+
+        assertThat(resets, equalTo(list("logs")));
+    }
+
+    @Test
+    public void shouldNotStayTouchedWhenResetTouchesItself() throws Exception {
+        StaticState singleton = new RecordingStaticState("singleton") {
+            @Override protected void reset() {
+                super.reset();
+                touch();
+            }
+        };
+
+        singleton.touch();
+        StaticState.resetTouched();
+        assertFalse(singleton.isTouched());
+
+        singleton.touch();
+        assertTrue(singleton.isTouched());
+        StaticState.resetTouched();
+        assertThat(resets, equalTo(list("singleton", "singleton")));
+    }
+
+    @Test
+    public void shouldResetRegisteredClassesThroughTheirResetMethod() throws Exception {
+        StaticState counter = StaticState.register(Counter.class);
+        StaticState otherCounter = StaticState.register(OtherCounter.class, "clear");
+
+        Counter.count = 3;
+        OtherCounter.count = 4;
+        counter.touch();
+        otherCounter.touch();
+        StaticState.resetTouched();
+
+        assertThat(Counter.count, equalTo(0));
+        assertThat(OtherCounter.count, equalTo(0));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRefuseClassesWithoutAStaticResetMethod() throws Exception {
+        StaticState.register(RecordingStaticState.class);
+    }
+
+    private static List<String> list(String... names) {
+        List<String> list = new ArrayList<String>();
+        for (String name : names) {
+            list.add(name);
+        }
+        return list;
+    }
+
+    private static class Counter {
+        static int count;
+
+        @SuppressWarnings({"UnusedDeclaration"})
+        private static void reset() {
+            count = 0;
+        }
+    }
+
+    private static class OtherCounter {
+        static int count;
+
+        @SuppressWarnings({"UnusedDeclaration"})
+        public static void clear() {
+            count = 0;
+        }
+    }
+
+    private class RecordingStaticState extends StaticState {
+        private final String name;
+
+        RecordingStaticState(String name) {
+            this.name = name;
+        }
+
+        @Override protected void reset() {
+            resets.add(name);
+        }
+    }
+}
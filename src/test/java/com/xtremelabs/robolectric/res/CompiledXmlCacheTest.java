@@ -0,0 +1,136 @@
+package com.xtremelabs.robolectric.res;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.w3c.dom.Document;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static com.xtremelabs.robolectric.util.TestUtil.resourceFile;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+public class CompiledXmlCacheTest {
+    private File cacheDirectory;
+    private File xmlDirectory;
+
+    @Before
+    public void setUp() throws Exception {
+        cacheDirectory = File.createTempFile("compiled-xml", "");
+        cacheDirectory.delete();
+        xmlDirectory = File.createTempFile("xml", "");
+        xmlDirectory.delete();
+        xmlDirectory.mkdirs();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        delete(cacheDirectory);
+        delete(xmlDirectory);
+    }
+
+    @Test
+    public void shouldRebuildTheSameDocumentsAsTheParser() throws Exception {
+        assertSameDocuments(resourceFile("res", "values"), new CompiledXmlCache(cacheDirectory));
+        assertSameDocuments(resourceFile("res", "layout"), new CompiledXmlCache(cacheDirectory));
+        assertSameDocuments(resourceFile("res", "xml"), new CompiledXmlCache(cacheDirectory));
+    }
+
+    @Test
+    public void shouldRebuildTheSameDocumentsWhenParsedInParallel() throws Exception {
+        ExecutorService executorService = Executors.newFixedThreadPool(4);
+        try {
+            File valuesDirectory = resourceFile("res", "values");
+            CompiledXmlCache compiledXmlCache = new CompiledXmlCache(cacheDirectory);
+            compiledXmlCache.compile(valuesDirectory, executorService);
+            assertSameDocuments(valuesDirectory, compiledXmlCache);
+        } finally {
+            executorService.shutdownNow();
+        }
+    }
+
+    @Test
+    public void shouldReadDocumentsFromTheCacheFileInLaterRuns() throws Exception {
+        File valuesDirectory = resourceFile("res", "values");
+        new CompiledXmlCache(cacheDirectory).getDocument(new File(valuesDirectory, "strings.xml"));
+        File cacheFile = new File(cacheDirectory, CompiledXmlCache.cacheFileNameFor(valuesDirectory));
+        assertTrue(cacheFile.isFile());
+
+        long lastModified = cacheFile.lastModified();
+        assertSameDocuments(valuesDirectory, new CompiledXmlCache(cacheDirectory));
+        assertThat(cacheFile.lastModified(), equalTo(lastModified));
+    }
+
+    @Test
+    public void shouldNotParseFilesAgainInLaterRuns() throws Exception {
+        File stringsFile = new File(xmlDirectory, "strings.xml");
+        String contents = "<resources><string name=\"hello\">Hello</string></resources>";
+        write(stringsFile, contents);
+        new CompiledXmlCache(cacheDirectory).getDocument(stringsFile);
+
+        // the same name, size and modification time, but not XML, so only the cache file can still produce a document
+        long lastModified = stringsFile.lastModified();
+        write(stringsFile, contents.replaceAll(".", "x"));
+        stringsFile.setLastModified(lastModified);
+
+        Document document = new CompiledXmlCache(cacheDirectory).getDocument(stringsFile);
+        assertThat(document.getDocumentElement().getTextContent(), equalTo("Hello"));
+    }
+
+    @Test
+    public void shouldCompileAgainWhenAFileChanges() throws Exception {
+        File stringsFile = new File(xmlDirectory, "strings.xml");
+        write(stringsFile, "<resources><string name=\"hello\">Hello</string></resources>");
+        new CompiledXmlCache(cacheDirectory).getDocument(stringsFile);
+
+        write(stringsFile, "<resources><string name=\"hello\">Hello, again</string></resources>");
+        stringsFile.setLastModified(stringsFile.lastModified() + 2000);
+
+        Document document = new CompiledXmlCache(cacheDirectory).getDocument(stringsFile);
+        assertThat(document.getDocumentElement().getTextContent(), equalTo("Hello, again"));
+    }
+
+    @Test
+    public void shouldCompileAgainWhenAFileIsAdded() throws Exception {
+        write(new File(xmlDirectory, "strings.xml"), "<resources><string name=\"hello\">Hello</string></resources>");
+        new CompiledXmlCache(cacheDirectory).getDocument(new File(xmlDirectory, "strings.xml"));
+
+        File colorsFile = new File(xmlDirectory, "colors.xml");
+        write(colorsFile, "<resources><color name=\"black\">#000000</color></resources>");
+
+        Document document = new CompiledXmlCache(cacheDirectory).getDocument(colorsFile);
+        assertThat(document.getDocumentElement().getTextContent(), equalTo("#000000"));
+    }
+
+    private void assertSameDocuments(File xmlDirectory, CompiledXmlCache compiledXmlCache) throws Exception {
+        for (File xmlFile : CompiledXmlCache.listXmlFiles(xmlDirectory)) {
+            Document parsed = DocumentLoader.newDocumentBuilderFactory().newDocumentBuilder().parse(xmlFile);
+            Document compiled = compiledXmlCache.getDocument(xmlFile);
+            assertTrue(xmlFile.getName(), parsed.isEqualNode(compiled));
+        }
+    }
+
+    private void write(File file, String contents) throws Exception {
+        FileWriter writer = new FileWriter(file);
+        try {
+            writer.write(contents);
+        } finally {
+            writer.close();
+        }
+    }
+
+    private void delete(File file) {
+        File[] files = file.listFiles();
+        if (files != null) {
+            for (File child : files) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+}
@@ -140,16 +140,93 @@ public class TestAttributeSetTest {
     }
 
     @Test
-    public void getAttributeValue_shouldReturnAttributeAssociatedWithResourceId() throws Exception {
+    public void getAttributeValueForResource_shouldReturnAttributeAssociatedWithResourceId() throws Exception {
         attributes.put("ns:textStyle2", "expected value");
         TestAttributeSet testAttributeSet = new TestAttributeSet(attributes, R.class);
-        assertThat(testAttributeSet.getAttributeValue(R.id.textStyle2), equalTo("expected value"));
+        assertThat(testAttributeSet.getAttributeValueForResource(R.id.textStyle2), equalTo("expected value"));
     }
 
     @Test
-    public void getAttributeValue_shouldReturnNullIfNoAttributeSet() throws Exception {
+    public void getAttributeValueForResource_shouldReturnNullIfNoAttributeSet() throws Exception {
         TestAttributeSet testAttributeSet = new TestAttributeSet(attributes, R.class);
         int nonExistantResource = 12345;
-        assertThat(testAttributeSet.getAttributeValue(nonExistantResource), nullValue());
+        assertThat(testAttributeSet.getAttributeValueForResource(nonExistantResource), nullValue());
+    }
+
+    @Test
+    public void getAttributeResourceValueForResource_shouldResolveTheAttributeAssociatedWithResourceId() throws Exception {
+        attributes.put("ns:textStyle2", "@string/howdy");
+        TestAttributeSet testAttributeSet = new TestAttributeSet(attributes, resourceExtractor, null, null, false);
+        assertThat(testAttributeSet.getAttributeResourceValueForResource(R.id.textStyle2, 0), equalTo(R.string.howdy));
+        assertThat(testAttributeSet.getAttributeResourceValueForResource(12345, -1), equalTo(-1));
+    }
+
+    @Test
+    public void getAttributeResourceValue_shouldLookUpByIndex() throws Exception {
+        attributes.put("android:id", "@android:id/text1");
+        attributes.put("android:text", "@string/howdy");
+        TestAttributeSet testAttributeSet = new TestAttributeSet(attributes, resourceExtractor, null, null, false);
+
+        for (int i = 0; i < testAttributeSet.getAttributeCount(); i++) {
+            int expected = testAttributeSet.getAttributeName(i).equals("id") ? android.R.id.text1 : R.string.howdy;
+            assertThat(testAttributeSet.getAttributeResourceValue(i, 0), equalTo(expected));
+        }
+    }
+
+    @Test
+    public void getAttributeNameAndCount_shouldDescribeEachAttribute() throws Exception {
+        attributes.put("android:text", "hello");
+        TestAttributeSet testAttributeSet = new TestAttributeSet(attributes, resourceExtractor, null, null, false);
+        testAttributeSet.put("android:maxLines", "3");
+
+        assertThat(testAttributeSet.getAttributeCount(), equalTo(2));
+        for (int i = 0; i < testAttributeSet.getAttributeCount(); i++) {
+            String name = testAttributeSet.getAttributeName(i);
+            assertThat(testAttributeSet.getAttributeValue("android", name),
+                    equalTo(name.equals("text") ? "hello" : "3"));
+        }
+    }
+
+    @Test
+    public void getAttributeIntAndFloatValue_shouldLookUpByIndex() throws Exception {
+        attributes.put("android:maxLines", "3");
+        AttrResourceLoader resourceLoader = new AttrResourceLoader(resourceExtractor);
+        TestAttributeSet testAttributeSet = new TestAttributeSet(attributes, null, resourceLoader, View.class, false);
+
+        assertThat(testAttributeSet.getAttributeIntValue(0, 17), equalTo(3));
+        assertThat(testAttributeSet.getAttributeFloatValue(0, 1.5f), equalTo(3f));
+        assertThat(testAttributeSet.getAttributeUnsignedIntValue("android", "maxLines", 0), equalTo(3));
+        assertThat(testAttributeSet.getAttributeListValue(0, new String[]{"1", "2", "3"}, -1), equalTo(2));
+    }
+
+    @Test
+    public void getAttributeValueAndBooleanValue_shouldLookUpByIndex() throws Exception {
+        attributes.put("android:enabled", "false");
+        TestAttributeSet testAttributeSet = new TestAttributeSet(attributes, resourceExtractor, null, null, false);
+        testAttributeSet.put("android:text", "hello");
+
+        for (int i = 0; i < testAttributeSet.getAttributeCount(); i++) {
+            if (testAttributeSet.getAttributeName(i).equals("enabled")) {
+                assertThat(testAttributeSet.getAttributeValue(i), equalTo("false"));
+                assertThat(testAttributeSet.getAttributeBooleanValue(i, true), equalTo(false));
+            } else {
+                assertThat(testAttributeSet.getAttributeValue(i), equalTo("hello"));
+            }
+        }
+    }
+
+    @Test
+    public void getAttributeValue_shouldSeeChangesToTheUnderlyingAttributes() throws Exception {
+        attributes.put("android:text", "hello");
+        TestAttributeSet testAttributeSet = new TestAttributeSet(attributes, resourceExtractor, null, null, false);
+        assertThat(testAttributeSet.getAttributeValue("android", "text"), equalTo("hello"));
+
+        attributes.put("android:text", "goodbye");
+        attributes.put("android:hint", "type here");
+        assertThat(testAttributeSet.getAttributeValue("android", "text"), equalTo("goodbye"));
+        assertThat(testAttributeSet.getAttributeValue("android", "hint"), equalTo("type here"));
+
+        attributes.remove("android:text");
+        assertThat(testAttributeSet.getAttributeValue("android", "text"), nullValue());
     }
 }
@@ -325,6 +325,20 @@ public class ViewLoaderTest {
         assertThat(innerCustomView.childCountAfterInflate, equalTo(3));
     }
 
+    @Test
+    public void shouldInflateNewViewsEachTimeALayoutIsReinflated() throws Exception {
+        View first = viewLoader.inflateView(context, "layout/main");
+        View second = viewLoader.inflateView(context, "layout/main");
+
+        assertNotSame(first, second);
+        assertNotSame(first.findViewById(R.id.title), second.findViewById(R.id.title));
+        assertThat(((TextView) second.findViewById(R.id.title)).getText().toString(), equalTo("Main Layout"));
+
+        CustomView2 outerCustomView = (CustomView2) viewLoader.inflateView(context, "layout/custom_layout2");
+        outerCustomView = (CustomView2) viewLoader.inflateView(context, "layout/custom_layout2");
+        assertThat(outerCustomView.childCountAfterInflate, equalTo(1));
+    }
+
     @Test
     public void testIncludesLinearLayoutsOnlyOnce() throws Exception {
         ViewGroup parentView = (ViewGroup) viewLoader.inflateView(context, "layout/included_layout_parent");
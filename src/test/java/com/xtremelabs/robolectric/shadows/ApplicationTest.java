@@ -19,6 +19,7 @@ import com.xtremelabs.robolectric.WithTestDefaultsRunner;
 import com.xtremelabs.robolectric.res.ResourceLoader;
 import com.xtremelabs.robolectric.res.StringResourceLoader;
 import com.xtremelabs.robolectric.util.TestBroadcastReceiver;
+import com.xtremelabs.robolectric.util.Transcript;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -255,6 +256,40 @@ public class ApplicationTest {
         assertTrue(shadowApplication.getReceiversForIntent(new Intent("Foo")).size() == 2);
     }
 
+    @Test
+    public void shouldBroadcastOnlyToReceiversOfTheIntentsActionInRegistrationOrder() throws Exception {
+        final Transcript transcript = new Transcript();
+        final BroadcastReceiver second = new TranscriptReceiver(transcript, "second");
+        BroadcastReceiver first = new BroadcastReceiver() {
+            @Override public void onReceive(Context context, Intent intent) {
+                transcript.add("first");
+                Robolectric.application.unregisterReceiver(second);
+            }
+        };
+        IntentFilter fooAndBar = new IntentFilter("Foo");
+        fooAndBar.addAction("Bar");
+        Robolectric.application.registerReceiver(first, new IntentFilter("Foo"));
+        Robolectric.application.registerReceiver(second, fooAndBar);
+        Robolectric.application.registerReceiver(new TranscriptReceiver(transcript, "other"), new IntentFilter("Baz"));
+
+        Robolectric.application.sendBroadcast(new Intent("Foo"));
+        transcript.assertEventsSoFar("first", "second");
+
+        Robolectric.application.sendBroadcast(new Intent("Bar"));
+        transcript.assertNoEventsSoFar();
+        assertFalse(shadowOf(Robolectric.application).hasReceiverForIntent(new Intent("Bar")));
+        assertEquals(2, shadowOf(Robolectric.application).getRegisteredReceivers().size());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void unregisterReceiver_shouldThrowForReceiversThatAreNotRegistered() throws Exception {
+        BroadcastReceiver receiver = new TestBroadcastReceiver();
+        Robolectric.application.registerReceiver(receiver, new IntentFilter("Foo"));
+        Robolectric.application.unregisterReceiver(receiver);
+
+        Robolectric.application.unregisterReceiver(receiver);
+    }
+
     @Test
     public void broadcasts_shouldBeLogged() {
         Intent broadcastIntent = new Intent("foo");
@@ -265,6 +300,20 @@ public class ApplicationTest {
         assertEquals(broadcastIntent, broadcastIntents.get(0));
     }
 
+    private static class TranscriptReceiver extends BroadcastReceiver {
+        private final Transcript transcript;
+        private final String name;
+
+        TranscriptReceiver(Transcript transcript, String name) {
+            this.transcript = transcript;
+            this.name = name;
+        }
+
+        @Override public void onReceive(Context context, Intent intent) {
+            transcript.add(name);
+        }
+    }
+
     private static class NullBinder implements IBinder {
         @Override
         public String getInterfaceDescriptor() throws RemoteException {
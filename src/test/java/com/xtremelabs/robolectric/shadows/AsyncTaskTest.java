@@ -1,5 +1,6 @@
 package com.xtremelabs.robolectric.shadows;
 
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
 
 import org.junit.Before;
@@ -120,6 +121,52 @@ public class AsyncTaskTest {
         assertThat(asyncTask.getStatus(), is(AsyncTask.Status.FINISHED));
     }
 
+    @Test
+    public void shouldRunTasksOnWorkerThreadsAndDeliverResultsInOrder() throws Exception {
+        Robolectric.getShadowApplication().setBackgroundWorkerThreadCount(2);
+        try {
+            CountDownLatch bothStarted = new CountDownLatch(2);
+            new RendezvousAsyncTask(bothStarted).execute("first");
+            new RendezvousAsyncTask(bothStarted).execute("second");
+
+            Robolectric.runBackgroundTasks();
+            transcript.assertNoEventsSoFar();
+
+            Robolectric.runUiThreadTasks();
+            transcript.assertEventsSoFar(
+                    "onProgressUpdate first started", "onPostExecute first met",
+                    "onProgressUpdate second started", "onPostExecute second met");
+        } finally {
+            Robolectric.getShadowApplication().setBackgroundWorkerThreadCount(0);
+        }
+    }
+
+    private class RendezvousAsyncTask extends AsyncTask<String, String, String> {
+        private final CountDownLatch bothStarted;
+
+        RendezvousAsyncTask(CountDownLatch bothStarted) {
+            this.bothStarted = bothStarted;
+        }
+
+        @Override protected String doInBackground(String... names) {
+            publishProgress(names[0] + " started");
+            bothStarted.countDown();
+            try {
+                return names[0] + (bothStarted.await(10, TimeUnit.SECONDS) ? " met" : " alone");
+            } catch (InterruptedException e) {
+                return names[0] + " interrupted";
+            }
+        }
+
+        @Override protected void onProgressUpdate(String... values) {
+            transcript.add("onProgressUpdate " + values[0]);
+        }
+
+        @Override protected void onPostExecute(String s) {
+            transcript.add("onPostExecute " + s);
+        }
+    }
+
     private class MyAsyncTask extends AsyncTask<String, String, String> {
         @Override protected void onPreExecute() {
             transcript.add("onPreExecute");
@@ -355,7 +355,94 @@ public class ContentResolverTest {
         assertThat(contentResolver.delete(unrelated, null, null), is(1));
         assertThat(contentResolver.update(unrelated, new ContentValues(), null, null), is(0));
     }
+
+    @Test
+    public void shouldApplyBatchesToRegisteredProvider() throws Exception {
+        final List<ContentValues> updatedValues = new ArrayList<ContentValues>();
+        ShadowContentResolver.registerProvider(AUTHORITY, new ContentProvider() {
+            @Override public boolean onCreate() {
+                return false;
+            }
+            @Override public Cursor query(Uri uri, String[] projection, String selection, String[] selectionArgs, String sortOrder) {
+                return null;
+            }
+            @Override public Uri insert(Uri uri, ContentValues values) {
+                return ContentUris.withAppendedId(uri, 7);
+            }
+            @Override public int delete(Uri uri, String selection, String[] selectionArgs) {
+                return selectionArgs.length;
+            }
+            @Override public int update(Uri uri, ContentValues values, String selection, String[] selectionArgs) {
+                updatedValues.add(values);
+                return 2;
+            }
+            @Override public String getType(Uri uri) {
+                return null;
+            }
+        });
+        Uri uri = Uri.parse("content://" + AUTHORITY + "/items");
+        ArrayList<ContentProviderOperation> operations = new ArrayList<ContentProviderOperation>();
+        operations.add(ContentProviderOperation.newInsert(uri)
+                .withValue("column1", "foo")
+                .build());
+        operations.add(ContentProviderOperation.newUpdate(uri)
+                .withSelection("id_column = ?", new String[] { "99" })
+                .withValue("column1", "bar")
+                .withValueBackReference("parent_id", 0)
+                .build());
+        operations.add(ContentProviderOperation.newDelete(uri)
+                .withSelection("id_column = ?", new String[] { "11" })
+                .build());
+
+        ContentProviderResult[] results = contentResolver.applyBatch(AUTHORITY, operations);
+
+        assertThat(results.length, is(3));
+        assertThat(results[0].uri.toString(), equalTo("content://" + AUTHORITY + "/items/7"));
+        assertThat(results[1].count, is(2));
+        assertThat(results[2].count, is(1));
+        assertThat(updatedValues.get(0).getAsString("column1"), equalTo("bar"));
+        assertThat(updatedValues.get(0).getAsLong("parent_id"), equalTo(7L));
+        assertThat(shadowContentResolver.getContentProviderOperations(AUTHORITY), equalTo(operations));
+    }
     
+    @Test
+    public void applyBatch_shouldReturnCannedResultsInsteadOfApplyingThemWhenSet() throws Exception {
+        final List<Uri> insertedUris = new ArrayList<Uri>();
+        ShadowContentResolver.registerProvider(AUTHORITY, new ContentProvider() {
+            @Override public boolean onCreate() {
+                return false;
+            }
+            @Override public Cursor query(Uri uri, String[] projection, String selection, String[] selectionArgs, String sortOrder) {
+                return null;
+            }
+            @Override public Uri insert(Uri uri, ContentValues values) {
+                insertedUris.add(uri);
+                return ContentUris.withAppendedId(uri, 7);
+            }
+            @Override public int delete(Uri uri, String selection, String[] selectionArgs) {
+                return 0;
+            }
+            @Override public int update(Uri uri, ContentValues values, String selection, String[] selectionArgs) {
+                return 0;
+            }
+            @Override public String getType(Uri uri) {
+                return null;
+            }
+        });
+        ContentProviderResult[] contentProviderResults = new ContentProviderResult[] {
+                new ContentProviderResult(1),
+        };
+        shadowContentResolver.setContentProviderResult(contentProviderResults);
+        ArrayList<ContentProviderOperation> operations = new ArrayList<ContentProviderOperation>();
+        operations.add(ContentProviderOperation.newInsert(Uri.parse("content://" + AUTHORITY + "/items"))
+                .withValue("column1", "foo")
+                .build());
+
+        assertThat(contentResolver.applyBatch(AUTHORITY, operations), equalTo(contentProviderResults));
+        assertThat(insertedUris.size(), is(0));
+        assertThat(shadowContentResolver.getContentProviderOperations(AUTHORITY), equalTo(operations));
+    }
+
     @Test
     public void shouldRegisterContentObservers() throws Exception {
     	TestContentObserver co = new TestContentObserver(null);
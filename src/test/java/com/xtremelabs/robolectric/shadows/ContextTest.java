@@ -5,6 +5,7 @@ import android.content.Context;
 import android.content.res.TypedArray;
 import com.xtremelabs.robolectric.R;
 import com.xtremelabs.robolectric.WithTestDefaultsRunner;
+import com.xtremelabs.robolectric.internal.StaticState;
 import com.xtremelabs.robolectric.tester.android.util.TestAttributeSet;
 import org.hamcrest.CoreMatchers;
 import org.hamcrest.core.IsEqual;
@@ -261,6 +262,22 @@ public class ContextTest {
         assertThat(successfully, is(false));
     }
 
+    @Test
+    public void clearFilesAndCache_shouldOnlyRunAfterTheDirectoriesWereHandedOut() throws Exception {
+        File file = new File(context.getFilesDir(), "__test__");
+        assertTrue(file.createNewFile());
+        StaticState.resetTouched();
+        assertFalse(file.exists());
+
+        assertTrue(file.createNewFile());
+        StaticState.resetTouched();
+        assertTrue(file.exists());
+
+        context.getCacheDir();
+        StaticState.resetTouched();
+        assertFalse(file.exists());
+    }
+
     @Test
     public void obtainStyledAttributes_shouldExtractAttributesFromAttributeSet() throws Exception {
         Map<String, String> attributes = new HashMap<String, String>();
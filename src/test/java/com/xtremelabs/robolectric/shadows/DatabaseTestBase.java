@@ -351,6 +351,140 @@ public abstract class DatabaseTestBase {
         assertEmptyDatabase();
     }
 
+    @Test
+    public void shouldBindWhereArgsRatherThanQuoteThem() throws Exception {
+        addPerson(1234L, "O'Brien $1");
+
+        Cursor cursor = database.query("table_name", new String[]{"id"}, "name = ?", new String[]{"O'Brien $1"}, null, null, null);
+        assertThat(cursor.moveToFirst(), equalTo(true));
+        assertThat(cursor.getInt(0), equalTo(1234));
+
+        assertThat(database.delete("table_name", "name = ?", new String[]{"O'Brien $1"}), equalTo(1));
+    }
+
+    @Test
+    public void shouldKeepEarlierCursorsWhenTheSameQueryRunsAgain() throws Exception {
+        addChuck();
+        addJulie();
+
+        Cursor first = database.rawQuery("SELECT name FROM table_name WHERE id > ? ORDER BY id", new String[]{"0"});
+        Cursor second = database.rawQuery("SELECT name FROM table_name WHERE id > ? ORDER BY id", new String[]{"1234"});
+
+        assertThat(first.getCount(), equalTo(2));
+        assertThat(first.moveToLast(), equalTo(true));
+        assertThat(first.getString(0), equalTo("Julie"));
+        assertThat(second.getCount(), equalTo(1));
+    }
+
+    @Test
+    public void shouldGiveEachOpenDatabaseItsOwnConnection() throws Exception {
+        SQLiteDatabase other = SQLiteDatabase.openDatabase("other", null, 0);
+        try {
+            other.execSQL("CREATE TABLE table_name (id INTEGER PRIMARY KEY, name VARCHAR(255));");
+            addChuck();
+
+            Cursor cursor = other.query("table_name", new String[]{"id"}, null, null, null, null, null);
+            assertThat(cursor.getCount(), equalTo(0));
+            assertThat(other.getPath(), equalTo("other"));
+        } finally {
+            other.close();
+        }
+    }
+
+    @Test
+    public void shouldRestoreSnapshotsIntoOtherDatabases() throws Exception {
+        addChuck();
+        shDatabase.saveSnapshot("chuck");
+
+        SQLiteDatabase other = SQLiteDatabase.openDatabase("other", null, 0);
+        try {
+            assertThat(shadowOf(other).restoreSnapshot("no such snapshot"), equalTo(false));
+            assertThat(shadowOf(other).restoreSnapshot("chuck"), equalTo(true));
+
+            Cursor cursor = other.query("table_name", new String[]{"id", "name"}, null, null, null, null, null);
+            assertThat(cursor.moveToFirst(), equalTo(true));
+            assertIdAndName(cursor, 1234L, "Chuck");
+            assertThat(cursor.getCount(), equalTo(1));
+
+            addJulie();
+            assertThat(other.delete("table_name", null, null), equalTo(1));
+        } finally {
+            other.close();
+        }
+    }
+
+    @Test
+    public void shouldInsertAllRowsInBatches() throws Exception {
+        ContentValues[] rows = new ContentValues[5];
+        for (int i = 0; i < rows.length; i++) {
+            rows[i] = new ContentValues();
+            rows[i].put("name", "row " + i);
+            if (i >= 3) {
+                rows[i].put("big_int", i);
+            }
+        }
+
+        long[] rowIds = shDatabase.insertAll("table_name", rows);
+        assertThat(database.inTransaction(), equalTo(false));
+
+        Cursor cursor = database.query("table_name", new String[]{"id", "name", "big_int"}, null, null, null, null, "id");
+        assertThat(cursor.getCount(), equalTo(5));
+        for (int i = 0; i < rows.length; i++) {
+            assertThat(cursor.moveToPosition(i), equalTo(true));
+            assertThat(rowIds[i], equalTo(cursor.getLong(0)));
+            assertThat(cursor.getString(1), equalTo("row " + i));
+        }
+        assertThat(cursor.getInt(2), equalTo(4));
+        cursor.close();
+    }
+
+    @Test
+    public void shouldReturnTheIdsOfInsertAllRowsThatSetTheirOwnIds() throws Exception {
+        ContentValues first = new ContentValues();
+        first.put("name", "first");
+        ContentValues chosen = new ContentValues();
+        chosen.put("id", 1234);
+        chosen.put("name", "chosen");
+        ContentValues last = new ContentValues();
+        last.put("name", "last");
+
+        long[] rowIds = shDatabase.insertAll("table_name", first, chosen, last);
+
+        assertThat(rowIds[1], equalTo(1234L));
+        assertThat(rowIds[2], equalTo(1235L));
+        Cursor cursor = database.query("table_name", new String[]{"name"}, "id = ?", new String[]{String.valueOf(rowIds[0])}, null, null, null);
+        assertThat(cursor.moveToFirst(), equalTo(true));
+        assertThat(cursor.getString(0), equalTo("first"));
+        cursor.close();
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void insertAll_shouldThrowWhenTheDatabaseIsClosed() throws Exception {
+        database.close();
+
+        ContentValues row = new ContentValues();
+        row.put("name", "row");
+        shDatabase.insertAll("table_name", row);
+    }
+
+    @Test
+    public void shouldRollBackInsertAllWhenARowFails() throws Exception {
+        ContentValues good = new ContentValues();
+        good.put("name", "good");
+        ContentValues bad = new ContentValues();
+        bad.put("no_such_column", "bad");
+
+        try {
+            shDatabase.insertAll("table_name", good, bad);
+            fail("expected the insert to fail");
+        } catch (android.database.SQLException expected) {
+        }
+
+        Cursor cursor = database.query("table_name", new String[]{"name"}, null, null, null, null, null);
+        assertThat(cursor.getCount(), equalTo(0));
+        cursor.close();
+    }
+
 
     @Test
     public void testExecSQL() throws Exception {
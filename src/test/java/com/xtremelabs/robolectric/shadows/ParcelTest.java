@@ -4,7 +4,6 @@ import android.content.Intent;
 import android.os.Binder;
 import android.os.Bundle;
 import android.os.Parcel;
-import com.xtremelabs.robolectric.Robolectric;
 import com.xtremelabs.robolectric.WithTestDefaultsRunner;
 import org.junit.Before;
 import org.junit.Test;
@@ -15,6 +14,7 @@ import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 
+import static com.xtremelabs.robolectric.Robolectric.shadowOf;
 import static org.hamcrest.CoreMatchers.equalTo;
 import static org.hamcrest.CoreMatchers.notNullValue;
 import static org.hamcrest.CoreMatchers.nullValue;
@@ -26,19 +26,17 @@ import static org.junit.Assert.assertTrue;
 public class ParcelTest {
 
     private Parcel parcel;
-    private ShadowParcel shadowParcel;
 
     @Before
     public void setup() {
         parcel = Parcel.obtain();
-        shadowParcel = Robolectric.shadowOf(parcel);
     }
 
     @Test
     public void testObtain() {
         assertThat(parcel, notNullValue());
-        assertThat(shadowParcel.getIndex(), equalTo(0));
-        assertThat(shadowParcel.getParcelData().size(), equalTo(0));
+        assertThat(parcel.dataPosition(), equalTo(0));
+        assertThat(parcel.dataSize(), equalTo(0));
     }
 
     @Test
@@ -71,9 +69,11 @@ public class ParcelTest {
     @Test
     public void testWriteNullString() {
         parcel.writeString(null);
+        parcel.writeString("after");
+        parcel.setDataPosition(0);
         assertThat(parcel.readString(), nullValue());
-        assertThat(shadowParcel.getIndex(), equalTo(0));
-        assertThat(shadowParcel.getParcelData().size(), equalTo(0));
+        assertThat(parcel.dataPosition(), equalTo(4));
+        assertThat(parcel.readString(), equalTo("after"));
     }
 
     @Test
@@ -345,4 +345,65 @@ public class ParcelTest {
     	String[] newStrs = parcel.createStringArray();
     	assertTrue(Arrays.equals(strs, newStrs));
     }
+
+    @Test
+    public void testWriteUsesTheRealWireLayout() {
+        parcel.writeInt(7);
+        parcel.writeString("ab");
+        parcel.writeLong(1L << 40);
+
+        assertThat(parcel.dataSize(), equalTo(4 + 4 + 8 + 8));
+        assertTrue(Arrays.equals(parcel.marshall(), new byte[]{
+                7, 0, 0, 0,
+                2, 0, 0, 0, 'a', 0, 'b', 0, 0, 0, 0, 0,
+                0, 0, 0, 0, 0, 1, 0, 0}));
+    }
+
+    @Test
+    public void testMarshallAndUnmarshall() {
+        parcel.writeString("hello");
+        parcel.writeDouble(1.5);
+        parcel.writeIntArray(new int[]{1, 2, 3});
+        byte[] bytes = parcel.marshall();
+
+        Parcel other = Parcel.obtain();
+        other.unmarshall(bytes, 0, bytes.length);
+        assertThat(other.dataPosition(), equalTo(bytes.length));
+        other.setDataPosition(0);
+        assertThat(other.readString(), equalTo("hello"));
+        assertThat(other.readDouble(), equalTo(1.5));
+        int[] ints = new int[3];
+        other.readIntArray(ints);
+        assertTrue(Arrays.equals(ints, new int[]{1, 2, 3}));
+        assertThat(other.dataAvail(), equalTo(0));
+    }
+
+    @Test(expected = RuntimeException.class)
+    public void testMarshallRefusesParcelsHoldingObjects() {
+        parcel.writeStrongBinder(new Binder());
+        parcel.marshall();
+    }
+
+    @Test
+    @SuppressWarnings("deprecation")
+    public void testGetParcelDataReturnsTheWrittenValues() {
+        parcel.writeInt(1);
+        parcel.writeString("two");
+        parcel.writeLong(3L);
+
+        assertThat(shadowOf(parcel).getParcelData(), equalTo((List) Arrays.asList(1, "two", 3L)));
+    }
+
+    @Test
+    public void testSetDataPositionRereadsAndOverwrites() {
+        parcel.writeInt(1);
+        parcel.writeInt(2);
+        parcel.setDataPosition(4);
+        parcel.writeInt(3);
+        parcel.setDataPosition(0);
+
+        assertThat(parcel.readInt(), equalTo(1));
+        assertThat(parcel.readInt(), equalTo(3));
+        assertThat(parcel.dataSize(), equalTo(8));
+    }
 }
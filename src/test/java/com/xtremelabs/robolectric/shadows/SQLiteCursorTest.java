@@ -294,6 +294,25 @@ public class SQLiteCursorTest {
         assertThat(cursor.isClosed(), equalTo(true));
     }
 
+    @Test
+    public void shouldMoveAcrossWindows() throws Exception {
+        PreparedStatement statement = connection.prepareStatement("INSERT INTO table_name (id, name) VALUES(?, ?);");
+        for (int i = 0; i < ShadowSQLiteCursor.WINDOW_SIZE * 2; i++) {
+            statement.setInt(1, 2000 + i);
+            statement.setString(2, "Person " + i);
+            statement.executeUpdate();
+        }
+
+        setupCursor();
+        assertThat(cursor.moveToPosition(ShadowSQLiteCursor.WINDOW_SIZE + 3), equalTo(true));
+        assertThat(cursor.getString(1), equalTo("Person " + ShadowSQLiteCursor.WINDOW_SIZE));
+        assertThat(cursor.moveToPosition(1), equalTo(true));
+        assertThat(cursor.getString(1), equalTo("Julie"));
+        assertThat(cursor.getCount(), equalTo(3 + ShadowSQLiteCursor.WINDOW_SIZE * 2));
+        assertThat(cursor.moveToLast(), equalTo(true));
+        assertThat(cursor.getInt(0), equalTo(2000 + ShadowSQLiteCursor.WINDOW_SIZE * 2 - 1));
+    }
+
     @Test
     public void testIsNullWhenNull() throws Exception {
         cursor.moveToFirst();
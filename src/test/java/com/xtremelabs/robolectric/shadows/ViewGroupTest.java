@@ -185,6 +185,46 @@ public class ViewGroupTest {
         assertThat((ViewGroup) viewGroup.findViewWithTag("blarg"), sameInstance(viewGroup));
     }
 
+    @Test
+    public void findViewById_shouldFindViewsWhoseIdsChangeAfterTheyAreAdded() throws Exception {
+        child3b.setId(42);
+        assertThat(root.findViewById(42), sameInstance(child3b));
+        assertThat(child3.findViewById(42), sameInstance(child3b));
+
+        child3b.setId(43);
+        assertThat(root.findViewById(42), nullValue());
+        assertThat(root.findViewById(43), sameInstance(child3b));
+
+        child3.setId(44);
+        assertThat(root.findViewById(44), sameInstance((View) child3));
+    }
+
+    @Test
+    public void findViewById_shouldReturnTheFirstViewDepthFirstWhenSeveralShareAnId() throws Exception {
+        child3a.setId(42);
+        child2.setId(42);
+        assertThat(root.findViewById(42), sameInstance(child2));
+
+        root.removeView(child2);
+        assertThat(root.findViewById(42), sameInstance(child3a));
+        assertThat(child2.findViewById(42), sameInstance(child2));
+
+        root.addView(child2, 0);
+        assertThat(root.findViewById(42), sameInstance(child2));
+    }
+
+    @Test
+    public void findViewById_shouldForgetViewsRemovedWithTheirParents() throws Exception {
+        child3a.setId(42);
+        root.removeViewAt(2);
+        assertThat(root.findViewById(42), nullValue());
+        assertThat(child3.findViewById(42), sameInstance(child3a));
+
+        root.addView(child3);
+        child3.removeAllViews();
+        assertThat(root.findViewById(42), nullValue());
+    }
+
     @Test
     public void hasFocus_shouldReturnTrueIfAnyChildHasFocus() throws Exception {
         assertFalse(root.hasFocus());
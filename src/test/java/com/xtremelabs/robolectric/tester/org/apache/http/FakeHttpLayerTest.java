@@ -2,6 +2,7 @@ package com.xtremelabs.robolectric.tester.org.apache.http;
 
 import com.xtremelabs.robolectric.WithTestDefaultsRunner;
 import org.apache.http.HttpEntity;
+import org.apache.http.HttpRequest;
 import org.apache.http.client.methods.HttpGet;
 import org.apache.http.client.methods.HttpPost;
 import org.apache.http.client.methods.HttpPut;
@@ -91,4 +92,37 @@ public class FakeHttpLayerTest {
         assertFalse(requestMatcherBuilder.matches(noMatch));
         assertTrue(requestMatcherBuilder.matches(match));
     }
+
+    @Test
+    public void emulateRequest_shouldUseTheMostRecentlyAddedMatchingRule() throws Exception {
+        FakeHttpLayer fakeHttpLayer = new FakeHttpLayer();
+        fakeHttpLayer.addHttpResponseRule("GET", "http://example.com/foo", new TestHttpResponse(200, "exact"));
+        fakeHttpLayer.addHttpResponseRule(new FakeHttpLayer.RequestMatcherBuilder().path("foo"), new TestHttpResponse(200, "path"));
+        fakeHttpLayer.addHttpResponseRule(new FakeHttpLayer.UriRegexMatcher("GET", ".*/bar"), new TestHttpResponse(200, "regex"));
+        fakeHttpLayer.addHttpResponseRule("http://example.com/baz", "uri");
+
+        assertThat(responseBody(fakeHttpLayer, new HttpGet("http://example.com/foo")), equalTo("path"));
+        assertThat(responseBody(fakeHttpLayer, new HttpGet("http://example.com/bar")), equalTo("regex"));
+        assertThat(responseBody(fakeHttpLayer, new HttpGet("http://example.com/baz")), equalTo("uri"));
+
+        fakeHttpLayer.addHttpResponseRule("GET", "http://example.com/foo", new TestHttpResponse(200, "exact again"));
+        assertThat(responseBody(fakeHttpLayer, new HttpGet("http://example.com/foo")), equalTo("exact again"));
+        assertThat(responseBody(fakeHttpLayer, new HttpPost("http://example.com/foo")), equalTo("path"));
+    }
+
+    @Test
+    public void emulateRequest_shouldFallBackToTheDefaultResponseWhenNoRuleMatches() throws Exception {
+        FakeHttpLayer fakeHttpLayer = new FakeHttpLayer();
+        fakeHttpLayer.addHttpResponseRule(new FakeHttpLayer.RequestMatcherBuilder().host("example.com").noParams(),
+                new TestHttpResponse(200, "no params"));
+        fakeHttpLayer.setDefaultHttpResponse(404, "default");
+
+        assertThat(responseBody(fakeHttpLayer, new HttpGet("http://example.com/foo")), equalTo("no params"));
+        assertThat(responseBody(fakeHttpLayer, new HttpGet("http://example.com/foo?a=b")), equalTo("default"));
+        assertThat(responseBody(fakeHttpLayer, new HttpGet("http://example.org/foo")), equalTo("default"));
+    }
+
+    private static String responseBody(FakeHttpLayer fakeHttpLayer, HttpRequest request) throws Exception {
+        return EntityUtils.toString(fakeHttpLayer.emulateRequest(null, request, null, null).getEntity());
+    }
 }
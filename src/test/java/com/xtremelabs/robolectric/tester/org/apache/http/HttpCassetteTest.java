@@ -0,0 +1,105 @@
+package com.xtremelabs.robolectric.tester.org.apache.http;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.impl.client.DefaultHttpClient;
+import org.apache.http.message.BasicHeader;
+import org.apache.http.util.EntityUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.junit.Assert.assertThat;
+
+public class HttpCassetteTest {
+    private File cassetteDirectory;
+    private HttpServer server;
+
+    @Before
+    public void setUp() throws Exception {
+        cassetteDirectory = File.createTempFile("http-cassette", "");
+        cassetteDirectory.delete();
+
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                byte[] body = ("you asked for " + exchange.getRequestURI()).getBytes("UTF-8");
+                exchange.getResponseHeaders().add("Content-Type", "text/plain");
+                exchange.sendResponseHeaders(exchange.getRequestURI().getPath().equals("/missing") ? 404 : 200, body.length);
+                OutputStream responseBody = exchange.getResponseBody();
+                responseBody.write(body);
+                responseBody.close();
+            }
+        });
+        server.start();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        server.stop(0);
+        for (File file : cassetteDirectory.listFiles()) {
+            file.delete();
+        }
+        cassetteDirectory.delete();
+    }
+
+    @Test
+    public void shouldReplayRecordedExchanges() throws Exception {
+        String baseUri = "http://localhost:" + server.getAddress().getPort();
+        HttpCassetteRecorder recorder = new HttpCassetteRecorder(cassetteDirectory);
+        DefaultHttpClient client = new DefaultHttpClient();
+        for (String path : new String[]{"/found?q=1", "/missing"}) {
+            HttpGet request = new HttpGet(baseUri + path);
+            HttpResponse response = client.execute(request);
+            recorder.record(request, response);
+            assertThat(EntityUtils.toString(response.getEntity()), equalTo("you asked for " + path));
+        }
+        recorder.close();
+        client.getConnectionManager().shutdown();
+
+        FakeHttpLayer fakeHttpLayer = new FakeHttpLayer();
+        fakeHttpLayer.replayHttpResponses(new HttpCassette(cassetteDirectory));
+
+        HttpResponse found = fakeHttpLayer.emulateRequest(null, new HttpGet(baseUri + "/found?q=1"), null, null);
+        assertThat(found.getStatusLine().getStatusCode(), equalTo(200));
+        assertThat(found.getEntity().getContentType().getValue(), equalTo("text/plain"));
+        assertThat(EntityUtils.toString(found.getEntity()), equalTo("you asked for /found?q=1"));
+        assertThat(EntityUtils.toString(found.getEntity()), equalTo("you asked for /found?q=1"));
+
+        HttpResponse missing = fakeHttpLayer.emulateRequest(null, new HttpGet(baseUri + "/missing"), null, null);
+        assertThat(missing.getStatusLine().getStatusCode(), equalTo(404));
+        assertThat(EntityUtils.toString(missing.getEntity()), equalTo("you asked for /missing"));
+    }
+
+    @Test
+    public void shouldReplayRepeatedRequestsInOrderThenRepeatTheLast() throws Exception {
+        HttpCassetteRecorder recorder = new HttpCassetteRecorder(cassetteDirectory);
+        FakeHttpLayer recordingLayer = new FakeHttpLayer();
+        recordingLayer.recordHttpResponses(recorder);
+        HttpGet request = new HttpGet("http://example.com/counter");
+        recordingLayer.addHttpResponse(request, new TestHttpResponse(200, "one"));
+        recordingLayer.addHttpResponse(request, new TestHttpResponse(200, "two", new BasicHeader("X-Count", "2")));
+        recorder.close();
+
+        HttpCassette cassette = new HttpCassette(cassetteDirectory);
+        assertThat(cassette.getExchangeCount(), equalTo(2));
+        FakeHttpLayer fakeHttpLayer = new FakeHttpLayer();
+        fakeHttpLayer.replayHttpResponses(cassette);
+
+        assertThat(EntityUtils.toString(fakeHttpLayer.emulateRequest(null, request, null, null).getEntity()), equalTo("one"));
+        HttpResponse second = fakeHttpLayer.emulateRequest(null, request, null, null);
+        assertThat(EntityUtils.toString(second.getEntity()), equalTo("two"));
+        assertThat(second.getFirstHeader("X-Count").getValue(), equalTo("2"));
+        assertThat(EntityUtils.toString(fakeHttpLayer.emulateRequest(null, request, null, null).getEntity()), equalTo("two"));
+    }
+}
@@ -0,0 +1,117 @@
+package com.xtremelabs.robolectric.tester.org.apache.http;
+
+import com.xtremelabs.robolectric.util.Scheduler;
+import com.xtremelabs.robolectric.util.Transcript;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.conn.ConnectTimeoutException;
+import org.apache.http.params.HttpConnectionParams;
+import org.apache.http.util.EntityUtils;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.InputStream;
+import java.net.SocketTimeoutException;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+public class NetworkModelTest {
+    private Scheduler scheduler;
+    private FakeHttpLayer fakeHttpLayer;
+    private Transcript transcript;
+
+    @Before
+    public void setUp() throws Exception {
+        scheduler = new Scheduler();
+        fakeHttpLayer = new FakeHttpLayer();
+        transcript = new Transcript();
+    }
+
+    @Test
+    public void shouldChargeLatencyToTheSchedulerClock() throws Exception {
+        fakeHttpLayer.setNetworkModel(new NetworkModel(scheduler).latency(250));
+        fakeHttpLayer.addHttpResponseRule("http://example.com/", "hi");
+        scheduler.postDelayed(new Runnable() {
+            @Override
+            public void run() {
+                transcript.add("ran at " + scheduler.getCurrentTime());
+            }
+        }, 100);
+
+        HttpResponse response = fakeHttpLayer.emulateRequest(null, new HttpGet("http://example.com/"), null, null);
+
+        transcript.assertNoEventsSoFar();
+        assertThat(scheduler.getCurrentTime(), equalTo(250L));
+        assertThat(EntityUtils.toString(response.getEntity()), equalTo("hi"));
+
+        scheduler.advanceBy(0);
+        transcript.assertEventsSoFar("ran at 250");
+    }
+
+    @Test
+    public void shouldChargeForBodiesAsTheyAreRead() throws Exception {
+        fakeHttpLayer.setNetworkModel(new NetworkModel(scheduler).latency(50).bandwidth(100));
+        fakeHttpLayer.addHttpResponseRule("http://example.com/", new TestHttpResponse(200, new byte[1000]));
+
+        HttpResponse response = fakeHttpLayer.emulateRequest(null, new HttpGet("http://example.com/"), null, null);
+        assertThat(response.getEntity().getContentLength(), equalTo(1000L));
+        InputStream content = response.getEntity().getContent();
+        assertThat(content.read(new byte[1000]), equalTo(10));
+        assertThat(scheduler.getCurrentTime(), equalTo(150L));
+
+        while (content.read(new byte[1000]) != -1) {
+        }
+        assertThat(scheduler.getCurrentTime(), equalTo(10050L));
+    }
+
+    @Test
+    public void shouldTimeOutReadsSlowerThanTheSocketTimeout() throws Exception {
+        fakeHttpLayer.setNetworkModel(new NetworkModel(scheduler).bandwidth(10));
+        fakeHttpLayer.addHttpResponseRule("http://example.com/", new TestHttpResponse(200, new byte[100]));
+        HttpGet request = new HttpGet("http://example.com/");
+        HttpConnectionParams.setSoTimeout(request.getParams(), 50);
+
+        HttpResponse response = fakeHttpLayer.emulateRequest(null, request, null, null);
+        try {
+            EntityUtils.toString(response.getEntity());
+            fail("expected the read to time out");
+        } catch (SocketTimeoutException expected) {
+        }
+        assertThat(scheduler.getCurrentTime(), equalTo(50L));
+    }
+
+    @Test
+    public void shouldTimeOutConnectionsSlowerThanTheConnectionTimeout() throws Exception {
+        fakeHttpLayer.setNetworkModel(new NetworkModel(scheduler).latency(5000));
+        fakeHttpLayer.addHttpResponseRule("http://example.com/", "hi");
+        HttpGet request = new HttpGet("http://example.com/");
+        HttpConnectionParams.setConnectionTimeout(request.getParams(), 1000);
+
+        try {
+            fakeHttpLayer.emulateRequest(null, request, null, null);
+            fail("expected the connection to time out");
+        } catch (ConnectTimeoutException expected) {
+        }
+        assertThat(scheduler.getCurrentTime(), equalTo(1000L));
+    }
+
+    @Test
+    public void shouldRetryLostConnectionAttemptsThenGiveUp() throws Exception {
+        fakeHttpLayer.addHttpResponseRule(new FakeHttpLayer.RequestMatcherResponseRule(
+                new FakeHttpLayer.UriRequestMatcher("http://example.com/"), new TestHttpResponse(200, "hi")),
+                new NetworkModel(scheduler).latency(10).packetLoss(1, 2, 300));
+
+        try {
+            fakeHttpLayer.emulateRequest(null, new HttpGet("http://example.com/"), null, null);
+            fail("expected every attempt to be lost");
+        } catch (SocketTimeoutException expected) {
+        }
+        assertThat(scheduler.getCurrentTime(), equalTo(900L));
+
+        fakeHttpLayer.addHttpResponseRule("http://example.com/", "hi");
+        fakeHttpLayer.emulateRequest(null, new HttpGet("http://example.com/"), null, null);
+        assertThat(scheduler.getCurrentTime(), equalTo(900L));
+    }
+}
@@ -4,9 +4,16 @@ import org.apache.http.Header;
 import org.apache.http.HeaderIterator;
 import org.apache.http.HttpResponse;
 import org.apache.http.message.BasicHeader;
+import org.apache.http.util.EntityUtils;
 import org.hamcrest.CoreMatchers;
 import org.junit.Test;
 
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
 import static org.hamcrest.CoreMatchers.nullValue;
 import static org.hamcrest.core.Is.is;
 import static org.hamcrest.core.IsEqual.equalTo;
@@ -126,4 +133,52 @@ public class TestHttpResponseTest {
         assertThat(response.getHeaders("foo")[1].getValue(), CoreMatchers.equalTo("baz"));
     }
 
+    @Test
+    public void shouldReadBodyFromFile() throws Exception {
+        File file = File.createTempFile("response-body", ".json");
+        try {
+            FileWriter writer = new FileWriter(file);
+            writer.write("{\"a\": 1}");
+            writer.close();
+
+            TestHttpResponse response = new TestHttpResponse(200, file);
+            assertThat(response.getEntity().getContentLength(), equalTo(file.length()));
+            assertThat(EntityUtils.toString(response.getEntity()), equalTo("{\"a\": 1}"));
+            assertThat(response.entityContentStreamsHaveBeenClosed(), is(true));
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void shouldReadBodyFromByteBufferWithoutConsumingIt() throws Exception {
+        ByteBuffer buffer = ByteBuffer.wrap("xxhello".getBytes());
+        buffer.position(2);
+        TestHttpResponse response = new TestHttpResponse(200, buffer);
+
+        assertThat(EntityUtils.toString(response.getEntity()), equalTo("hello"));
+        assertThat(EntityUtils.toString(response.getEntity()), equalTo("hello"));
+        assertThat(buffer.position(), equalTo(2));
+    }
+
+    @Test
+    public void shouldGenerateChunkedBodyEachTimeItIsRead() throws Exception {
+        final int[] generated = {0};
+        TestHttpResponse response = new TestHttpResponse(200, new TestHttpResponse.ContentGenerator() {
+            @Override
+            public InputStream generateContent() {
+                generated[0]++;
+                return new ByteArrayInputStream(("body " + generated[0]).getBytes());
+            }
+        });
+
+        assertThat(response.getEntity().isChunked(), is(true));
+        assertThat(response.getEntity().getContentLength(), equalTo(-1L));
+        InputStream content = response.getEntity().getContent();
+        assertThat(response.entityContentStreamsHaveBeenClosed(), is(false));
+        content.close();
+        content.close();
+        assertThat(response.entityContentStreamsHaveBeenClosed(), is(true));
+        assertThat(EntityUtils.toString(response.getEntity()), equalTo("body 2"));
+    }
 }
@@ -7,7 +7,9 @@ import org.junit.Test;
 import org.junit.runner.RunWith;
 
 import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
@@ -74,4 +76,28 @@ public class RobolectricBackgroundExecutorServiceTest {
 
         assertEquals("foo", future.get());
     }
+
+    @Test
+    public void submit_shouldRunTasksConcurrentlyOnWorkerThreads() throws Exception {
+        Robolectric.getShadowApplication().setBackgroundWorkerThreadCount(2);
+        try {
+            final CountDownLatch bothStarted = new CountDownLatch(2);
+            Callable<Boolean> rendezvous = new Callable<Boolean>() {
+                @Override public Boolean call() throws Exception {
+                    bothStarted.countDown();
+                    return bothStarted.await(10, TimeUnit.SECONDS);
+                }
+            };
+            Future<Boolean> first = executorService.submit(rendezvous);
+            Future<Boolean> second = executorService.submit(rendezvous);
+            assertFalse(first.isDone());
+
+            Robolectric.runBackgroundTasks();
+            assertTrue(first.isDone());
+            assertTrue(first.get());
+            assertTrue(second.get());
+        } finally {
+            Robolectric.getShadowApplication().setBackgroundWorkerThreadCount(0);
+        }
+    }
 }
@@ -117,6 +117,68 @@ public class SchedulerTest {
         assertThat(runnable.wasRun, equalTo(false));
     }
 
+    @Test
+    public void shouldRunRunnablesPostedForTheSameTimeInPostingOrder() throws Exception {
+        scheduler.postDelayed(new AddToTranscript("three"), 100);
+        scheduler.post(new AddToTranscript("one"));
+        scheduler.postDelayed(new AddToTranscript("four"), 100);
+        scheduler.post(new AddToTranscript("two"));
+        scheduler.postAtFrontOfQueue(new AddToTranscript("zero"));
+
+        scheduler.advanceToLastPostedRunnable();
+        transcript.assertEventsSoFar("zero", "one", "two", "three", "four");
+    }
+
+    @Test
+    public void shouldOrderRunnablesWhoseDelaysDifferByMoreThanAnInt() throws Exception {
+        scheduler.postDelayed(new AddToTranscript("later"), Integer.MAX_VALUE + 10L);
+        scheduler.postDelayed(new AddToTranscript("sooner"), 5);
+
+        scheduler.runOneTask();
+        transcript.assertEventsSoFar("sooner");
+    }
+
+    @Test
+    public void removeShouldLeaveOtherRunnablesInOrder() throws Exception {
+        TestRunnable removed = new TestRunnable();
+        for (int i = 0; i < 10; i++) {
+            scheduler.postDelayed(removed, i);
+            scheduler.postDelayed(new AddToTranscript("run " + i), i);
+        }
+        scheduler.remove(removed);
+        assertThat(scheduler.enqueuedTaskCount(), equalTo(10));
+
+        scheduler.runTasks(2);
+        transcript.assertEventsSoFar("run 0", "run 1");
+        scheduler.advanceToLastPostedRunnable();
+        assertThat(scheduler.enqueuedTaskCount(), equalTo(0));
+        assertThat(scheduler.getCurrentTime(), equalTo(9L));
+        assertThat(removed.wasRun, equalTo(false));
+    }
+
+    @Test
+    public void shouldAcceptPostsFromOtherThreadsWhileARunnableWaitsForThem() throws Exception {
+        final Thread poster = new Thread() {
+            @Override public void run() {
+                scheduler.post(new AddToTranscript("posted from another thread"));
+            }
+        };
+        scheduler.post(new Runnable() {
+            @Override public void run() {
+                poster.start();
+                try {
+                    poster.join(10000);
+                } catch (InterruptedException e) {
+                    throw new RuntimeException(e);
+                }
+                transcript.add(poster.isAlive() ? "poster blocked" : "poster done");
+            }
+        });
+
+        scheduler.advanceToLastPostedRunnable();
+        transcript.assertEventsSoFar("poster done", "posted from another thread");
+    }
+
     @Test
     public void resetShouldUnPause() throws Exception {
         scheduler.pause();
@@ -149,6 +211,52 @@ public class SchedulerTest {
         assertThat(runnable2.wasRun, equalTo(true));
     }
 
+    @Test
+    public void elapse_shouldMoveTheClockAndLeaveDueRunnablesForTheNextAdvance() throws Exception {
+        scheduler.postDelayed(new AddToTranscript("due"), 300);
+        scheduler.postDelayed(new AddToTranscript("later"), 800);
+        scheduler.post(new Runnable() {
+            @Override
+            public void run() {
+                transcript.add("blocking");
+                scheduler.elapse(500);
+                transcript.add("unblocked at " + scheduler.getCurrentTime());
+            }
+        });
+
+        scheduler.advanceBy(0);
+        transcript.assertEventsSoFar("blocking", "unblocked at 500");
+
+        scheduler.advanceBy(0);
+        transcript.assertEventsSoFar("due");
+        assertThat(scheduler.getCurrentTime(), equalTo(500L));
+
+        scheduler.reset();
+        scheduler.elapse(100);
+        assertThat(scheduler.getCurrentTime(), equalTo(600L));
+    }
+
+    @Test
+    public void elapse_shouldApplyTimeElapsedOnOtherThreadsAtTheNextOperation() throws Exception {
+        Thread thread = new Thread() {
+            @Override
+            public void run() {
+                scheduler.elapse(250);
+            }
+        };
+        thread.start();
+        thread.join();
+        assertThat(scheduler.getCurrentTime(), equalTo(0L));
+
+        scheduler.postDelayed(new AddToTranscript("due"), 100);
+        assertThat(scheduler.enqueuedTaskCount(), equalTo(1));
+        assertThat(scheduler.getCurrentTime(), equalTo(250L));
+
+        scheduler.advanceBy(0);
+        transcript.assertEventsSoFar("due");
+        assertThat(scheduler.getCurrentTime(), equalTo(250L));
+    }
+
     private class AddToTranscript implements Runnable {
         private String event;
 